@@ -0,0 +1,596 @@
+package dev.mayuna.pumpk1n.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor that generates streaming Gson {@code TypeAdapterFactory} for every {@code DataElement} annotated with
+ * {@code dev.mayuna.pumpk1n.api.GenerateTypeAdapter}.<br> Generated factory is named {@code <ClassName>_Pumpk1nTypeAdapterFactory}, resides
+ * in the same package and is picked up automatically by {@code DataHolder}.
+ */
+public class Pumpk1nTypeAdapterProcessor extends AbstractProcessor {
+
+    public static final String GENERATE_TYPE_ADAPTER = "dev.mayuna.pumpk1n.api.GenerateTypeAdapter";
+    public static final String DATA_ELEMENT = "dev.mayuna.pumpk1n.api.DataElement";
+    public static final String EXPOSE = "com.google.gson.annotations.Expose";
+    public static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+    public static final String JSON_ADAPTER = "com.google.gson.annotations.JsonAdapter";
+    public static final String FACTORY_SUFFIX = "_Pumpk1nTypeAdapterFactory";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(GENERATE_TYPE_ADAPTER);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(GENERATE_TYPE_ADAPTER);
+
+        if (annotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateTypeAdapter can be used only on classes");
+                continue;
+            }
+
+            TypeElement typeElement = (TypeElement) element;
+
+            try {
+                ElementModel model = createModel(typeElement);
+
+                if (model != null) {
+                    writeFactory(model);
+                }
+            } catch (IOException exception) {
+                error(typeElement, "Could not write generated TypeAdapterFactory: " + exception.getMessage());
+            }
+        }
+
+        return true;
+    }
+
+    ///////////
+    // Model //
+    ///////////
+
+    protected ElementModel createModel(TypeElement typeElement) {
+        boolean valid = true;
+        TypeElement dataElement = processingEnv.getElementUtils().getTypeElement(DATA_ELEMENT);
+
+        if (dataElement == null || !processingEnv.getTypeUtils().isAssignable(typeElement.asType(), dataElement.asType())) {
+            error(typeElement, "Class annotated with @GenerateTypeAdapter must implement " + DATA_ELEMENT);
+            valid = false;
+        }
+
+        Set<Modifier> modifiers = typeElement.getModifiers();
+
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            error(typeElement, "Class annotated with @GenerateTypeAdapter must not be abstract nor private");
+            valid = false;
+        }
+
+        if (typeElement.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)) {
+            error(typeElement, "Nested class annotated with @GenerateTypeAdapter must be static");
+            valid = false;
+        } else if (typeElement.getNestingKind() != NestingKind.TOP_LEVEL && typeElement.getNestingKind() != NestingKind.MEMBER) {
+            error(typeElement, "Local and anonymous classes cannot be annotated with @GenerateTypeAdapter");
+            valid = false;
+        }
+
+        if (!typeElement.getTypeParameters().isEmpty()) {
+            error(typeElement, "Generic classes are not supported by @GenerateTypeAdapter");
+            valid = false;
+        }
+
+        if (findAnnotation(typeElement, JSON_ADAPTER) != null) {
+            error(typeElement, "Class annotated with @GenerateTypeAdapter must not be annotated with @JsonAdapter");
+            valid = false;
+        }
+
+        if (!hasPublicNoArgsConstructor(typeElement)) {
+            error(typeElement, "Class annotated with @GenerateTypeAdapter must have public no-args constructor");
+            valid = false;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(typeElement).getQualifiedName().toString();
+        boolean exposedOnly = getAnnotationValue(typeElement, GENERATE_TYPE_ADAPTER, "exposedOnly", false);
+        List<FieldModel> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Set<String> fieldNames = new HashSet<>();
+
+        // Same order as Gson's reflective adapter: class's fields first, then superclass's fields
+        TypeElement current = typeElement;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                FieldModel fieldModel = createFieldModel(field, exposedOnly);
+
+                if (fieldModel == null) {
+                    continue;
+                }
+
+                if (!isAccessible(field, packageName)) {
+                    error(field, "Field " + field.getSimpleName() + " must not be private (or must be declared in the same package) to be used by generated TypeAdapter");
+                    valid = false;
+                }
+
+                if (fieldModel.deserialize && field.getModifiers().contains(Modifier.FINAL)) {
+                    error(field, "Field " + field.getSimpleName() + " must not be final to be used by generated TypeAdapter");
+                    valid = false;
+                }
+
+                if (findAnnotation(field, JSON_ADAPTER) != null) {
+                    error(field, "Field " + field.getSimpleName() + " must not be annotated with @JsonAdapter to be used by generated TypeAdapter");
+                    valid = false;
+                }
+
+                if (containsTypeVariable(field.asType())) {
+                    error(field, "Field " + field.getSimpleName() + " must not use type variables to be used by generated TypeAdapter");
+                    valid = false;
+                }
+
+                if (!fieldNames.add(fieldModel.fieldName)) {
+                    error(field, "Field " + field.getSimpleName() + " shadows another field, which is not supported by generated TypeAdapter");
+                    valid = false;
+                }
+
+                if (!names.add(fieldModel.serializedName)) {
+                    error(field, "Class " + typeElement.getQualifiedName() + " declares multiple JSON fields named " + fieldModel.serializedName);
+                    valid = false;
+                }
+
+                fields.add(fieldModel);
+            }
+
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+
+        if (!valid) {
+            return null;
+        }
+
+        return new ElementModel(packageName, getFactoryName(typeElement), typeName(typeElement.asType()), fields);
+    }
+
+    protected FieldModel createFieldModel(VariableElement field, boolean exposedOnly) {
+        Set<Modifier> modifiers = field.getModifiers();
+
+        if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+            return null;
+        }
+
+        boolean serialize = true;
+        boolean deserialize = true;
+
+        if (exposedOnly) {
+            if (findAnnotation(field, EXPOSE) == null) {
+                return null;
+            }
+
+            serialize = getAnnotationValue(field, EXPOSE, "serialize", true);
+            deserialize = getAnnotationValue(field, EXPOSE, "deserialize", true);
+
+            if (!serialize && !deserialize) {
+                return null;
+            }
+        }
+
+        String serializedName = field.getSimpleName().toString();
+        List<String> alternateNames = new ArrayList<>();
+
+        if (findAnnotation(field, SERIALIZED_NAME) != null) {
+            serializedName = getAnnotationValue(field, SERIALIZED_NAME, "value", serializedName);
+
+            List<?> alternates = getAnnotationValue(field, SERIALIZED_NAME, "alternate", Collections.emptyList());
+            for (Object alternate : alternates) {
+                alternateNames.add(String.valueOf(((AnnotationValue) alternate).getValue()));
+            }
+        }
+
+        return new FieldModel(field.getSimpleName().toString(), field.asType(), serializedName, alternateNames, serialize, deserialize);
+    }
+
+    ////////////////
+    // Generation //
+    ////////////////
+
+    protected void writeFactory(ElementModel model) throws IOException {
+        StringBuilder source = new StringBuilder();
+
+        if (!model.packageName.isEmpty()) {
+            source.append("package ").append(model.packageName).append(";\n\n");
+        }
+
+        source.append("/**\n")
+              .append(" * Generated by ").append(Pumpk1nTypeAdapterProcessor.class.getName()).append(". Do not edit.\n")
+              .append(" */\n")
+              .append("public final class ").append(model.factoryName).append(" implements com.google.gson.TypeAdapterFactory {\n\n")
+              .append("    @Override\n")
+              .append("    @SuppressWarnings(\"unchecked\")\n")
+              .append("    public <T> com.google.gson.TypeAdapter<T> create(com.google.gson.Gson gson, com.google.gson.reflect.TypeToken<T> type) {\n")
+              .append("        if (type.getRawType() != ").append(model.typeName).append(".class) {\n")
+              .append("            return null;\n")
+              .append("        }\n\n")
+              .append("        return (com.google.gson.TypeAdapter<T>) new Adapter(gson);\n")
+              .append("    }\n\n");
+
+        source.append("    private static final class Adapter extends com.google.gson.TypeAdapter<").append(model.typeName).append("> {\n\n");
+
+        boolean hasAdapters = false;
+        for (FieldModel field : model.fields) {
+            if (!isDirectlyWritten(field.type)) {
+                source.append("        private final com.google.gson.TypeAdapter<").append(boxedTypeName(field.type)).append("> ")
+                      .append(field.adapterName()).append(";\n");
+                hasAdapters = true;
+            }
+        }
+
+        if (hasAdapters) {
+            source.append("\n");
+        }
+
+        source.append("        private Adapter(com.google.gson.Gson gson) {\n");
+        for (FieldModel field : model.fields) {
+            if (!isDirectlyWritten(field.type)) {
+                source.append("            this.").append(field.adapterName()).append(" = gson.getAdapter(new com.google.gson.reflect.TypeToken<")
+                      .append(boxedTypeName(field.type)).append(">() {});\n");
+            }
+        }
+        source.append("        }\n\n");
+
+        writeWriteMethod(source, model);
+        writeReadMethod(source, model);
+
+        source.append("    }\n")
+              .append("}\n");
+
+        String qualifiedName = model.packageName.isEmpty() ? model.factoryName : model.packageName + "." + model.factoryName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName);
+
+        try (Writer writer = file.openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    protected void writeWriteMethod(StringBuilder source, ElementModel model) {
+        source.append("        @Override\n")
+              .append("        public void write(com.google.gson.stream.JsonWriter out, ").append(model.typeName).append(" value) throws java.io.IOException {\n")
+              .append("            if (value == null) {\n")
+              .append("                out.nullValue();\n")
+              .append("                return;\n")
+              .append("            }\n\n")
+              .append("            out.beginObject();\n");
+
+        for (FieldModel field : model.fields) {
+            if (!field.serialize) {
+                continue;
+            }
+
+            String access = "value." + field.fieldName;
+            source.append("            out.name(\"").append(escape(field.serializedName)).append("\");\n");
+
+            switch (field.type.getKind()) {
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                    source.append("            out.value(").append(access).append(");\n");
+                    break;
+                case CHAR:
+                    source.append("            out.value(String.valueOf(").append(access).append("));\n");
+                    break;
+                default:
+                    if (isString(field.type)) {
+                        source.append("            out.value(").append(access).append(");\n");
+                    } else {
+                        source.append("            ").append(field.adapterName()).append(".write(out, ").append(access).append(");\n");
+                    }
+            }
+        }
+
+        source.append("            out.endObject();\n")
+              .append("        }\n\n");
+    }
+
+    protected void writeReadMethod(StringBuilder source, ElementModel model) {
+        source.append("        @Override\n")
+              .append("        public ").append(model.typeName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n")
+              .append("            if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n")
+              .append("                in.nextNull();\n")
+              .append("                return null;\n")
+              .append("            }\n\n")
+              .append("            ").append(model.typeName).append(" value = new ").append(model.typeName).append("();\n\n")
+              .append("            in.beginObject();\n")
+              .append("            while (in.hasNext()) {\n")
+              .append("                switch (in.nextName()) {\n");
+
+        for (FieldModel field : model.fields) {
+            if (!field.deserialize) {
+                continue;
+            }
+
+            source.append("                    case \"").append(escape(field.serializedName)).append("\":\n");
+            for (String alternateName : field.alternateNames) {
+                source.append("                    case \"").append(escape(alternateName)).append("\":\n");
+            }
+
+            String access = "value." + field.fieldName;
+
+            if (field.type.getKind().isPrimitive()) {
+                source.append("                        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n")
+                      .append("                            in.nextNull();\n")
+                      .append("                        } else {\n")
+                      .append("                            ").append(access).append(" = ").append(readPrimitive(field.type.getKind())).append(";\n")
+                      .append("                        }\n");
+            } else if (isString(field.type)) {
+                source.append("                        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n")
+                      .append("                            in.nextNull();\n")
+                      .append("                            ").append(access).append(" = null;\n")
+                      .append("                        } else if (in.peek() == com.google.gson.stream.JsonToken.BOOLEAN) {\n")
+                      .append("                            ").append(access).append(" = Boolean.toString(in.nextBoolean());\n")
+                      .append("                        } else {\n")
+                      .append("                            ").append(access).append(" = in.nextString();\n")
+                      .append("                        }\n");
+            } else {
+                source.append("                        ").append(access).append(" = ").append(field.adapterName()).append(".read(in);\n");
+            }
+
+            source.append("                        break;\n");
+        }
+
+        source.append("                    default:\n")
+              .append("                        in.skipValue();\n")
+              .append("                }\n")
+              .append("            }\n")
+              .append("            in.endObject();\n\n")
+              .append("            return value;\n")
+              .append("        }\n");
+    }
+
+    protected String readPrimitive(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN:
+                return "in.nextBoolean()";
+            case BYTE:
+                return "(byte) in.nextInt()";
+            case SHORT:
+                return "(short) in.nextInt()";
+            case INT:
+                return "in.nextInt()";
+            case LONG:
+                return "in.nextLong()";
+            case FLOAT:
+                return "(float) in.nextDouble()";
+            case DOUBLE:
+                return "in.nextDouble()";
+            case CHAR:
+                return "in.nextString().charAt(0)";
+            default:
+                throw new IllegalArgumentException("Type " + kind + " is not primitive");
+        }
+    }
+
+    /////////////
+    // Helpers //
+    /////////////
+
+    protected boolean isDirectlyWritten(TypeMirror type) {
+        return type.getKind().isPrimitive() || isString(type);
+    }
+
+    protected boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    protected String boxedTypeName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return typeName(processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).asType());
+        }
+
+        return typeName(type);
+    }
+
+    /**
+     * Prints type's source name without type-use annotations
+     */
+    protected String typeName(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case CHAR:
+            case FLOAT:
+            case DOUBLE:
+                return type.getKind().name().toLowerCase(Locale.ROOT);
+            case ARRAY:
+                return typeName(((ArrayType) type).getComponentType()) + "[]";
+            case WILDCARD:
+                WildcardType wildcardType = (WildcardType) type;
+
+                if (wildcardType.getExtendsBound() != null) {
+                    return "? extends " + typeName(wildcardType.getExtendsBound());
+                }
+
+                if (wildcardType.getSuperBound() != null) {
+                    return "? super " + typeName(wildcardType.getSuperBound());
+                }
+
+                return "?";
+            case DECLARED:
+                DeclaredType declaredType = (DeclaredType) type;
+                StringBuilder name = new StringBuilder(((TypeElement) declaredType.asElement()).getQualifiedName());
+
+                if (!declaredType.getTypeArguments().isEmpty()) {
+                    StringJoiner joiner = new StringJoiner(", ", "<", ">");
+                    declaredType.getTypeArguments().forEach(argument -> joiner.add(typeName(argument)));
+                    name.append(joiner);
+                }
+
+                return name.toString();
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    protected boolean containsTypeVariable(TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                return true;
+            case ARRAY:
+                return containsTypeVariable(((ArrayType) type).getComponentType());
+            case WILDCARD:
+                WildcardType wildcardType = (WildcardType) type;
+                return (wildcardType.getExtendsBound() != null && containsTypeVariable(wildcardType.getExtendsBound()))
+                        || (wildcardType.getSuperBound() != null && containsTypeVariable(wildcardType.getSuperBound()));
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (containsTypeVariable(argument)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    protected boolean isAccessible(VariableElement field, String packageName) {
+        Set<Modifier> modifiers = field.getModifiers();
+
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+
+        return processingEnv.getElementUtils().getPackageOf(field).getQualifiedName().contentEquals(packageName);
+    }
+
+    protected boolean hasPublicNoArgsConstructor(TypeElement typeElement) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(typeElement.getEnclosedElements());
+
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected String getFactoryName(TypeElement typeElement) {
+        StringBuilder name = new StringBuilder(typeElement.getSimpleName());
+        Element enclosing = typeElement.getEnclosingElement();
+
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+
+        return name.append(FACTORY_SUFFIX).toString();
+    }
+
+    protected AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
+            TypeElement annotationElement = (TypeElement) annotationMirror.getAnnotationType().asElement();
+
+            if (annotationElement.getQualifiedName().contentEquals(annotationName)) {
+                return annotationMirror;
+            }
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T> T getAnnotationValue(Element element, String annotationName, String key, T defaultValue) {
+        AnnotationMirror annotationMirror = findAnnotation(element, annotationName);
+
+        if (annotationMirror == null) {
+            return defaultValue;
+        }
+
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotationMirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(key)) {
+                return (T) entry.getValue().getValue();
+            }
+        }
+
+        return defaultValue;
+    }
+
+    protected String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    protected void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /////////////
+    // Classes //
+    /////////////
+
+    protected static class ElementModel {
+
+        protected final String packageName;
+        protected final String factoryName;
+        protected final String typeName;
+        protected final List<FieldModel> fields;
+
+        protected ElementModel(String packageName, String factoryName, String typeName, List<FieldModel> fields) {
+            this.packageName = packageName;
+            this.factoryName = factoryName;
+            this.typeName = typeName;
+            this.fields = fields;
+        }
+    }
+
+    protected static class FieldModel {
+
+        protected final String fieldName;
+        protected final TypeMirror type;
+        protected final String serializedName;
+        protected final List<String> alternateNames;
+        protected final boolean serialize;
+        protected final boolean deserialize;
+
+        protected FieldModel(String fieldName, TypeMirror type, String serializedName, List<String> alternateNames, boolean serialize, boolean deserialize) {
+            this.fieldName = fieldName;
+            this.type = type;
+            this.serializedName = serializedName;
+            this.alternateNames = alternateNames;
+            this.serialize = serialize;
+            this.deserialize = deserialize;
+        }
+
+        protected String adapterName() {
+            return fieldName + "Adapter";
+        }
+    }
+}
@@ -8,10 +8,14 @@ import dev.mayuna.pumpk1n.util.BaseLogger;
 import dev.mayuna.pumpk1n.util.SLF4JPumpk1nLogger;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class Pumpk1n {
 
@@ -19,6 +23,17 @@ public class Pumpk1n {
     protected @Getter StorageHandler storageHandler;
     protected @Getter BaseLogger logger = new SLF4JPumpk1nLogger(null, null);
 
+    /**
+     * Minimal number of loaded {@link DataElement}s in {@link DataHolder} from which they are serialized in parallel using
+     * {@link #serializationPool}. Zero or less disables parallel serialization (default).
+     */
+    protected @Getter @Setter int parallelSerializationThreshold = 0;
+
+    /**
+     * Pool used for parallel serialization of {@link DataElement}s, defaults to {@link ForkJoinPool#commonPool()}
+     */
+    protected @Getter @Setter @NonNull ForkJoinPool serializationPool = ForkJoinPool.commonPool();
+
     /**
      * Creates a new {@link Pumpk1n} with the given {@link StorageHandler}
      *
@@ -161,7 +176,8 @@ public class Pumpk1n {
     }
 
     /**
-     * Unloads {@link DataHolder} from current storage
+     * Unloads {@link DataHolder} from current storage. {@link StorageHandler#onHolderUnloaded(UUID)} is called even if the holder was not
+     * loaded.
      *
      * @param uuid Non-null {@link UUID}
      *
@@ -169,6 +185,7 @@ public class Pumpk1n {
      */
     public boolean unloadDataHolder(@NonNull UUID uuid) {
         boolean removed = dataHolderList.removeIf(dataHolderFilter -> dataHolderFilter.getUuid().equals(uuid));
+        storageHandler.onHolderUnloaded(uuid);
 
         if (removed) {
             logger.logWrite(uuid, "removed from memory");
@@ -185,8 +202,9 @@ public class Pumpk1n {
      * @return True if removed, false otherwise
      */
     public boolean deleteDataHolder(@NonNull UUID uuid) {
-        unloadDataHolder(uuid);
+        // Removed from storage before unloading, as the storage handler may need what it keeps for the holder (e.g. its version)
         boolean removed = storageHandler.removeHolder(uuid);
+        unloadDataHolder(uuid);
 
         if (removed) {
             logger.logWrite(uuid, "removed from storage");
@@ -196,17 +214,38 @@ public class Pumpk1n {
     }
 
     /**
-     * Saves {@link DataHolder}
+     * Saves {@link DataHolder}. If the {@link DataHolder} is a snapshot (see {@link DataHolder#snapshot()}), {@link DataElement#beforeSave()}
+     * is not called again, so it's safe to call this method from another thread.
      *
      * @param dataHolder Non-null {@link DataHolder}
      */
     public void saveDataHolder(@NonNull DataHolder dataHolder) {
         logger.logBeforeSave(dataHolder);
-        dataHolder.getDataElementMap().values().forEach(DataElement::beforeSave);
+
+        if (!dataHolder.isSnapshot()) {
+            dataHolder.getDataElementMap().values().forEach(DataElement::beforeSave);
+        }
+
         storageHandler.saveHolder(dataHolder);
         logger.logWrite(dataHolder, "saved");
     }
 
+    /**
+     * Saves {@link DataHolder} asynchronously using {@link StorageHandler#saveHolderAsync(DataHolder)}. Unless the {@link DataHolder} is
+     * already a snapshot, its snapshot is taken on the calling thread (see {@link DataHolder#snapshot()}), so it can be modified right away.
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null {@link CompletableFuture} which completes when the holder is saved
+     */
+    public @NonNull CompletableFuture<Void> saveDataHolderAsync(@NonNull DataHolder dataHolder) {
+        logger.logBeforeSave(dataHolder);
+
+        DataHolder snapshot = dataHolder.isSnapshot() ? dataHolder : dataHolder.snapshot();
+
+        return storageHandler.saveHolderAsync(snapshot).thenRun(() -> logger.logWrite(dataHolder, "saved"));
+    }
+
     /**
      * Returns unmodifiable list of {@link DataHolder}s
      *
@@ -247,27 +286,26 @@ public class Pumpk1n {
         this.storageHandler.prepareStorage();
         oldStorageHandler.prepareStorage();
 
-        logger.logMisc("Getting all DataHolder UUIDs from storage handler " + storageHandlerNameFrom);
-
-        List<UUID> uuids = fromMigratable.getAllHolderUUIDs();
-
         logger.logMisc("Migrating all data holders from " + storageHandlerNameFrom + " to " + storageHandlerNameTo + "...");
 
         long start = System.currentTimeMillis();
 
-        uuids.forEach(uuid -> {
-            try {
-                DataHolder dataHolder = oldStorageHandler.loadHolder(uuid);
+        // Streamed, so storage handlers which support it do not load all UUIDs into memory
+        try (Stream<UUID> uuids = fromMigratable.streamAllHolderUUIDs()) {
+            uuids.forEach(uuid -> {
+                try {
+                    DataHolder dataHolder = oldStorageHandler.loadHolder(uuid);
 
-                if (dataHolder == null) {
-                    return;
-                }
+                    if (dataHolder == null) {
+                        return;
+                    }
 
-                this.saveDataHolder(dataHolder);
-            } catch (Exception exception) {
-                logger.logMisc("Exception occurred while migrating data holder " + uuid + "!", exception);
-            }
-        });
+                    this.saveDataHolder(dataHolder);
+                } catch (Exception exception) {
+                    logger.logMisc("Exception occurred while migrating data holder " + uuid + "!", exception);
+                }
+            });
+        }
 
         oldDataHolders.forEach(dataHolder -> {
             try {
@@ -1,6 +1,8 @@
 package dev.mayuna.pumpk1n.api;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import dev.mayuna.pumpk1n.util.DataElementGsons;
 import lombok.NonNull;
 
 /**
@@ -9,7 +11,9 @@ import lombok.NonNull;
 public interface DataElement {
 
     /**
-     * This method is called when this {@link DataElement} is loaded
+     * This method is called when this {@link DataElement} is loaded, before it's visible to other threads. If the {@link DataElement} is
+     * loaded by multiple threads at once, it may be called on more than one instance, of which only one is kept, so it should not have
+     * side effects outside this {@link DataElement}.
      */
     default void onLoad() {
         // Empty
@@ -22,10 +26,24 @@ public interface DataElement {
         // Empty
     }
 
+    /**
+     * This method is called by {@link dev.mayuna.pumpk1n.objects.DataHolder#snapshot()}. By default, it returns null and the snapshot captures
+     * this {@link DataElement} serialized into {@link com.google.gson.JsonObject}, which is saved as is, so the snapshot is not affected by
+     * in-place modifications made afterward. You may override it to return a typed copy, or {@code this} if you never modify this
+     * {@link DataElement} in-place (e.g. you replace it with {@link dev.mayuna.pumpk1n.objects.DataHolder#addOrReplaceDataElement(DataElement)}
+     * instead), which is then serialized when the snapshot is saved.
+     *
+     * @return Nullable {@link DataElement} of the same class, null if the serialized form should be captured
+     */
+    default DataElement snapshot() {
+        return null;
+    }
+
     /**
      * You can override this method in order to create custom {@link GsonBuilder}.<br> For example, if you use
      * {@link com.google.gson.annotations.Expose} annotations, you want to override this method and use
-     * {@link GsonBuilder#excludeFieldsWithoutExposeAnnotation()}
+     * {@link GsonBuilder#excludeFieldsWithoutExposeAnnotation()}.<br> It's called once per class and the built {@link Gson} is reused for all
+     * its instances, so it must not depend on the instance's state. See {@link DataElementGsons}.
      *
      * @return Non-null {@link GsonBuilder}
      */
@@ -0,0 +1,55 @@
+package dev.mayuna.pumpk1n.api;
+
+/**
+ * How durable must a save be when {@link StorageHandler#saveHolder(dev.mayuna.pumpk1n.objects.DataHolder)} returns. Set it with
+ * {@link StorageHandler#setDurability(Durability)}. Stronger levels are slower; every handler documents how it maps the levels:
+ * <ul>
+ *     <li>Folder, buffered folder, log-structured and pack-file handlers: {@link #FSYNC} forces every written file and the directory of every
+ *     renamed or newly created file, {@link #GROUP_COMMIT} is the same as {@link #FSYNC} except for log-structured handler, where concurrent
+ *     saves share one force.</li>
+ *     <li>Memory-mapped handler: {@link #NONE} and {@link #OS_FLUSH} leave dirty pages to the OS, {@link #FSYNC} and {@link #GROUP_COMMIT}
+ *     force the mapping after every save.</li>
+ *     <li>Write-ahead log: {@link #NONE} and {@link #OS_FLUSH} do not force the log on save, {@link #FSYNC} forces it for every save (concurrent
+ *     saves may still share one force), {@link #GROUP_COMMIT} waits for the group commit window first.</li>
+ *     <li>SQLite: {@code PRAGMA synchronous} is set to {@code OFF} for {@link #NONE}, {@code NORMAL} for {@link #OS_FLUSH} and {@code FULL} for
+ *     {@link #FSYNC} and {@link #GROUP_COMMIT}. {@link #GROUP_COMMIT} also commits concurrent saves in one transaction.</li>
+ *     <li>SQL: {@link #GROUP_COMMIT} sends concurrent saves as one batch in one transaction. Whether a commit is forced to the storage device is
+ *     given by the database server's configuration (e.g. {@code innodb_flush_log_at_trx_commit}), which a client cannot change per save, so
+ *     {@link #NONE}, {@link #OS_FLUSH} and {@link #FSYNC} cannot be honoured and behave the same.</li>
+ * </ul>
+ */
+public enum Durability {
+
+    /**
+     * Nothing is flushed. Fastest. Data may be lost on process or system crash, e.g. when the handler buffers them in memory. Useful for
+     * cache-like data.
+     */
+    NONE,
+
+    /**
+     * Data is handed to the operating system before the save returns. Survives process crash, but not power loss or system crash. Costs a
+     * system call per save.
+     */
+    OS_FLUSH,
+
+    /**
+     * Data is forced to the storage device before the save returns. Survives power loss. Costs an fsync per save, which is usually milliseconds
+     * on disks and tens to hundreds of microseconds on SSDs.
+     */
+    FSYNC,
+
+    /**
+     * Same guarantee as {@link #FSYNC}, but concurrent saves share one fsync where the handler supports it. Single save may wait a bit longer,
+     * throughput of concurrent saves is much higher.
+     */
+    GROUP_COMMIT;
+
+    /**
+     * Checks if this level requires data to be forced to the storage device
+     *
+     * @return True for {@link #FSYNC} and {@link #GROUP_COMMIT}
+     */
+    public boolean isForced() {
+        return this == FSYNC || this == GROUP_COMMIT;
+    }
+}
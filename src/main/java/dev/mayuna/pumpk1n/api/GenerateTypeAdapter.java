@@ -0,0 +1,30 @@
+package dev.mayuna.pumpk1n.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link DataElement} for which the {@code pumpk1n-processor} annotation processor should generate a streaming Gson
+ * {@link com.google.gson.TypeAdapterFactory}. Generated factories are picked up automatically by
+ * {@link dev.mayuna.pumpk1n.objects.DataHolder}, so (de)serialization of the element does not use reflection.<br>
+ * Annotated class must have public no-args constructor and all of its serialized fields must be non-private and non-final. Neither the class
+ * nor its fields may be annotated with {@link com.google.gson.annotations.JsonAdapter}.<br>
+ * If the {@link DataElement#getGsonBuilder()} configures anything the generated adapter does not support (ex.
+ * {@link com.google.gson.FieldNamingPolicy}, exclusion strategies or version), Gson's reflective adapter is used instead.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateTypeAdapter {
+
+    /**
+     * Whether only fields annotated with {@link com.google.gson.annotations.Expose} should be (de)serialized. Set this to true if your
+     * {@link DataElement#getGsonBuilder()} uses {@link com.google.gson.GsonBuilder#excludeFieldsWithoutExposeAnnotation()}. If it
+     * does not match the {@link com.google.gson.Gson}, the generated adapter is not used and Gson falls back to reflection.
+     *
+     * @return True if only exposed fields should be (de)serialized
+     */
+    boolean exposedOnly() default false;
+
+}
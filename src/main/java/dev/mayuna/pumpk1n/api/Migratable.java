@@ -4,6 +4,7 @@ import lombok.NonNull;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * You can implement this interface into your custom storage handlers and make them migratable to other migratable storage handlers
@@ -17,4 +18,13 @@ public interface Migratable {
      */
     @NonNull List<UUID> getAllHolderUUIDs();
 
+    /**
+     * Returns all UUIDs of holders in the storage as a lazily populated {@link Stream}, if the storage handler supports it. The stream should be
+     * closed after use (e.g. using try-with-resources). By default, it returns stream of {@link #getAllHolderUUIDs()}.
+     *
+     * @return Non-null stream of UUIDs
+     */
+    default @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        return getAllHolderUUIDs().stream();
+    }
 }
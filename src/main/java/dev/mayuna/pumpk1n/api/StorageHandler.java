@@ -7,6 +7,11 @@ import lombok.NonNull;
 import lombok.Setter;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for storage handlers
@@ -14,8 +19,15 @@ import java.util.UUID;
 @Getter
 public abstract class StorageHandler {
 
+    /**
+     * Shared pool of daemon threads used for asynchronous operations of storage handlers which do not have their own executor
+     */
+    public static final ExecutorService DEFAULT_ASYNC_EXECUTOR = createDefaultAsyncExecutor();
+
     protected final String name;
     protected @Setter Pumpk1n pumpk1n;
+    protected @Setter @NonNull Executor asyncExecutor = DEFAULT_ASYNC_EXECUTOR;
+    protected @Setter @NonNull Durability durability = Durability.OS_FLUSH;
 
     /**
      * Creates StorageHandler with name
@@ -26,6 +38,30 @@ public abstract class StorageHandler {
         this.name = name;
     }
 
+    /**
+     * Sets whether writes should be forced to the storage device
+     *
+     * @param forceWrites True for {@link Durability#FSYNC}, false for {@link Durability#OS_FLUSH}
+     *
+     * @deprecated Use {@link #setDurability(Durability)}
+     */
+    @Deprecated
+    public void setForceWrites(boolean forceWrites) {
+        setDurability(forceWrites ? Durability.FSYNC : Durability.OS_FLUSH);
+    }
+
+    /**
+     * Checks if writes are forced to the storage device
+     *
+     * @return True if {@link #getDurability()} forces writes
+     *
+     * @deprecated Use {@link #getDurability()}
+     */
+    @Deprecated
+    public boolean isForceWrites() {
+        return durability.isForced();
+    }
+
     /**
      * Prepares the storage
      */
@@ -55,4 +91,69 @@ public abstract class StorageHandler {
      * @return True if holder was removed, false otherwise
      */
     public abstract boolean removeHolder(@NonNull UUID uuid);
+
+    /**
+     * Checks if specified {@link DataHolder} exists in storage. By default, the holder is loaded, storage handlers which can tell it cheaper
+     * override this method.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return True if holder exists, false otherwise
+     */
+    public boolean holderExists(@NonNull UUID uuid) {
+        return loadHolder(uuid) != null;
+    }
+
+    /**
+     * Called when {@link DataHolder} is unloaded from memory by {@link dev.mayuna.pumpk1n.Pumpk1n#unloadDataHolder(UUID)}, so the storage
+     * handler can release anything it keeps for the holder. Does nothing by default.
+     *
+     * @param uuid Non-null UUID
+     */
+    public void onHolderUnloaded(@NonNull UUID uuid) {
+    }
+
+    /**
+     * Saves specified {@link DataHolder} asynchronously. By default, {@link #saveHolder(DataHolder)} is called on {@link #getAsyncExecutor()}.
+     * The {@link DataHolder} must not be modified until the returned future completes, consider saving {@link DataHolder#snapshot()}.
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null {@link CompletableFuture} which completes when the holder is saved
+     */
+    public @NonNull CompletableFuture<Void> saveHolderAsync(@NonNull DataHolder dataHolder) {
+        return CompletableFuture.runAsync(() -> saveHolder(dataHolder), asyncExecutor);
+    }
+
+    /**
+     * Loads specified {@link DataHolder} asynchronously. By default, {@link #loadHolder(UUID)} is called on {@link #getAsyncExecutor()}.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return Non-null {@link CompletableFuture} with nullable {@link DataHolder}
+     */
+    public @NonNull CompletableFuture<DataHolder> loadHolderAsync(@NonNull UUID uuid) {
+        return CompletableFuture.supplyAsync(() -> loadHolder(uuid), asyncExecutor);
+    }
+
+    /**
+     * Removes specified {@link DataHolder} asynchronously. By default, {@link #removeHolder(UUID)} is called on {@link #getAsyncExecutor()}.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return Non-null {@link CompletableFuture} with true if holder was removed, false otherwise
+     */
+    public @NonNull CompletableFuture<Boolean> removeHolderAsync(@NonNull UUID uuid) {
+        return CompletableFuture.supplyAsync(() -> removeHolder(uuid), asyncExecutor);
+    }
+
+    private static ExecutorService createDefaultAsyncExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), runnable -> {
+            Thread thread = new Thread(runnable, "Pumpk1n-IO-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 }
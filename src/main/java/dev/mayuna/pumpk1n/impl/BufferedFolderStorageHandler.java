@@ -1,30 +1,61 @@
 package dev.mayuna.pumpk1n.impl;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import dev.mayuna.mayusjsonutils.MayuJson;
 import dev.mayuna.pumpk1n.api.Migratable;
 import dev.mayuna.pumpk1n.api.StorageHandler;
 import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.FileUtils;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.ShardLayout;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 /**
- * A storage handler that saves data holders to a folder with multiple buffers (folders). Useful when your program can exit while writing data (e.g., power-loss).
+ * A storage handler that saves data holders to a folder with multiple buffers (folders). Useful when your program can exit while writing data (e.g., power-loss).<br>
+ * Every save is written into a temporary file which is then atomically renamed. Buffers are kept as generations: buffer 0 is the newest save,
+ * buffer 1 is the previous one and so on. Older generations are rotated by renaming, so the data holder is serialized and written only once per
+ * save.<br>
+ * Files can be fanned out into sub-directories using {@link ShardLayout}.
  */
 public class BufferedFolderStorageHandler extends StorageHandler implements Migratable {
 
     protected final @Getter String folderPath;
     protected final @Getter int buffers;
+    protected final @Getter ShardLayout shardLayout;
     protected File folder;
 
     public BufferedFolderStorageHandler(@NonNull String folderPath, int buffers) {
+        this(folderPath, buffers, ShardLayout.FLAT);
+    }
+
+    /**
+     * Creates {@link BufferedFolderStorageHandler} with specified {@link ShardLayout}. If you change layout of existing storage, call
+     * {@link #relayout()} before using it.
+     *
+     * @param folderPath  Non-null folder path
+     * @param buffers     Number of buffers (generations)
+     * @param shardLayout Non-null {@link ShardLayout}
+     */
+    public BufferedFolderStorageHandler(@NonNull String folderPath, int buffers, @NonNull ShardLayout shardLayout) {
         super(BufferedFolderStorageHandler.class.getSimpleName());
 
         if (!folderPath.endsWith("/")) {
@@ -33,6 +64,7 @@ public class BufferedFolderStorageHandler extends StorageHandler implements Migr
 
         this.folderPath = folderPath;
         this.buffers = buffers;
+        this.shardLayout = shardLayout;
     }
 
     @Override
@@ -46,48 +78,214 @@ public class BufferedFolderStorageHandler extends StorageHandler implements Migr
         }
     }
 
+    /**
+     * Saves specified {@link DataHolder}. The data holder is serialized once into temporary file as a record with {@link RecordHeader}, which
+     * is (if {@link #getDurability()} requires it) forced to the storage device. Then, existing generations are rotated and the temporary file is
+     * atomically renamed to the newest generation. The renames are forced to the storage device as well, by forcing the directory.
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     */
     @Override
     public void saveHolder(@NonNull DataHolder dataHolder) {
+        UUID uuid = dataHolder.getUuid();
+        SerializationBuffers serializationBuffers = SerializationBuffers.acquire();
+
+        try {
+            Path tempPath = Paths.get(getTempFileName(uuid));
+
+            if (!shardLayout.isFlat()) {
+                Files.createDirectories(tempPath.getParent());
+            }
+
+            ByteBuffer payload = serializationBuffers.encode(serializationBuffers.write(dataHolder));
+            RecordHeader header = RecordHeader.create(readNewestGeneration(uuid) + 1, payload);
+
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                FileUtils.writeFully(channel, header.toByteBuffer());
+                FileUtils.writeFully(channel, payload);
+
+                if (durability.isForced()) {
+                    channel.force(false);
+                }
+            }
+
+            rotateGenerations(uuid);
+
+            // All generations are in the same directory, forcing it persists the rotation too
+            FileUtils.move(tempPath, Paths.get(getFileName(uuid, 0)), durability.isForced());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save Data Holder with UUID " + uuid + "!", e);
+        } finally {
+            serializationBuffers.release();
+        }
+    }
+
+    /**
+     * Shifts existing generations by one, the oldest generation is overwritten
+     *
+     * @param uuid Non-null {@link UUID}
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    protected void rotateGenerations(@NonNull UUID uuid) throws IOException {
+        for (int i = buffers - 1; i > 0; i--) {
+            Path previousGeneration = Paths.get(getFileName(uuid, i - 1));
+
+            if (Files.exists(previousGeneration)) {
+                FileUtils.move(previousGeneration, Paths.get(getFileName(uuid, i)));
+            }
+        }
+    }
+
+    /**
+     * Reads the newest generation of all buffers. All buffers are read, as the first one may be invalid (e.g. torn write), while older ones
+     * still have valid headers with higher generations than a new save would otherwise get.
+     *
+     * @param uuid Non-null {@link UUID}
+     *
+     * @return Generation or 0 if there's no valid buffer
+     */
+    protected long readNewestGeneration(@NonNull UUID uuid) {
+        long newestGeneration = 0;
+
         for (int i = 0; i < buffers; i++) {
-            File file = new File(getFileName(dataHolder.getUuid(), i));
+            RecordHeader header = readHeader(Paths.get(getFileName(uuid, i)));
 
-            try {
-                new MayuJson(file.toPath(), dataHolder.getAsJsonObject()).save();
-            } catch (IOException e) {
-                throw new RuntimeException("Could not save Data Holder with UUID " + dataHolder.getUuid() + "!", e);
+            if (header != null) {
+                newestGeneration = Math.max(newestGeneration, header.getGeneration());
             }
         }
+
+        return newestGeneration;
     }
 
+    /**
+     * Loads specified {@link DataHolder}. Only headers of all buffers are read at first, then the buffer with the newest valid generation is
+     * parsed. If its checksum does not match (e.g. torn write), the next newest one is used. Buffers written by older versions without header
+     * are used only if there's no valid record.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return Nullable {@link DataHolder}
+     */
     @Override
     public DataHolder loadHolder(@NonNull UUID uuid) {
-        JsonObject jsonObject = null;
-        Exception lastException = null;
+        List<Path> legacyPaths = new ArrayList<>(0);
+        List<Path> recordPaths = new ArrayList<>(buffers);
+        List<RecordHeader> recordHeaders = new ArrayList<>(buffers);
 
         for (int i = 0; i < buffers; i++) {
-            File file = new File(getFileName(uuid, i));
+            Path path = Paths.get(getFileName(uuid, i));
 
-            if (!file.exists()) {
+            if (!Files.exists(path)) {
                 continue;
             }
 
+            if (RecordHeader.isLegacy(path)) {
+                legacyPaths.add(path);
+                continue;
+            }
+
+            RecordHeader header = readHeader(path);
+
+            if (header != null) {
+                recordPaths.add(path);
+                recordHeaders.add(header);
+            }
+        }
+
+        Exception lastException = null;
+
+        while (!recordHeaders.isEmpty()) {
+            int newestIndex = 0;
+
+            for (int i = 1; i < recordHeaders.size(); i++) {
+                if (recordHeaders.get(i).getGeneration() > recordHeaders.get(newestIndex).getGeneration()) {
+                    newestIndex = i;
+                }
+            }
+
+            Path path = recordPaths.remove(newestIndex);
+            RecordHeader header = recordHeaders.remove(newestIndex);
+
             try {
-                jsonObject = MayuJson.createOrLoadJsonObject(file.toPath()).getJsonObject();
+                JsonObject jsonObject = readRecord(path, header);
+
+                if (jsonObject != null) {
+                    return DataHolder.loadFromJsonObject(getPumpk1n(), jsonObject);
+                }
+            } catch (Exception e) {
+                lastException = e;
+            }
+        }
+
+        for (Path path : legacyPaths) {
+            try {
+                JsonObject jsonObject = MayuJson.createOrLoadJsonObject(path).getJsonObject();
                 return DataHolder.loadFromJsonObject(getPumpk1n(), jsonObject);
             } catch (Exception e) {
                 lastException = e;
             }
         }
 
-        if (jsonObject == null) {
-            if (lastException == null) {
+        if (lastException == null) {
+            return null;
+        }
+
+        throw new RuntimeException("Could not load Data Holder with UUID " + uuid + "!", lastException);
+    }
+
+    /**
+     * Reads header of the record
+     *
+     * @param path Non-null {@link Path}
+     *
+     * @return Nullable {@link RecordHeader}, null if the file does not exist or its header or length is not valid
+     */
+    protected RecordHeader readHeader(@NonNull Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            RecordHeader header = RecordHeader.read(channel);
+
+            if (header == null || channel.size() != RecordHeader.SIZE + (long) header.getLength()) {
                 return null;
             }
 
-            throw new RuntimeException("Could not load Data Holder with UUID " + uuid + "!", lastException);
+            return header;
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads record's payload and verifies its checksum
+     *
+     * @param path   Non-null {@link Path}
+     * @param header Non-null {@link RecordHeader} of the record
+     *
+     * @return Nullable {@link JsonObject}, null if the checksum does not match
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    protected JsonObject readRecord(@NonNull Path path, @NonNull RecordHeader header) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(header.getLength());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(RecordHeader.SIZE);
+
+            while (payload.hasRemaining()) {
+                if (channel.read(payload) == -1) {
+                    return null;
+                }
+            }
+        }
+
+        payload.flip();
+
+        if (!header.matches(payload)) {
+            return null;
         }
 
-        return DataHolder.loadFromJsonObject(getPumpk1n(), jsonObject);
+        return JsonParser.parseString(StandardCharsets.UTF_8.decode(payload).toString()).getAsJsonObject();
     }
 
     @Override
@@ -103,11 +301,38 @@ public class BufferedFolderStorageHandler extends StorageHandler implements Migr
             success = file.delete();
         }
 
+        if (success && durability.isForced()) {
+            try {
+                FileUtils.forceDirectory(Paths.get(getFileName(uuid, 0)).toAbsolutePath().getParent());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not remove Data Holder with UUID " + uuid + "!", e);
+            }
+        }
+
         return success;
     }
 
+    @Override
+    public boolean holderExists(@NonNull UUID uuid) {
+        for (int i = 0; i < buffers; i++) {
+            if (Files.exists(Paths.get(getFileName(uuid, i)))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected String getTempFileName(UUID uuid) {
+        String uuidString = uuid.toString();
+
+        // Thread ID prevents concurrent saves of the same holder from writing into the same temporary file
+        return folderPath + shardLayout.getRelativeDirectory(uuidString) + uuidString + "." + Thread.currentThread().getId() + ".tmp";
+    }
+
     protected String getFileName(UUID uuid, int iteration) {
-        String path = folderPath + uuid.toString();
+        String uuidString = uuid.toString();
+        String path = folderPath + shardLayout.getRelativeDirectory(uuidString) + uuidString;
 
         if (iteration != 0) {
             path += "_" + iteration;
@@ -116,6 +341,24 @@ public class BufferedFolderStorageHandler extends StorageHandler implements Migr
         return path + ".json";
     }
 
+    /**
+     * Moves all existing files to their place in current {@link ShardLayout}. Storage must not be used while relayout is in progress.
+     *
+     * @return Number of moved files
+     */
+    public int relayout() {
+        try {
+            return shardLayout.relayout(Paths.get(folderPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not relayout folder " + folderPath + "!", e);
+        }
+    }
+
+    /**
+     * Returns all UUIDs of holders in the storage. Shard directories are listed in parallel.
+     *
+     * @return Non-null list of UUIDs
+     */
     @Override
     public List<UUID> getAllHolderUUIDs() {
         File folder = new File(folderPath);
@@ -124,30 +367,216 @@ public class BufferedFolderStorageHandler extends StorageHandler implements Migr
             return new ArrayList<>(0);
         }
 
-        File files[] = folder.listFiles();
+        return shardLayout.getLeafDirectories(folder).parallelStream().flatMap(this::streamHolderUUIDs).collect(Collectors.toList());
+    }
 
-        if (files == null) {
-            return new ArrayList<>(0);
+    /**
+     * Lazily lists all UUIDs of holders in the storage. Every holder is listed once, by its canonical file, see
+     * {@link #isCanonicalFile(UUID, int)}. The stream must be closed after use.
+     *
+     * @return Non-null stream of UUIDs
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        File folder = new File(folderPath);
+
+        if (!folder.exists()) {
+            return Stream.empty();
         }
 
-        List<UUID> uuids = new LinkedList<>();
+        return shardLayout.getLeafDirectories(folder).stream().flatMap(this::streamHolderUUIDs);
+    }
 
-        for (File file : files) {
-            UUID uuid = null;
+    protected Stream<UUID> streamHolderUUIDs(File directory) {
+        try {
+            return FileUtils.list(directory.toPath())
+                            .map(path -> parseCanonicalHolderUUID(path.getFileName().toString()))
+                            .filter(Objects::nonNull);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list directory " + directory + "!", e);
+        }
+    }
+
+    /**
+     * Parses holder's UUID from file name, if the file is holder's canonical file
+     *
+     * @param fileName Non-null file name
+     *
+     * @return Nullable {@link UUID}, null if the file is not holder's canonical file
+     */
+    protected UUID parseCanonicalHolderUUID(@NonNull String fileName) {
+        // <uuid>.json or <uuid>_<buffer>.json
+        if (!fileName.endsWith(".json")) {
+            return null;
+        }
+
+        int suffixStart = fileName.length() - 5;
+        int buffer = 0;
+
+        if (suffixStart != FileUtils.UUID_STRING_LENGTH) {
+            if (suffixStart < FileUtils.UUID_STRING_LENGTH + 2 || fileName.charAt(FileUtils.UUID_STRING_LENGTH) != '_') {
+                return null;
+            }
+
+            for (int i = FileUtils.UUID_STRING_LENGTH + 1; i < suffixStart; i++) {
+                if (!Character.isDigit(fileName.charAt(i))) {
+                    return null;
+                }
+            }
 
             try {
-                String fileName = file.getName();
-                uuid = UUID.fromString(fileName.replaceFirst("(_\\d*.json)$", ""));
-            } catch (IllegalArgumentException ignored) {
+                buffer = Integer.parseInt(fileName.substring(FileUtils.UUID_STRING_LENGTH + 1, suffixStart));
+            } catch (NumberFormatException ignored) {
+                return null;
             }
+        }
+
+        UUID uuid = FileUtils.parseUUIDPrefix(fileName);
+
+        if (uuid == null || !isCanonicalFile(uuid, buffer)) {
+            return null;
+        }
 
-            if (uuid != null) {
-                if (!uuids.contains(uuid)) {
-                    uuids.add(uuid);
+        return uuid;
+    }
+
+    /**
+     * Checks if specified buffer is holder's canonical file, which is the newest existing buffer. That is buffer 0, or the next one if the
+     * save was interrupted after rotating the generations.
+     *
+     * @param uuid   Non-null {@link UUID}
+     * @param buffer Buffer number
+     *
+     * @return True if none of the newer buffers exists
+     */
+    protected boolean isCanonicalFile(@NonNull UUID uuid, int buffer) {
+        for (int i = 0; i < buffer; i++) {
+            if (Files.exists(Paths.get(getFileName(uuid, i)))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Header of a record within buffer file. Consists of magic bytes, format version, generation, payload length and CRC32 of the payload.
+     */
+    @Getter
+    public static class RecordHeader {
+
+        public static final int MAGIC = 0x504B4E52; // PKNR
+        public static final byte VERSION = 1;
+        public static final int SIZE = 4 + 1 + 8 + 4 + 4;
+
+        protected final long generation;
+        protected final int length;
+        protected final int checksum;
+
+        public RecordHeader(long generation, int length, int checksum) {
+            this.generation = generation;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Creates {@link RecordHeader} for specified payload
+         *
+         * @param generation Record's generation
+         * @param payload    Non-null {@link ByteBuffer}, its position is not changed
+         *
+         * @return Non-null {@link RecordHeader}
+         */
+        public static @NonNull RecordHeader create(long generation, @NonNull ByteBuffer payload) {
+            return new RecordHeader(generation, payload.remaining(), computeChecksum(payload));
+        }
+
+        /**
+         * Reads {@link RecordHeader} from the start of the channel
+         *
+         * @param channel Non-null {@link FileChannel}
+         *
+         * @return Nullable {@link RecordHeader}, null if the header is not complete or not valid
+         *
+         * @throws IOException If an I/O error occurs
+         */
+        public static RecordHeader read(@NonNull FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) == -1) {
+                    return null;
                 }
             }
+
+            buffer.flip();
+
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return null;
+            }
+
+            long generation = buffer.getLong();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length < 0) {
+                return null;
+            }
+
+            return new RecordHeader(generation, length, checksum);
+        }
+
+        /**
+         * Checks if the file was written without header (by older versions)
+         *
+         * @param path Non-null {@link Path}
+         *
+         * @return True if the file does not start with {@link #MAGIC}
+         */
+        public static boolean isLegacy(@NonNull Path path) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(4);
+
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) {
+                        return false;
+                    }
+                }
+
+                buffer.flip();
+                return buffer.getInt() != MAGIC;
+            } catch (IOException ignored) {
+                return false;
+            }
+        }
+
+        protected static int computeChecksum(ByteBuffer payload) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(payload.duplicate());
+            return (int) crc32.getValue();
+        }
+
+        /**
+         * Checks if the payload matches this header's length and checksum
+         *
+         * @param payload Non-null {@link ByteBuffer}, its position is not changed
+         *
+         * @return True if matches
+         */
+        public boolean matches(@NonNull ByteBuffer payload) {
+            return payload.remaining() == length && computeChecksum(payload) == checksum;
         }
 
-        return uuids;
+        /**
+         * Writes this header into new {@link ByteBuffer}
+         *
+         * @return Non-null flipped {@link ByteBuffer}
+         */
+        public @NonNull ByteBuffer toByteBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+            buffer.putInt(MAGIC).put(VERSION).putLong(generation).putInt(length).putInt(checksum);
+            buffer.flip();
+            return buffer;
+        }
     }
 }
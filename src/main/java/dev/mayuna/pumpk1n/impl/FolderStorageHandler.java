@@ -1,29 +1,59 @@
 package dev.mayuna.pumpk1n.impl;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import dev.mayuna.mayusjsonutils.MayuJson;
 import dev.mayuna.pumpk1n.api.Migratable;
 import dev.mayuna.pumpk1n.api.StorageHandler;
 import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.FileUtils;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.ShardLayout;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
- * Folder based storage
+ * Folder based storage. Files can be fanned out into sub-directories using {@link ShardLayout}. Files are forced to the storage device if
+ * {@link #getDurability()} is {@link dev.mayuna.pumpk1n.api.Durability#FSYNC} or {@link dev.mayuna.pumpk1n.api.Durability#GROUP_COMMIT}. Saves
+ * write into a temporary file which is then atomically moved over the holder's file, so concurrent saves do not interleave and loads never see
+ * partially written file.
  */
 public class FolderStorageHandler extends StorageHandler implements Migratable {
 
     protected final @Getter String folderPath;
+    protected final @Getter ShardLayout shardLayout;
+    protected final AtomicLong tempFileCounter = new AtomicLong();
     protected File folder;
 
     public FolderStorageHandler(@NonNull String folderPath) {
+        this(folderPath, ShardLayout.FLAT);
+    }
+
+    /**
+     * Creates {@link FolderStorageHandler} with specified {@link ShardLayout}. If you change layout of existing storage, call
+     * {@link #relayout()} before using it.
+     *
+     * @param folderPath  Non-null folder path
+     * @param shardLayout Non-null {@link ShardLayout}
+     */
+    public FolderStorageHandler(@NonNull String folderPath, @NonNull ShardLayout shardLayout) {
         super(FolderStorageHandler.class.getSimpleName());
 
         if (!folderPath.endsWith("/")) {
@@ -31,6 +61,7 @@ public class FolderStorageHandler extends StorageHandler implements Migratable {
         }
 
         this.folderPath = folderPath;
+        this.shardLayout = shardLayout;
     }
 
     @Override
@@ -46,15 +77,97 @@ public class FolderStorageHandler extends StorageHandler implements Migratable {
 
     @Override
     public void saveHolder(@NonNull DataHolder dataHolder) {
-        File file = new File(getFileName(dataHolder.getUuid()));
+        UUID uuid = dataHolder.getUuid();
+        Path tempPath = Paths.get(getTempFileName(uuid));
+        SerializationBuffers buffers = SerializationBuffers.acquire();
 
         try {
-            new MayuJson(file.toPath(), dataHolder.getAsJsonObject()).save();
+            if (!shardLayout.isFlat()) {
+                Files.createDirectories(tempPath.getParent());
+            }
+
+            FileUtils.write(tempPath, buffers.encode(buffers.write(dataHolder)), durability.isForced());
+            FileUtils.move(tempPath, Paths.get(getFileName(uuid)), durability.isForced());
         } catch (IOException e) {
+            deleteQuietly(tempPath);
             throw new RuntimeException("Could not save Data Holder with UUID " + dataHolder.getUuid() + "!", e);
+        } finally {
+            buffers.release();
         }
     }
 
+    /**
+     * Saves specified {@link DataHolder} asynchronously. The holder is serialized on the calling thread and written into a temporary file using
+     * {@link java.nio.channels.AsynchronousFileChannel}, so many saves can be in flight at once. The temporary file is then atomically moved over
+     * the holder's file; if saves of the same holder overlap, the one which finishes last wins.
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null {@link CompletableFuture} which completes when the holder is saved
+     */
+    @Override
+    public @NonNull CompletableFuture<Void> saveHolderAsync(@NonNull DataHolder dataHolder) {
+        UUID uuid = dataHolder.getUuid();
+        Path tempPath = Paths.get(getTempFileName(uuid));
+        ByteBuffer bytes;
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            if (!shardLayout.isFlat()) {
+                Files.createDirectories(tempPath.getParent());
+            }
+
+            // Pooled buffers are reused after release, the write needs its own copy
+            ByteBuffer encoded = buffers.encode(buffers.write(dataHolder));
+            bytes = ByteBuffer.allocate(encoded.remaining());
+            bytes.put(encoded).flip();
+        } catch (IOException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("Could not save Data Holder with UUID " + uuid + "!", e));
+            return future;
+        } finally {
+            buffers.release();
+        }
+
+        return FileUtils.writeAsync(tempPath, bytes, durability.isForced(), asyncExecutor).handle((result, throwable) -> {
+            Throwable cause = throwable;
+
+            if (cause == null) {
+                try {
+                    FileUtils.move(tempPath, Paths.get(getFileName(uuid)), durability.isForced());
+                    return null;
+                } catch (IOException e) {
+                    cause = e;
+                }
+            }
+
+            deleteQuietly(tempPath);
+            throw new RuntimeException("Could not save Data Holder with UUID " + uuid + "!", cause);
+        });
+    }
+
+    /**
+     * Loads specified {@link DataHolder} asynchronously using {@link java.nio.channels.AsynchronousFileChannel}
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return Non-null {@link CompletableFuture} with nullable {@link DataHolder}
+     */
+    @Override
+    public @NonNull CompletableFuture<DataHolder> loadHolderAsync(@NonNull UUID uuid) {
+        return FileUtils.readAsync(Paths.get(getFileName(uuid)), asyncExecutor).handle((bytes, throwable) -> {
+            if (throwable != null) {
+                throw new RuntimeException("Could not load Data Holder with UUID " + uuid + "!", throwable);
+            }
+
+            if (bytes == null) {
+                return null;
+            }
+
+            return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(StandardCharsets.UTF_8.decode(bytes).toString()).getAsJsonObject());
+        });
+    }
+
     @Override
     public DataHolder loadHolder(@NonNull UUID uuid) {
         File file = new File(getFileName(uuid));
@@ -79,13 +192,63 @@ public class FolderStorageHandler extends StorageHandler implements Migratable {
             return false;
         }
 
-        return file.delete();
+        if (!file.delete()) {
+            return false;
+        }
+
+        if (durability.isForced()) {
+            try {
+                FileUtils.forceDirectory(file.toPath().toAbsolutePath().getParent());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not remove Data Holder with UUID " + uuid + "!", e);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean holderExists(@NonNull UUID uuid) {
+        return new File(getFileName(uuid)).exists();
     }
 
     protected String getFileName(@NonNull UUID uuid) {
-        return folderPath + uuid.toString() + ".json";
+        String uuidString = uuid.toString();
+        return folderPath + shardLayout.getRelativeDirectory(uuidString) + uuidString + ".json";
     }
 
+    protected String getTempFileName(@NonNull UUID uuid) {
+        String uuidString = uuid.toString();
+
+        // Counter prevents overlapping saves of the same holder from writing into the same temporary file, even if started by one thread
+        return folderPath + shardLayout.getRelativeDirectory(uuidString) + uuidString + "." + tempFileCounter.incrementAndGet() + ".tmp";
+    }
+
+    protected static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Moves all existing files to their place in current {@link ShardLayout}. Storage must not be used while relayout is in progress.
+     *
+     * @return Number of moved files
+     */
+    public int relayout() {
+        try {
+            return shardLayout.relayout(Paths.get(folderPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not relayout folder " + folderPath + "!", e);
+        }
+    }
+
+    /**
+     * Returns all UUIDs of holders in the storage. Shard directories are listed in parallel.
+     *
+     * @return Non-null list of UUIDs
+     */
     @Override
     public List<UUID> getAllHolderUUIDs() {
         File folder = new File(folderPath);
@@ -94,29 +257,49 @@ public class FolderStorageHandler extends StorageHandler implements Migratable {
             return new ArrayList<>(0);
         }
 
-        File files[] = folder.listFiles();
+        Set<UUID> uuids = ConcurrentHashMap.newKeySet();
 
-        if (files == null) {
-            return new ArrayList<>(0);
-        }
+        shardLayout.getLeafDirectories(folder).parallelStream().forEach(directory -> {
+            try (Stream<UUID> directoryUUIDs = streamHolderUUIDs(directory)) {
+                directoryUUIDs.forEach(uuids::add);
+            }
+        });
 
-        List<UUID> uuids = new LinkedList<>();
+        return new ArrayList<>(uuids);
+    }
 
-        for (File file : files) {
-            UUID uuid = null;
+    /**
+     * Lazily lists all UUIDs of holders in the storage. The stream must be closed after use.
+     *
+     * @return Non-null stream of UUIDs
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        File folder = new File(folderPath);
 
-            try {
-                uuid = UUID.fromString(file.getName().replace(".json", ""));
-            } catch (IllegalArgumentException ignored) {
-            }
+        if (!folder.exists()) {
+            return Stream.empty();
+        }
 
-            if (uuid != null) {
-                if (!uuids.contains(uuid)) {
-                    uuids.add(uuid);
-                }
-            }
+        return shardLayout.getLeafDirectories(folder).stream().flatMap(this::streamHolderUUIDs);
+    }
+
+    protected Stream<UUID> streamHolderUUIDs(File directory) {
+        try {
+            return FileUtils.list(directory.toPath())
+                            .map(path -> parseHolderUUID(path.getFileName().toString()))
+                            .filter(Objects::nonNull);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list directory " + directory + "!", e);
+        }
+    }
+
+    protected UUID parseHolderUUID(String fileName) {
+        // <uuid>.json
+        if (fileName.length() != FileUtils.UUID_STRING_LENGTH + 5 || !fileName.endsWith(".json")) {
+            return null;
         }
 
-        return uuids;
+        return FileUtils.parseUUIDPrefix(fileName);
     }
 }
@@ -0,0 +1,954 @@
+package dev.mayuna.pumpk1n.impl;
+
+import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.api.Durability;
+import dev.mayuna.pumpk1n.api.Migratable;
+import dev.mayuna.pumpk1n.api.StorageHandler;
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.FileUtils;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.SharedFileChannel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log-structured storage (Bitcask-like). Every save and removal is appended as a record into the active segment file, and an
+ * in-memory index maps holder's UUID to the location of its newest record. Loads are a single positional read.<br> Full segments become
+ * immutable and get a hint file (compact copy of their index), so startup does not need to scan them. Background compactor merges immutable
+ * segments into one, dropping overwritten and removed records.<br> With {@link Durability#FSYNC}, the active segment is forced after every save;
+ * with {@link Durability#GROUP_COMMIT}, concurrent saves share one force. Segments are accessed through {@link SharedFileChannel}, so
+ * interrupting a caller does not break them for others.<br> Only one instance of this storage handler may use the folder at a
+ * time. Call {@link #close()} when you're done.
+ */
+public class LogStructuredStorageHandler extends StorageHandler implements Migratable {
+
+    protected static final String SEGMENT_PREFIX = "segment-";
+    protected static final String SEGMENT_SUFFIX = ".log";
+    protected static final String HINT_SUFFIX = ".hint";
+    protected static final String COMPACTED_SUFFIX = ".compacted";
+    protected static final String TEMP_SUFFIX = ".tmp";
+
+    protected static final byte TYPE_PUT = 1;
+    protected static final byte TYPE_DELETE = 2;
+
+    /**
+     * Record: CRC32 (of the rest), type, UUID (most significant bits), UUID (least significant bits), payload length, payload
+     */
+    protected static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8 + 4;
+
+    /**
+     * Hint entry: type, UUID (most significant bits), UUID (least significant bits), record offset, record size
+     */
+    protected static final int HINT_ENTRY_SIZE = 1 + 8 + 8 + 8 + 4;
+
+    protected static final int MAX_READ_ATTEMPTS = 5;
+
+    protected final @Getter Settings settings;
+    protected final Path folder;
+
+    protected final Map<UUID, IndexEntry> index = new ConcurrentHashMap<>();
+    protected final List<Segment> segments = new ArrayList<>(); // Sorted by ID, guarded by writeLock
+    protected final Object writeLock = new Object();
+    protected final Object compactionLock = new Object();
+    protected final Object syncLock = new Object();
+
+    protected Segment activeSegment;
+    protected ScheduledExecutorService compactor;
+    protected volatile boolean prepared;
+    protected long appendedBytes; // Across all segments, guarded by writeLock
+    protected volatile long syncedBytes;
+    protected final AtomicLong syncCount = new AtomicLong();
+
+    /**
+     * Creates {@link LogStructuredStorageHandler} with specified {@link Settings}
+     *
+     * @param settings Non-null {@link Settings}
+     */
+    public LogStructuredStorageHandler(@NonNull Settings settings) {
+        super(LogStructuredStorageHandler.class.getSimpleName());
+        this.settings = settings;
+        this.folder = Paths.get(settings.folderPath);
+    }
+
+    /**
+     * Creates {@link LogStructuredStorageHandler} with default {@link Settings} in specified folder
+     *
+     * @param folderPath Non-null folder path
+     */
+    public LogStructuredStorageHandler(@NonNull String folderPath) {
+        this(Settings.Builder.create().setFolderPath(folderPath).build());
+    }
+
+    /////////////////////
+    // Storage Handler //
+    /////////////////////
+
+    /**
+     * Creates the folder, recovers unfinished compaction, loads index from hint files (or by scanning segments without hint file) and opens new
+     * active segment. Calling this method multiple times has no effect.
+     */
+    @Override
+    public void prepareStorage() {
+        synchronized (writeLock) {
+            if (prepared) {
+                return;
+            }
+
+            try {
+                Files.createDirectories(folder);
+                recoverCompaction();
+                loadSegments();
+                activeSegment = openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1).id + 1, true);
+                segments.add(activeSegment);
+            } catch (IOException exception) {
+                closeSegments();
+                throw new RuntimeException("Could not prepare log-structured storage in folder " + settings.folderPath + "!", exception);
+            }
+
+            if (settings.compactionIntervalMillis > 0) {
+                compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "Pumpk1n-LogCompactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+                compactor.scheduleWithFixedDelay(this::compactIfNeeded, settings.compactionIntervalMillis, settings.compactionIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+
+            prepared = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveHolder(@NonNull DataHolder dataHolder) {
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            append(TYPE_PUT, dataHolder.getUuid(), buffers.encode(buffers.write(dataHolder)));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not save Data Holder with UUID " + dataHolder.getUuid() + "!", exception);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataHolder loadHolder(@NonNull UUID uuid) {
+        IOException lastException = null;
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            IndexEntry entry = index.get(uuid);
+
+            if (entry == null) {
+                return null;
+            }
+
+            try {
+                ByteBuffer payload = readPayload(entry, uuid);
+
+                if (payload != null) {
+                    return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(StandardCharsets.UTF_8.decode(payload).toString()).getAsJsonObject());
+                }
+            } catch (ClosedChannelException exception) {
+                // Segment was compacted in the meantime
+                lastException = exception;
+                continue;
+            } catch (IOException exception) {
+                throw new RuntimeException("Could not load Data Holder with UUID " + uuid + "!", exception);
+            }
+
+            if (index.get(uuid) == entry) {
+                throw new RuntimeException("Could not load Data Holder with UUID " + uuid + ": record is corrupted!");
+            }
+        }
+
+        throw new RuntimeException("Could not load Data Holder with UUID " + uuid + ": index kept changing!", lastException);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeHolder(@NonNull UUID uuid) {
+        if (!index.containsKey(uuid)) {
+            return false;
+        }
+
+        try {
+            return append(TYPE_DELETE, uuid, ByteBuffer.allocate(0));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not remove Data Holder with UUID " + uuid + "!", exception);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean holderExists(@NonNull UUID uuid) {
+        return index.containsKey(uuid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<UUID> getAllHolderUUIDs() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        return index.keySet().stream();
+    }
+
+    /**
+     * Returns number of times the active segment was forced by saves and removals. With {@link Durability#GROUP_COMMIT}, it's usually lower
+     * than number of concurrent saves.
+     *
+     * @return Number of forces
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * Stops background compaction and closes all segments. The storage handler cannot be used afterward unless
+     * {@link #prepareStorage()} is called again.
+     */
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+
+            compactor = null;
+        }
+
+        synchronized (compactionLock) {
+            synchronized (writeLock) {
+                closeSegments();
+                index.clear();
+                activeSegment = null;
+                prepared = false;
+            }
+        }
+    }
+
+    ////////////////
+    // Compaction //
+    ////////////////
+
+    /**
+     * Returns ratio of dead (overwritten or removed) bytes in immutable segments
+     *
+     * @return Ratio between 0 and 1
+     */
+    public double getDeadRatio() {
+        long size = 0;
+        long dead = 0;
+
+        synchronized (writeLock) {
+            for (Segment segment : segments) {
+                if (segment != activeSegment) {
+                    size += segment.size;
+                    dead += segment.deadBytes.get();
+                }
+            }
+        }
+
+        return size == 0 ? 0 : (double) dead / size;
+    }
+
+    /**
+     * Compacts immutable segments if their dead ratio is at least {@link Settings#getCompactionDeadRatio()}
+     */
+    public void compactIfNeeded() {
+        try {
+            if (getDeadRatio() >= settings.compactionDeadRatio) {
+                compact();
+            }
+        } catch (Exception exception) {
+            if (getPumpk1n() != null) {
+                getPumpk1n().getLogger().logMisc("Exception occurred while compacting log-structured storage in folder " + settings.folderPath + "!", exception);
+            }
+        }
+    }
+
+    /**
+     * Merges all immutable segments into one, dropping overwritten and removed records. Saves and loads may run concurrently.
+     *
+     * @return Number of merged segments
+     */
+    public int compact() {
+        synchronized (compactionLock) {
+            List<Segment> mergedSegments = new ArrayList<>();
+
+            synchronized (writeLock) {
+                if (!prepared) {
+                    throw new IllegalStateException("Storage is not prepared!");
+                }
+
+                for (Segment segment : segments) {
+                    if (segment != activeSegment) {
+                        mergedSegments.add(segment);
+                    }
+                }
+            }
+
+            if (mergedSegments.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                compactSegments(mergedSegments);
+            } catch (IOException exception) {
+                throw new RuntimeException("Could not compact log-structured storage in folder " + settings.folderPath + "!", exception);
+            }
+
+            return mergedSegments.size();
+        }
+    }
+
+    /**
+     * Compaction is crash-safe: live records are copied into temporary file which is then renamed to {@code segment-<X>.compacted}, where X is
+     * the newest merged segment. After that, older segments are deleted and the compacted file replaces segment X. If the process crashes in
+     * the meantime, {@link #recoverCompaction()} finishes the work on next start.
+     */
+    protected void compactSegments(List<Segment> mergedSegments) throws IOException {
+        Set<Segment> mergedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        mergedSet.addAll(mergedSegments);
+
+        long targetId = mergedSegments.get(mergedSegments.size() - 1).id;
+        Path tempPath = folder.resolve(segmentFileName(targetId, COMPACTED_SUFFIX + TEMP_SUFFIX));
+        List<Relocation> relocations = new ArrayList<>();
+
+        try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+
+            for (Map.Entry<UUID, IndexEntry> entry : index.entrySet()) {
+                IndexEntry indexEntry = entry.getValue();
+
+                if (!mergedSet.contains(indexEntry.segment)) {
+                    continue;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(indexEntry.size);
+                indexEntry.segment.channel.readFully(record, indexEntry.offset);
+                record.flip();
+
+                FileUtils.writeFully(output, record);
+                relocations.add(new Relocation(entry.getKey(), indexEntry, position));
+                position += indexEntry.size;
+            }
+
+            output.force(true);
+        }
+
+        // Commit point
+        Path compactedPath = folder.resolve(segmentFileName(targetId, COMPACTED_SUFFIX));
+        FileUtils.move(tempPath, compactedPath, true);
+
+        for (Segment segment : mergedSegments) {
+            Files.deleteIfExists(segmentPath(segment.id, HINT_SUFFIX));
+
+            if (segment.id != targetId) {
+                Files.deleteIfExists(segmentPath(segment.id, SEGMENT_SUFFIX));
+            }
+        }
+
+        FileUtils.move(compactedPath, segmentPath(targetId, SEGMENT_SUFFIX), true);
+
+        Segment compactedSegment = openSegment(targetId, false);
+        List<HintEntry> hintEntries = new ArrayList<>(relocations.size());
+
+        synchronized (writeLock) {
+            for (Relocation relocation : relocations) {
+                IndexEntry newEntry = new IndexEntry(compactedSegment, relocation.newOffset, relocation.oldEntry.size);
+
+                if (index.replace(relocation.uuid, relocation.oldEntry, newEntry)) {
+                    hintEntries.add(new HintEntry(TYPE_PUT, relocation.uuid, newEntry.offset, newEntry.size));
+                } else {
+                    compactedSegment.deadBytes.addAndGet(newEntry.size);
+                }
+            }
+
+            segments.removeAll(mergedSegments);
+            segments.add(0, compactedSegment);
+        }
+
+        writeHint(compactedSegment.id, hintEntries);
+
+        for (Segment segment : mergedSegments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Finishes compaction interrupted by a crash
+     */
+    protected void recoverCompaction() throws IOException {
+        List<Path> files;
+
+        try (Stream<Path> stream = FileUtils.list(folder)) {
+            files = stream.collect(java.util.stream.Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+
+            if (fileName.endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+
+            if (!fileName.endsWith(COMPACTED_SUFFIX)) {
+                continue;
+            }
+
+            long targetId = parseSegmentId(fileName, COMPACTED_SUFFIX);
+
+            for (Path other : files) {
+                String otherName = other.getFileName().toString();
+                long otherId = otherName.endsWith(SEGMENT_SUFFIX) ? parseSegmentId(otherName, SEGMENT_SUFFIX)
+                        : otherName.endsWith(HINT_SUFFIX) ? parseSegmentId(otherName, HINT_SUFFIX) : -1;
+
+                if (otherId != -1 && (otherId < targetId || (otherId == targetId && otherName.endsWith(HINT_SUFFIX)))) {
+                    Files.deleteIfExists(other);
+                }
+            }
+
+            FileUtils.move(file, segmentPath(targetId, SEGMENT_SUFFIX), true);
+        }
+    }
+
+    ///////////////
+    // Segments //
+    ///////////////
+
+    protected boolean append(byte type, UUID uuid, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(0)
+              .put(type)
+              .putLong(uuid.getMostSignificantBits())
+              .putLong(uuid.getLeastSignificantBits())
+              .putInt(payload.remaining());
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(header.array(), 4, RECORD_HEADER_SIZE - 4);
+        crc32.update(payload.duplicate());
+        header.putInt(0, (int) crc32.getValue());
+        header.flip();
+
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+        long position;
+
+        synchronized (writeLock) {
+            if (!prepared) {
+                throw new IllegalStateException("Storage is not prepared!");
+            }
+
+            if (type == TYPE_DELETE && !index.containsKey(uuid)) {
+                return false;
+            }
+
+            if (activeSegment.size > 0 && activeSegment.size + recordSize > settings.maxSegmentSize) {
+                rollSegment();
+            }
+
+            long offset = activeSegment.size;
+            activeSegment.channel.writeFully(header, offset);
+            activeSegment.channel.writeFully(payload, offset + RECORD_HEADER_SIZE);
+            activeSegment.size += recordSize;
+            appendedBytes += recordSize;
+            position = appendedBytes;
+
+            if (durability == Durability.FSYNC) {
+                activeSegment.channel.force(false);
+                syncCount.incrementAndGet();
+                syncedBytes = position;
+            }
+
+            IndexEntry previousEntry;
+
+            if (type == TYPE_PUT) {
+                previousEntry = index.put(uuid, new IndexEntry(activeSegment, offset, recordSize));
+            } else {
+                previousEntry = index.remove(uuid);
+                activeSegment.deadBytes.addAndGet(recordSize);
+            }
+
+            if (previousEntry != null) {
+                previousEntry.segment.deadBytes.addAndGet(previousEntry.size);
+            }
+        }
+
+        if (durability == Durability.GROUP_COMMIT) {
+            syncTo(position);
+        }
+
+        return true;
+    }
+
+    /**
+     * Forces the log at least up to specified position. While one thread forces the active segment, others wait and are usually covered by the
+     * same force.
+     *
+     * @param position Position across all segments
+     */
+    protected void syncTo(long position) throws IOException {
+        if (syncedBytes >= position) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (syncedBytes >= position) {
+                return;
+            }
+
+            Segment segment;
+            long targetPosition;
+
+            // Segments before the active one were forced when rolled
+            synchronized (writeLock) {
+                segment = activeSegment;
+                targetPosition = appendedBytes;
+            }
+
+            segment.channel.force(false);
+            syncCount.incrementAndGet();
+            syncedBytes = targetPosition;
+        }
+    }
+
+    /**
+     * Makes active segment immutable (writes its hint file) and opens a new one. Must be called under {@link #writeLock}.
+     */
+    protected void rollSegment() throws IOException {
+        Segment previousSegment = activeSegment;
+        previousSegment.channel.force(true);
+
+        List<HintEntry> hintEntries = scanSegment(previousSegment, false);
+        writeHint(previousSegment.id, hintEntries);
+
+        activeSegment = openSegment(previousSegment.id + 1, true);
+        segments.add(activeSegment);
+
+        if (durability.isForced()) {
+            // Records in the new segment would be lost with it
+            FileUtils.forceDirectory(folder);
+        }
+    }
+
+    protected void loadSegments() throws IOException {
+        List<Long> segmentIds = new ArrayList<>();
+
+        try (Stream<Path> stream = FileUtils.list(folder)) {
+            stream.map(path -> path.getFileName().toString())
+                  .filter(fileName -> fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX))
+                  .forEach(fileName -> segmentIds.add(parseSegmentId(fileName, SEGMENT_SUFFIX)));
+        }
+
+        Collections.sort(segmentIds);
+
+        for (int i = 0; i < segmentIds.size(); i++) {
+            Segment segment = openSegment(segmentIds.get(i), false);
+            segments.add(segment);
+
+            List<HintEntry> hintEntries = readHint(segment.id);
+
+            if (hintEntries == null) {
+                // Segment without hint was the active one, its end may be torn
+                hintEntries = scanSegment(segment, true);
+                writeHint(segment.id, hintEntries);
+            }
+
+            for (HintEntry hintEntry : hintEntries) {
+                IndexEntry previousEntry;
+
+                if (hintEntry.type == TYPE_PUT) {
+                    previousEntry = index.put(hintEntry.uuid, new IndexEntry(segment, hintEntry.offset, hintEntry.size));
+                } else {
+                    previousEntry = index.remove(hintEntry.uuid);
+                    segment.deadBytes.addAndGet(hintEntry.size);
+                }
+
+                if (previousEntry != null) {
+                    previousEntry.segment.deadBytes.addAndGet(previousEntry.size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans records of the segment
+     *
+     * @param segment       Non-null {@link Segment}
+     * @param truncateTail  Whether to truncate the segment at first incomplete or corrupted record
+     *
+     * @return Non-null list of {@link HintEntry}
+     */
+    protected List<HintEntry> scanSegment(Segment segment, boolean truncateTail) throws IOException {
+        List<HintEntry> hintEntries = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        long position = 0;
+        long size = segment.channel.size();
+
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            segment.channel.readFully(header, position);
+            header.flip();
+
+            int checksum = header.getInt();
+            byte type = header.get();
+            UUID uuid = new UUID(header.getLong(), header.getLong());
+            int length = header.getInt();
+
+            if ((type != TYPE_PUT && type != TYPE_DELETE) || length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            segment.channel.readFully(payload, position + RECORD_HEADER_SIZE);
+            payload.flip();
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(header.array(), 4, RECORD_HEADER_SIZE - 4);
+            crc32.update(payload);
+
+            if ((int) crc32.getValue() != checksum) {
+                break;
+            }
+
+            hintEntries.add(new HintEntry(type, uuid, position, RECORD_HEADER_SIZE + length));
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        if (position != size) {
+            if (truncateTail) {
+                segment.channel.truncate(position);
+                segment.channel.force(true);
+            } else if (getPumpk1n() != null) {
+                getPumpk1n().getLogger().logMisc("Segment " + segment.id + " in folder " + settings.folderPath + " contains corrupted data after offset " + position + "!");
+            }
+        }
+
+        segment.size = position;
+        return hintEntries;
+    }
+
+    /**
+     * Reads and verifies record's payload
+     *
+     * @return Nullable payload, null if the record does not match the entry (e.g. segment was replaced by compaction)
+     */
+    protected ByteBuffer readPayload(IndexEntry entry, UUID uuid) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(entry.size);
+        entry.segment.channel.readFully(record, entry.offset);
+        record.flip();
+
+        int checksum = record.getInt();
+        byte type = record.get();
+        long mostSignificantBits = record.getLong();
+        long leastSignificantBits = record.getLong();
+        int length = record.getInt();
+
+        if (type != TYPE_PUT || mostSignificantBits != uuid.getMostSignificantBits() || leastSignificantBits != uuid.getLeastSignificantBits()
+                || length != entry.size - RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(record.array(), 4, entry.size - 4);
+
+        if ((int) crc32.getValue() != checksum) {
+            return null;
+        }
+
+        return record;
+    }
+
+    protected Segment openSegment(long id, boolean create) throws IOException {
+        Path path = segmentPath(id, SEGMENT_SUFFIX);
+        SharedFileChannel channel = create ? SharedFileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : SharedFileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        Segment segment = new Segment(id, channel);
+        segment.size = channel.size();
+        return segment;
+    }
+
+    protected void closeSegments() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+
+        segments.clear();
+    }
+
+    protected void writeHint(long segmentId, List<HintEntry> hintEntries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(hintEntries.size() * HINT_ENTRY_SIZE);
+
+        for (HintEntry hintEntry : hintEntries) {
+            buffer.put(hintEntry.type)
+                  .putLong(hintEntry.uuid.getMostSignificantBits())
+                  .putLong(hintEntry.uuid.getLeastSignificantBits())
+                  .putLong(hintEntry.offset)
+                  .putInt(hintEntry.size);
+        }
+
+        buffer.flip();
+
+        Path tempPath = segmentPath(segmentId, HINT_SUFFIX + TEMP_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileUtils.writeFully(channel, buffer);
+            channel.force(true);
+        }
+
+        FileUtils.move(tempPath, segmentPath(segmentId, HINT_SUFFIX), true);
+    }
+
+    protected List<HintEntry> readHint(long segmentId) throws IOException {
+        Path path = segmentPath(segmentId, HINT_SUFFIX);
+
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        if (buffer.remaining() % HINT_ENTRY_SIZE != 0) {
+            return null;
+        }
+
+        List<HintEntry> hintEntries = new ArrayList<>(buffer.remaining() / HINT_ENTRY_SIZE);
+
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+            hintEntries.add(new HintEntry(type, uuid, buffer.getLong(), buffer.getInt()));
+        }
+
+        return hintEntries;
+    }
+
+    protected Path segmentPath(long id, String suffix) {
+        return folder.resolve(segmentFileName(id, suffix));
+    }
+
+    protected static String segmentFileName(long id, String suffix) {
+        return SEGMENT_PREFIX + String.format("%016d", id) + suffix;
+    }
+
+    protected static long parseSegmentId(String fileName, String suffix) {
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - suffix.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException ignored) {
+            return -1;
+        }
+    }
+
+    /////////////
+    // Classes //
+    /////////////
+
+    protected static class Segment {
+
+        protected final long id;
+        protected final SharedFileChannel channel; // Reopened if closed by an interrupt
+        protected final AtomicLong deadBytes = new AtomicLong();
+        protected volatile long size;
+
+        protected Segment(long id, SharedFileChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+
+        protected void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    protected static class IndexEntry {
+
+        protected final Segment segment;
+        protected final long offset;
+        protected final int size;
+
+        protected IndexEntry(Segment segment, long offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    protected static class HintEntry {
+
+        protected final byte type;
+        protected final UUID uuid;
+        protected final long offset;
+        protected final int size;
+
+        protected HintEntry(byte type, UUID uuid, long offset, int size) {
+            this.type = type;
+            this.uuid = uuid;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    protected static class Relocation {
+
+        protected final UUID uuid;
+        protected final IndexEntry oldEntry;
+        protected final long newOffset;
+
+        protected Relocation(UUID uuid, IndexEntry oldEntry, long newOffset) {
+            this.uuid = uuid;
+            this.oldEntry = oldEntry;
+            this.newOffset = newOffset;
+        }
+    }
+
+    public static class Settings {
+
+        protected final @Getter String folderPath;
+        protected final @Getter long maxSegmentSize;
+        protected final @Getter long compactionIntervalMillis;
+        protected final @Getter double compactionDeadRatio;
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param folderPath               Non-null folder path
+         * @param maxSegmentSize           Size of segment in bytes after which new segment is created
+         * @param compactionIntervalMillis Interval of background compaction checks, zero or less disables background compaction
+         * @param compactionDeadRatio      Minimal ratio of dead bytes in immutable segments which triggers background compaction
+         */
+        public Settings(@NonNull String folderPath, long maxSegmentSize, long compactionIntervalMillis, double compactionDeadRatio) {
+            if (maxSegmentSize <= 0) {
+                throw new IllegalArgumentException("maxSegmentSize must be positive!");
+            }
+
+            this.folderPath = folderPath;
+            this.maxSegmentSize = maxSegmentSize;
+            this.compactionIntervalMillis = compactionIntervalMillis;
+            this.compactionDeadRatio = compactionDeadRatio;
+        }
+
+        public static class Builder {
+
+            protected @Getter String folderPath = "./pumpkin_log/";
+            protected @Getter long maxSegmentSize = 64 * 1024 * 1024;
+            protected @Getter long compactionIntervalMillis = 60_000;
+            protected @Getter double compactionDeadRatio = 0.5;
+
+            /**
+             * Creates empty {@link Builder} with default values
+             */
+            public Builder() {
+            }
+
+            /**
+             * Creates empty {@link Builder} with default values
+             *
+             * @return Non-null {@link Builder}
+             */
+            public static @NonNull Builder create() {
+                return new Builder();
+            }
+
+            /**
+             * Builds {@link Settings}
+             *
+             * @return Non-null {@link Settings}
+             */
+            public @NonNull Settings build() {
+                return new Settings(folderPath, maxSegmentSize, compactionIntervalMillis, compactionDeadRatio);
+            }
+
+            /**
+             * Sets folder path
+             *
+             * @param folderPath Non-null {@link String}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setFolderPath(@NonNull String folderPath) {
+                this.folderPath = folderPath;
+                return this;
+            }
+
+            /**
+             * Sets size of segment in bytes after which new segment is created
+             *
+             * @param maxSegmentSize Positive number of bytes
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaxSegmentSize(long maxSegmentSize) {
+                this.maxSegmentSize = maxSegmentSize;
+                return this;
+            }
+
+            /**
+             * Sets interval of background compaction checks
+             *
+             * @param compactionIntervalMillis Interval in milliseconds, zero or less disables background compaction
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setCompactionIntervalMillis(long compactionIntervalMillis) {
+                this.compactionIntervalMillis = compactionIntervalMillis;
+                return this;
+            }
+
+            /**
+             * Sets minimal ratio of dead bytes in immutable segments which triggers background compaction
+             *
+             * @param compactionDeadRatio Ratio between 0 and 1
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setCompactionDeadRatio(double compactionDeadRatio) {
+                this.compactionDeadRatio = compactionDeadRatio;
+                return this;
+            }
+        }
+    }
+}
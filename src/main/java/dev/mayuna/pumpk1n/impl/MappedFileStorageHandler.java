@@ -0,0 +1,511 @@
+package dev.mayuna.pumpk1n.impl;
+
+import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.api.Migratable;
+import dev.mayuna.pumpk1n.api.StorageHandler;
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps all holders in one memory-mapped file. The file is split into extents whose sizes are powers of two; every extent starts with a header
+ * containing holder's UUID, so the headers form a persistent index which is walked on startup. Loads read straight from the mapped pages,
+ * without any system call.<br> Saves always write into a free extent and only then release the previous one, so a crash never destroys the
+ * last saved data. When there's no free extent, the file grows (doubles) and is remapped; readers still holding the previous mapping keep
+ * using it safely, since the file never shrinks.<br> Free extents are reused only by holders of the same size class; neighbouring free
+ * extents are never merged, so the file is as large as its peak usage. To reclaim the space, migrate the holders into a new file.<br>
+ * If an extent header is torn or corrupted, it and everything after it is discarded when the file is opened.<br> The file can grow up to
+ * 2 GiB. Only one instance of this storage handler may use the file at a time. Call {@link #close()} when you're done.
+ */
+public class MappedFileStorageHandler extends StorageHandler implements Migratable {
+
+    protected static final int MAGIC = 0x504B4D46; // "PKMF"
+    protected static final int VERSION = 1;
+    protected static final int FILE_HEADER_SIZE = 64;
+
+    protected static final int STATE_END = 0;
+    protected static final int STATE_FREE = 1;
+    protected static final int STATE_USED = 2;
+
+    /**
+     * Extent header: state, extent size, sequence, UUID (most significant bits), UUID (least significant bits), payload length, payload CRC32
+     */
+    protected static final int EXTENT_HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+    protected static final int MIN_EXTENT_SIZE = 128;
+    protected static final int MAX_FILE_SIZE = Integer.MAX_VALUE;
+    protected static final int DEFAULT_INITIAL_SIZE = 1024 * 1024;
+    protected static final int MAX_READ_ATTEMPTS = 5;
+
+    protected final @Getter String filePath;
+    protected final @Getter int initialSize;
+
+    protected final Map<UUID, Extent> index = new ConcurrentHashMap<>();
+    protected final Map<Integer, Deque<Integer>> freeExtents = new HashMap<>(); // Extent size -> offsets, guarded by writeLock
+    protected final Object writeLock = new Object();
+
+    protected FileChannel channel;
+    protected volatile MappedByteBuffer mapping;
+    protected int tail; // Offset after the last extent, guarded by writeLock
+    protected long sequence; // Guarded by writeLock
+
+    /**
+     * Creates {@link MappedFileStorageHandler}
+     *
+     * @param filePath Non-null path to the file
+     */
+    public MappedFileStorageHandler(@NonNull String filePath) {
+        this(filePath, DEFAULT_INITIAL_SIZE);
+    }
+
+    /**
+     * Creates {@link MappedFileStorageHandler}
+     *
+     * @param filePath    Non-null path to the file
+     * @param initialSize Initial size of the file in bytes
+     */
+    public MappedFileStorageHandler(@NonNull String filePath, int initialSize) {
+        super(MappedFileStorageHandler.class.getSimpleName());
+
+        if (initialSize < FILE_HEADER_SIZE + MIN_EXTENT_SIZE) {
+            throw new IllegalArgumentException("Initial size must be at least " + (FILE_HEADER_SIZE + MIN_EXTENT_SIZE) + " bytes!");
+        }
+
+        this.filePath = filePath;
+        this.initialSize = initialSize;
+    }
+
+    /////////////////////
+    // Storage Handler //
+    /////////////////////
+
+    /**
+     * Opens and maps the file and loads the index from extent headers. Calling this method multiple times has no effect.
+     */
+    @Override
+    public void prepareStorage() {
+        synchronized (writeLock) {
+            if (channel != null) {
+                return;
+            }
+
+            Path path = Paths.get(filePath);
+
+            try {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                if (channel.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+                    header.putInt(MAGIC).putInt(VERSION);
+                    header.clear();
+                    channel.write(header, 0);
+                    grow(initialSize);
+                } else {
+                    if (channel.size() > MAX_FILE_SIZE) {
+                        throw new IOException("File is larger than " + MAX_FILE_SIZE + " bytes");
+                    }
+
+                    mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+                    if (mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION) {
+                        throw new IOException("File is not a Pumpk1n mapped file or has unsupported version");
+                    }
+                }
+
+                loadIndex();
+            } catch (IOException exception) {
+                closeChannel();
+                throw new RuntimeException("Could not prepare mapped file " + filePath + "!", exception);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveHolder(@NonNull DataHolder dataHolder) {
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            ByteBuffer payload = buffers.encode(buffers.write(dataHolder));
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(payload.duplicate());
+
+            synchronized (writeLock) {
+                ensurePrepared();
+
+                UUID uuid = dataHolder.getUuid();
+                int payloadLength = payload.remaining();
+                Extent extent = allocate(payloadLength);
+                MappedByteBuffer mapping = this.mapping;
+
+                ByteBuffer target = mapping.duplicate();
+                target.position(extent.offset + EXTENT_HEADER_SIZE);
+                target.put(payload);
+
+                mapping.putInt(extent.offset + 4, extent.size);
+                mapping.putLong(extent.offset + 8, extent.sequence);
+                mapping.putLong(extent.offset + 16, uuid.getMostSignificantBits());
+                mapping.putLong(extent.offset + 24, uuid.getLeastSignificantBits());
+                mapping.putInt(extent.offset + 32, payloadLength);
+                mapping.putInt(extent.offset + 36, (int) crc32.getValue());
+
+                if (durability.isForced()) {
+                    mapping.force();
+                }
+
+                // Extent is visible only after its content is written
+                mapping.putInt(extent.offset, STATE_USED);
+
+                Extent previousExtent = index.put(uuid, extent);
+
+                if (previousExtent != null) {
+                    release(previousExtent);
+                }
+
+                if (durability.isForced()) {
+                    mapping.force();
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not save Data Holder with UUID " + dataHolder.getUuid() + "!", exception);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataHolder loadHolder(@NonNull UUID uuid) {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            Extent extent = index.get(uuid);
+
+            if (extent == null) {
+                return null;
+            }
+
+            MappedByteBuffer mapping = this.mapping;
+
+            if (mapping == null) {
+                throw new IllegalStateException("Storage is not prepared!");
+            }
+
+            byte[] payload = readPayload(mapping, extent, uuid);
+
+            if (payload != null) {
+                return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)).getAsJsonObject());
+            }
+
+            if (index.get(uuid) == extent) {
+                throw new RuntimeException("Could not load Data Holder with UUID " + uuid + ": extent at offset " + extent.offset + " is corrupted!");
+            }
+
+            // Holder was saved again in the meantime
+        }
+
+        throw new RuntimeException("Could not load Data Holder with UUID " + uuid + ": index kept changing!");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeHolder(@NonNull UUID uuid) {
+        synchronized (writeLock) {
+            ensurePrepared();
+
+            Extent extent = index.remove(uuid);
+
+            if (extent == null) {
+                return false;
+            }
+
+            release(extent);
+
+            if (durability.isForced()) {
+                mapping.force();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean holderExists(@NonNull UUID uuid) {
+        return index.containsKey(uuid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<UUID> getAllHolderUUIDs() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        return index.keySet().stream();
+    }
+
+    /**
+     * Forces all changes to the storage device and closes the file. The storage handler cannot be used afterward unless
+     * {@link #prepareStorage()} is called again.
+     */
+    public void close() {
+        synchronized (writeLock) {
+            if (mapping != null) {
+                mapping.force();
+            }
+
+            closeChannel();
+        }
+    }
+
+    /**
+     * Returns current size of the file
+     *
+     * @return Size in bytes, zero if the storage is not prepared
+     */
+    public int getFileSize() {
+        MappedByteBuffer mapping = this.mapping;
+        return mapping == null ? 0 : mapping.capacity();
+    }
+
+    /////////////
+    // Extents //
+    /////////////
+
+    protected void loadIndex() throws IOException {
+        index.clear();
+        freeExtents.clear();
+        sequence = 0;
+
+        int offset = FILE_HEADER_SIZE;
+        int fileSize = mapping.capacity();
+
+        while (offset + EXTENT_HEADER_SIZE <= fileSize) {
+            int state = mapping.getInt(offset);
+            int size = mapping.getInt(offset + 4);
+
+            if (state == STATE_END) {
+                break;
+            }
+
+            if ((state != STATE_FREE && state != STATE_USED) || size < MIN_EXTENT_SIZE || Integer.bitCount(size) != 1 || (long) offset + size > fileSize) {
+                // Torn or corrupted header, nothing after it can be trusted
+                discardFrom(offset);
+                break;
+            }
+
+            Extent extent = new Extent(offset, size, mapping.getLong(offset + 8));
+            sequence = Math.max(sequence, extent.sequence);
+
+            if (state == STATE_USED) {
+                UUID uuid = new UUID(mapping.getLong(offset + 16), mapping.getLong(offset + 24));
+                Extent otherExtent = index.get(uuid);
+
+                // Crash between writing new extent and releasing the previous one leaves two extents, newer valid one wins
+                if (otherExtent == null || isNewerAndValid(extent, otherExtent, uuid)) {
+                    index.put(uuid, extent);
+
+                    if (otherExtent != null) {
+                        release(otherExtent);
+                    }
+                } else {
+                    release(extent);
+                }
+            } else {
+                freeExtents.computeIfAbsent(size, key -> new ArrayDeque<>()).push(offset);
+            }
+
+            offset += size;
+        }
+
+        tail = offset;
+    }
+
+    /**
+     * Discards everything from specified offset to the end of the file, so it's treated as unused space. Must be called under
+     * {@link #writeLock}.
+     */
+    protected void discardFrom(int offset) {
+        if (getPumpk1n() != null) {
+            getPumpk1n().getLogger().logMisc("Mapped file " + filePath + " contains corrupted extent header at offset " + offset + ", data after it is discarded!");
+        }
+
+        ByteBuffer target = mapping.duplicate();
+        target.position(offset);
+        byte[] zeros = new byte[Math.min(target.remaining(), 64 * 1024)];
+
+        while (target.hasRemaining()) {
+            target.put(zeros, 0, Math.min(zeros.length, target.remaining()));
+        }
+
+        mapping.force();
+    }
+
+    protected boolean isNewerAndValid(Extent extent, Extent otherExtent, UUID uuid) {
+        boolean valid = readPayload(mapping, extent, uuid) != null;
+        boolean otherValid = readPayload(mapping, otherExtent, uuid) != null;
+
+        if (valid != otherValid) {
+            return valid;
+        }
+
+        return extent.sequence > otherExtent.sequence;
+    }
+
+    /**
+     * Finds free extent for specified payload length or creates new one at the end of the file. Must be called under {@link #writeLock}.
+     */
+    protected Extent allocate(int payloadLength) throws IOException {
+        long requiredSize = Math.max(MIN_EXTENT_SIZE, (long) EXTENT_HEADER_SIZE + payloadLength);
+
+        if (requiredSize > (1 << 30)) {
+            throw new IOException("Data Holder is too large (" + payloadLength + " bytes)");
+        }
+
+        int size = Integer.highestOneBit((int) requiredSize - 1) << 1;
+        Deque<Integer> offsets = freeExtents.get(size);
+
+        if (offsets != null && !offsets.isEmpty()) {
+            return new Extent(offsets.pop(), size, ++sequence);
+        }
+
+        if ((long) tail + size > mapping.capacity()) {
+            long newSize = mapping.capacity();
+
+            while (newSize < (long) tail + size) {
+                newSize *= 2;
+            }
+
+            if ((long) tail + size > MAX_FILE_SIZE) {
+                throw new IOException("Mapped file would exceed " + MAX_FILE_SIZE + " bytes");
+            }
+
+            grow((int) Math.min(newSize, MAX_FILE_SIZE));
+        }
+
+        Extent extent = new Extent(tail, size, ++sequence);
+        mapping.putInt(extent.offset, STATE_FREE);
+        mapping.putInt(extent.offset + 4, size);
+        tail += size;
+
+        return extent;
+    }
+
+    /**
+     * Marks extent as free. Must be called under {@link #writeLock}.
+     */
+    protected void release(Extent extent) {
+        mapping.putInt(extent.offset, STATE_FREE);
+        freeExtents.computeIfAbsent(extent.size, key -> new ArrayDeque<>()).push(extent.offset);
+    }
+
+    /**
+     * Grows the file and remaps it. Previous mapping stays valid for readers which still use it.
+     */
+    protected void grow(int newSize) throws IOException {
+        if (channel.size() < newSize) {
+            channel.write(ByteBuffer.allocate(1), newSize - 1);
+        }
+
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+    }
+
+    /**
+     * Reads and verifies extent's payload
+     *
+     * @return Nullable payload, null if the extent does not contain specified holder (e.g. it was reused in the meantime) or is corrupted
+     */
+    protected static byte[] readPayload(MappedByteBuffer mapping, Extent extent, UUID uuid) {
+        if ((long) extent.offset + extent.size > mapping.capacity()) {
+            return null;
+        }
+
+        int length = mapping.getInt(extent.offset + 32);
+        int checksum = mapping.getInt(extent.offset + 36);
+
+        if (mapping.getInt(extent.offset) != STATE_USED || mapping.getLong(extent.offset + 8) != extent.sequence
+                || mapping.getLong(extent.offset + 16) != uuid.getMostSignificantBits() || mapping.getLong(extent.offset + 24) != uuid.getLeastSignificantBits()
+                || length < 0 || length > extent.size - EXTENT_HEADER_SIZE) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        ByteBuffer source = mapping.duplicate();
+        source.position(extent.offset + EXTENT_HEADER_SIZE);
+        source.get(payload);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+
+        if ((int) crc32.getValue() != checksum || mapping.getLong(extent.offset + 8) != extent.sequence) {
+            return null;
+        }
+
+        return payload;
+    }
+
+    protected void ensurePrepared() {
+        if (channel == null) {
+            throw new IllegalStateException("Storage is not prepared!");
+        }
+    }
+
+    protected void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        channel = null;
+        mapping = null;
+        index.clear();
+        freeExtents.clear();
+    }
+
+    protected static class Extent {
+
+        protected final int offset;
+        protected final int size;
+        protected final long sequence;
+
+        protected Extent(int offset, int size, long sequence) {
+            this.offset = offset;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,932 @@
+package dev.mayuna.pumpk1n.impl;
+
+import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.api.Migratable;
+import dev.mayuna.pumpk1n.api.StorageHandler;
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.FileUtils;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.SharedFileChannel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Stores many holders in a few shared pack files instead of one file per holder. Holders are spread into {@link Settings#getPackCount()} packs
+ * by their UUID. Every pack is append-only file of CRC32-checked records with its own index file, which is a snapshot of the pack's index
+ * written on {@link #close()} and after repacking; records appended after the snapshot are scanned on startup.<br> Packs with too many
+ * overwritten or removed records are rewritten (repacked) in background. Packs are accessed through {@link SharedFileChannel}, so interrupting a
+ * caller does not break them for others. Enumeration goes pack by pack in file order, so migrating data out reads the packs sequentially.<br>
+ * Only one instance of this storage handler may use the folder at a time. Call {@link #close()} when you're done.
+ */
+public class PackFileStorageHandler extends StorageHandler implements Migratable {
+
+    protected static final String PACK_PREFIX = "pack-";
+    protected static final String PACK_SUFFIX = ".pack";
+    protected static final String INDEX_SUFFIX = ".idx";
+    protected static final String TEMP_SUFFIX = ".tmp";
+
+    protected static final int PACK_MAGIC = 0x504B5041; // "PKPA"
+    protected static final int INDEX_MAGIC = 0x504B5049; // "PKPI"
+    protected static final int VERSION = 1;
+
+    /**
+     * Pack header: magic, version, generation
+     */
+    protected static final int PACK_HEADER_SIZE = 4 + 4 + 8;
+
+    /**
+     * Index header: magic, version, generation, covered pack length, entry count
+     */
+    protected static final int INDEX_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    /**
+     * Index entry: UUID (most significant bits), UUID (least significant bits), record offset, record size
+     */
+    protected static final int INDEX_ENTRY_SIZE = 8 + 8 + 8 + 4;
+
+    protected static final byte TYPE_PUT = 1;
+    protected static final byte TYPE_DELETE = 2;
+
+    /**
+     * Record: CRC32 (of the rest), type, UUID (most significant bits), UUID (least significant bits), payload length, payload
+     */
+    protected static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8 + 4;
+
+    protected final @Getter Settings settings;
+    protected final Path folder;
+
+    protected final Map<UUID, Pack> owners = new ConcurrentHashMap<>();
+    protected Pack[] packs;
+    protected ScheduledExecutorService repacker;
+
+    /**
+     * Creates {@link PackFileStorageHandler} with specified {@link Settings}
+     *
+     * @param settings Non-null {@link Settings}
+     */
+    public PackFileStorageHandler(@NonNull Settings settings) {
+        super(PackFileStorageHandler.class.getSimpleName());
+        this.settings = settings;
+        this.folder = Paths.get(settings.folderPath);
+    }
+
+    /**
+     * Creates {@link PackFileStorageHandler} with default {@link Settings} in specified folder
+     *
+     * @param folderPath Non-null folder path
+     */
+    public PackFileStorageHandler(@NonNull String folderPath) {
+        this(Settings.Builder.create().setFolderPath(folderPath).build());
+    }
+
+    /////////////////////
+    // Storage Handler //
+    /////////////////////
+
+    /**
+     * Creates the folder and loads indexes of all packs. Calling this method multiple times has no effect.
+     */
+    @Override
+    public synchronized void prepareStorage() {
+        if (packs != null) {
+            return;
+        }
+
+        Pack[] packs = new Pack[settings.packCount];
+
+        try {
+            Files.createDirectories(folder);
+
+            // Packs from previous runs are loaded even if pack count was changed since
+            int existingPackCount = settings.packCount;
+
+            try (Stream<Path> stream = FileUtils.list(folder)) {
+                existingPackCount = Math.max(existingPackCount, stream.map(path -> path.getFileName().toString())
+                                                                      .filter(fileName -> fileName.startsWith(PACK_PREFIX) && fileName.endsWith(PACK_SUFFIX))
+                                                                      .mapToInt(fileName -> parsePackId(fileName) + 1)
+                                                                      .max()
+                                                                      .orElse(0));
+            }
+
+            packs = new Pack[existingPackCount];
+
+            for (int id = 0; id < packs.length; id++) {
+                packs[id] = new Pack(id);
+                packs[id].load();
+            }
+
+            // Holder removed from one pack may have been saved into another one, so owners are known only after all packs are loaded
+            for (Pack pack : packs) {
+                for (UUID uuid : pack.entries.keySet()) {
+                    owners.put(uuid, pack);
+                }
+            }
+        } catch (IOException exception) {
+            for (Pack pack : packs) {
+                if (pack != null) {
+                    pack.close();
+                }
+            }
+
+            owners.clear();
+            throw new RuntimeException("Could not prepare pack files in folder " + settings.folderPath + "!", exception);
+        }
+
+        this.packs = packs;
+
+        if (settings.repackIntervalMillis > 0) {
+            repacker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Pumpk1n-Repacker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            repacker.scheduleWithFixedDelay(this::repackIfNeeded, settings.repackIntervalMillis, settings.repackIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveHolder(@NonNull DataHolder dataHolder) {
+        UUID uuid = dataHolder.getUuid();
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            ByteBuffer record = createRecord(TYPE_PUT, uuid, buffers.encode(buffers.write(dataHolder)));
+
+            while (true) {
+                Pack pack = owners.get(uuid);
+
+                if (pack == null) {
+                    pack = getPacks()[Math.floorMod(uuid.hashCode(), settings.packCount)];
+                }
+
+                if (pack.append(uuid, TYPE_PUT, record)) {
+                    return;
+                }
+
+                // Holder was moved to another pack in the meantime (removed and saved concurrently)
+                record.rewind();
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not save Data Holder with UUID " + uuid + "!", exception);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataHolder loadHolder(@NonNull UUID uuid) {
+        getPacks();
+        Pack pack = owners.get(uuid);
+
+        if (pack == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer payload = pack.read(uuid);
+
+            if (payload == null) {
+                return null;
+            }
+
+            return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(StandardCharsets.UTF_8.decode(payload).toString()).getAsJsonObject());
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not load Data Holder with UUID " + uuid + "!", exception);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeHolder(@NonNull UUID uuid) {
+        getPacks();
+        Pack pack = owners.get(uuid);
+
+        if (pack == null) {
+            return false;
+        }
+
+        try {
+            return pack.append(uuid, TYPE_DELETE, createRecord(TYPE_DELETE, uuid, ByteBuffer.allocate(0)));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not remove Data Holder with UUID " + uuid + "!", exception);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<UUID> getAllHolderUUIDs() {
+        List<UUID> uuids = new ArrayList<>(owners.size());
+
+        try (Stream<UUID> stream = streamAllHolderUUIDs()) {
+            stream.forEach(uuids::add);
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Streams UUIDs pack by pack, ordered by their position in the pack, so loading the holders in this order reads the packs sequentially
+     *
+     * @return Non-null {@link Stream} of {@link UUID}
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        Pack[] packs = getPacks();
+        return IntStream.range(0, packs.length).boxed().flatMap(id -> packs[id].getUUIDsInFileOrder().stream());
+    }
+
+    /**
+     * Stops background repacking, writes index files and closes all packs. The storage handler cannot be used afterward unless
+     * {@link #prepareStorage()} is called again.
+     */
+    public synchronized void close() {
+        if (packs == null) {
+            return;
+        }
+
+        if (repacker != null) {
+            repacker.shutdown();
+
+            try {
+                repacker.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+
+            repacker = null;
+        }
+
+        IOException lastException = null;
+
+        for (Pack pack : packs) {
+            try {
+                pack.writeIndex();
+            } catch (IOException exception) {
+                lastException = exception;
+            }
+
+            pack.close();
+        }
+
+        packs = null;
+        owners.clear();
+
+        if (lastException != null) {
+            throw new RuntimeException("Could not write pack index in folder " + settings.folderPath + "!", lastException);
+        }
+    }
+
+    ///////////////
+    // Repacking //
+    ///////////////
+
+    /**
+     * Repacks all packs whose ratio of dead bytes is at least {@link Settings#getRepackDeadRatio()}
+     *
+     * @return Number of repacked packs
+     */
+    public int repackIfNeeded() {
+        int repacked = 0;
+
+        for (Pack pack : getPacks()) {
+            try {
+                if (pack.getDeadRatio() >= settings.repackDeadRatio && pack.repack()) {
+                    repacked++;
+                }
+            } catch (Exception exception) {
+                if (getPumpk1n() != null) {
+                    getPumpk1n().getLogger().logMisc("Exception occurred while repacking pack " + pack.id + " in folder " + settings.folderPath + "!", exception);
+                }
+            }
+        }
+
+        return repacked;
+    }
+
+    /**
+     * Repacks all packs which contain any dead bytes
+     *
+     * @return Number of repacked packs
+     */
+    public int repack() {
+        int repacked = 0;
+
+        for (Pack pack : getPacks()) {
+            try {
+                if (pack.repack()) {
+                    repacked++;
+                }
+            } catch (IOException exception) {
+                throw new RuntimeException("Could not repack pack " + pack.id + " in folder " + settings.folderPath + "!", exception);
+            }
+        }
+
+        return repacked;
+    }
+
+    /**
+     * Returns ratio of dead (overwritten or removed) bytes in all packs
+     *
+     * @return Ratio between 0 and 1
+     */
+    public double getDeadRatio() {
+        long size = 0;
+        long dead = 0;
+
+        for (Pack pack : getPacks()) {
+            pack.lock.readLock().lock();
+
+            try {
+                size += pack.size;
+                dead += pack.getDeadBytes();
+            } finally {
+                pack.lock.readLock().unlock();
+            }
+        }
+
+        return size == 0 ? 0 : (double) dead / size;
+    }
+
+    /////////////
+    // Helpers //
+    /////////////
+
+    protected Pack[] getPacks() {
+        Pack[] packs = this.packs;
+
+        if (packs == null) {
+            throw new IllegalStateException("Storage is not prepared!");
+        }
+
+        return packs;
+    }
+
+    protected static ByteBuffer createRecord(byte type, UUID uuid, ByteBuffer payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.remaining());
+        record.putInt(0)
+              .put(type)
+              .putLong(uuid.getMostSignificantBits())
+              .putLong(uuid.getLeastSignificantBits())
+              .putInt(payload.remaining())
+              .put(payload);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc32.getValue());
+        record.flip();
+
+        return record;
+    }
+
+    protected static String packFileName(int id, String suffix) {
+        return PACK_PREFIX + String.format("%04d", id) + suffix;
+    }
+
+    protected static int parsePackId(String fileName) {
+        try {
+            return Integer.parseInt(fileName.substring(PACK_PREFIX.length(), fileName.length() - PACK_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException ignored) {
+            return -1;
+        }
+    }
+
+    /////////////
+    // Classes //
+    /////////////
+
+    protected class Pack {
+
+        protected final int id;
+        protected final Path path;
+        protected final Path indexPath;
+        protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        protected final Map<UUID, Entry> entries = new HashMap<>(); // Guarded by lock
+
+        protected SharedFileChannel channel; // Opened on first write, reopened if closed by an interrupt
+        protected long generation;
+        protected long size = PACK_HEADER_SIZE;
+        protected long liveBytes;
+        protected boolean indexDirty;
+
+        protected Pack(int id) {
+            this.id = id;
+            this.path = folder.resolve(packFileName(id, PACK_SUFFIX));
+            this.indexPath = folder.resolve(packFileName(id, INDEX_SUFFIX));
+        }
+
+        protected void load() throws IOException {
+            Files.deleteIfExists(folder.resolve(packFileName(id, PACK_SUFFIX + TEMP_SUFFIX)));
+            Files.deleteIfExists(folder.resolve(packFileName(id, INDEX_SUFFIX + TEMP_SUFFIX)));
+
+            if (!Files.exists(path)) {
+                return;
+            }
+
+            channel = SharedFileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            channel.readFully(header, 0);
+            header.flip();
+
+            if (header.getInt() != PACK_MAGIC || header.getInt() != VERSION) {
+                throw new IOException("File " + path + " is not a Pumpk1n pack or has unsupported version");
+            }
+
+            generation = header.getLong();
+
+            long scanFrom = readIndex();
+            scan(scanFrom);
+        }
+
+        /**
+         * Loads index file if it belongs to current generation of the pack
+         *
+         * @return Offset from which the pack has to be scanned
+         */
+        protected long readIndex() throws IOException {
+            if (!Files.exists(indexPath)) {
+                return PACK_HEADER_SIZE;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+
+            if (buffer.remaining() < INDEX_HEADER_SIZE + 4) {
+                return PACK_HEADER_SIZE;
+            }
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(buffer.array(), 0, buffer.remaining() - 4);
+
+            if ((int) crc32.getValue() != buffer.getInt(buffer.remaining() - 4)) {
+                return PACK_HEADER_SIZE;
+            }
+
+            if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != VERSION || buffer.getLong() != generation) {
+                return PACK_HEADER_SIZE;
+            }
+
+            long coveredLength = buffer.getLong();
+            int count = buffer.getInt();
+
+            if (coveredLength > channel.size() || buffer.remaining() != count * INDEX_ENTRY_SIZE + 4) {
+                return PACK_HEADER_SIZE;
+            }
+
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                putEntry(uuid, new Entry(buffer.getLong(), buffer.getInt()));
+            }
+
+            return coveredLength;
+        }
+
+        /**
+         * Scans records from specified offset and truncates torn tail
+         */
+        protected void scan(long position) throws IOException {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+            while (position + RECORD_HEADER_SIZE <= fileSize) {
+                header.clear();
+                channel.readFully(header, position);
+                header.flip();
+
+                int checksum = header.getInt();
+                byte type = header.get();
+                UUID uuid = new UUID(header.getLong(), header.getLong());
+                int length = header.getInt();
+
+                if ((type != TYPE_PUT && type != TYPE_DELETE) || length < 0 || position + RECORD_HEADER_SIZE + length > fileSize) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.readFully(payload, position + RECORD_HEADER_SIZE);
+                payload.flip();
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(header.array(), 4, RECORD_HEADER_SIZE - 4);
+                crc32.update(payload);
+
+                if ((int) crc32.getValue() != checksum) {
+                    break;
+                }
+
+                if (type == TYPE_PUT) {
+                    putEntry(uuid, new Entry(position, RECORD_HEADER_SIZE + length));
+                } else {
+                    removeEntry(uuid);
+                }
+
+                position += RECORD_HEADER_SIZE + length;
+                indexDirty = true;
+            }
+
+            if (position != fileSize) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+
+            size = position;
+        }
+
+        protected void putEntry(UUID uuid, Entry entry) {
+            Entry previousEntry = entries.put(uuid, entry);
+
+            if (previousEntry != null) {
+                liveBytes -= previousEntry.size;
+            }
+
+            liveBytes += entry.size;
+        }
+
+        protected void removeEntry(UUID uuid) {
+            Entry previousEntry = entries.remove(uuid);
+
+            if (previousEntry != null) {
+                liveBytes -= previousEntry.size;
+            }
+        }
+
+        /**
+         * Appends record to this pack
+         *
+         * @return False if the holder is owned by another pack (put) or does not exist (delete)
+         */
+        protected boolean append(UUID uuid, byte type, ByteBuffer record) throws IOException {
+            lock.writeLock().lock();
+
+            try {
+                Pack owner = owners.get(uuid);
+
+                if (type == TYPE_DELETE ? owner != this : owner != null && owner != this) {
+                    return false;
+                }
+
+                if (channel == null) {
+                    create();
+                }
+
+                long offset = size;
+                int recordSize = record.remaining();
+
+                channel.writeFully(record, offset);
+                size += recordSize;
+
+                if (durability.isForced()) {
+                    channel.force(false);
+                }
+
+                if (type == TYPE_PUT) {
+                    putEntry(uuid, new Entry(offset, recordSize));
+                    owners.put(uuid, this);
+                } else {
+                    removeEntry(uuid);
+                    owners.remove(uuid, this);
+                }
+
+                indexDirty = true;
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        protected ByteBuffer read(UUID uuid) throws IOException {
+            lock.readLock().lock();
+
+            try {
+                Entry entry = entries.get(uuid);
+
+                if (entry == null) {
+                    return null;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(entry.size);
+                channel.readFully(record, entry.offset);
+                record.flip();
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(record.array(), 4, entry.size - 4);
+
+                if ((int) crc32.getValue() != record.getInt()) {
+                    throw new IOException("Record at offset " + entry.offset + " in pack " + id + " is corrupted");
+                }
+
+                record.position(RECORD_HEADER_SIZE);
+                return record;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        protected List<UUID> getUUIDsInFileOrder() {
+            List<Map.Entry<UUID, Entry>> sortedEntries;
+
+            lock.readLock().lock();
+
+            try {
+                sortedEntries = new ArrayList<>(entries.entrySet());
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            sortedEntries.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+
+            List<UUID> uuids = new ArrayList<>(sortedEntries.size());
+
+            for (Map.Entry<UUID, Entry> entry : sortedEntries) {
+                uuids.add(entry.getKey());
+            }
+
+            return uuids;
+        }
+
+        protected long getDeadBytes() {
+            return size - PACK_HEADER_SIZE - liveBytes;
+        }
+
+        protected double getDeadRatio() {
+            lock.readLock().lock();
+
+            try {
+                return size == PACK_HEADER_SIZE ? 0 : (double) getDeadBytes() / (size - PACK_HEADER_SIZE);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Rewrites the pack with live records only, in their current order, and writes new index file
+         *
+         * @return True if the pack was repacked, false if it did not contain any dead bytes
+         */
+        protected boolean repack() throws IOException {
+            lock.writeLock().lock();
+
+            try {
+                if (channel == null || getDeadBytes() == 0) {
+                    return false;
+                }
+
+                List<Map.Entry<UUID, Entry>> sortedEntries = new ArrayList<>(entries.entrySet());
+                sortedEntries.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+
+                Path tempPath = folder.resolve(packFileName(id, PACK_SUFFIX + TEMP_SUFFIX));
+                Map<UUID, Entry> newEntries = new HashMap<>();
+                long newGeneration = generation + 1;
+                long position = PACK_HEADER_SIZE;
+
+                try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    FileUtils.writeFully(output, createHeader(newGeneration));
+
+                    for (Map.Entry<UUID, Entry> entry : sortedEntries) {
+                        ByteBuffer record = ByteBuffer.allocate(entry.getValue().size);
+                        channel.readFully(record, entry.getValue().offset);
+                        record.flip();
+
+                        FileUtils.writeFully(output, record);
+                        newEntries.put(entry.getKey(), new Entry(position, entry.getValue().size));
+                        position += entry.getValue().size;
+                    }
+
+                    output.force(true);
+                }
+
+                channel.close();
+                FileUtils.move(tempPath, path, true);
+                channel = SharedFileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                generation = newGeneration;
+                size = position;
+                entries.clear();
+                entries.putAll(newEntries);
+                liveBytes = position - PACK_HEADER_SIZE;
+                indexDirty = true;
+
+                writeIndex();
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        protected void create() throws IOException {
+            channel = SharedFileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.writeFully(createHeader(generation), 0);
+            size = PACK_HEADER_SIZE;
+        }
+
+        protected ByteBuffer createHeader(long generation) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            header.putInt(PACK_MAGIC).putInt(VERSION).putLong(generation);
+            header.flip();
+            return header;
+        }
+
+        /**
+         * Writes snapshot of the index, if it changed since last snapshot
+         */
+        protected void writeIndex() throws IOException {
+            lock.writeLock().lock();
+
+            try {
+                if (channel == null || !indexDirty) {
+                    return;
+                }
+
+                channel.force(true);
+
+                ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + entries.size() * INDEX_ENTRY_SIZE + 4);
+                buffer.putInt(INDEX_MAGIC).putInt(VERSION).putLong(generation).putLong(size).putInt(entries.size());
+
+                for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+                    buffer.putLong(entry.getKey().getMostSignificantBits())
+                          .putLong(entry.getKey().getLeastSignificantBits())
+                          .putLong(entry.getValue().offset)
+                          .putInt(entry.getValue().size);
+                }
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(buffer.array(), 0, buffer.position());
+                buffer.putInt((int) crc32.getValue());
+                buffer.flip();
+
+                Path tempPath = folder.resolve(packFileName(id, INDEX_SUFFIX + TEMP_SUFFIX));
+
+                try (FileChannel output = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    FileUtils.writeFully(output, buffer);
+                    output.force(true);
+                }
+
+                FileUtils.move(tempPath, indexPath, true);
+                indexDirty = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        protected void close() {
+            lock.writeLock().lock();
+
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ignored) {
+            } finally {
+                channel = null;
+                entries.clear();
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    protected static class Entry {
+
+        protected final long offset;
+        protected final int size;
+
+        protected Entry(long offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    public static class Settings {
+
+        protected final @Getter String folderPath;
+        protected final @Getter int packCount;
+        protected final @Getter long repackIntervalMillis;
+        protected final @Getter double repackDeadRatio;
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param folderPath           Non-null folder path
+         * @param packCount            Number of packs into which holders are spread
+         * @param repackIntervalMillis Interval of background repacking checks, zero or less disables background repacking
+         * @param repackDeadRatio      Minimal ratio of dead bytes in a pack which triggers background repacking
+         */
+        public Settings(@NonNull String folderPath, int packCount, long repackIntervalMillis, double repackDeadRatio) {
+            if (packCount <= 0 || packCount > 10_000) {
+                throw new IllegalArgumentException("packCount must be between 1 and 10000!");
+            }
+
+            this.folderPath = folderPath;
+            this.packCount = packCount;
+            this.repackIntervalMillis = repackIntervalMillis;
+            this.repackDeadRatio = repackDeadRatio;
+        }
+
+        public static class Builder {
+
+            protected @Getter String folderPath = "./pumpkin_packs/";
+            protected @Getter int packCount = 64;
+            protected @Getter long repackIntervalMillis = 60_000;
+            protected @Getter double repackDeadRatio = 0.5;
+
+            /**
+             * Creates empty {@link Builder} with default values
+             */
+            public Builder() {
+            }
+
+            /**
+             * Creates empty {@link Builder} with default values
+             *
+             * @return Non-null {@link Builder}
+             */
+            public static @NonNull Builder create() {
+                return new Builder();
+            }
+
+            /**
+             * Builds {@link Settings}
+             *
+             * @return Non-null {@link Settings}
+             */
+            public @NonNull Settings build() {
+                return new Settings(folderPath, packCount, repackIntervalMillis, repackDeadRatio);
+            }
+
+            /**
+             * Sets folder path
+             *
+             * @param folderPath Non-null {@link String}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setFolderPath(@NonNull String folderPath) {
+                this.folderPath = folderPath;
+                return this;
+            }
+
+            /**
+             * Sets number of packs into which holders are spread
+             *
+             * @param packCount Number between 1 and 10000
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setPackCount(int packCount) {
+                this.packCount = packCount;
+                return this;
+            }
+
+            /**
+             * Sets interval of background repacking checks
+             *
+             * @param repackIntervalMillis Interval in milliseconds, zero or less disables background repacking
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setRepackIntervalMillis(long repackIntervalMillis) {
+                this.repackIntervalMillis = repackIntervalMillis;
+                return this;
+            }
+
+            /**
+             * Sets minimal ratio of dead bytes in a pack which triggers background repacking
+             *
+             * @param repackDeadRatio Ratio between 0 and 1
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setRepackDeadRatio(double repackDeadRatio) {
+                this.repackDeadRatio = repackDeadRatio;
+                return this;
+            }
+        }
+    }
+}
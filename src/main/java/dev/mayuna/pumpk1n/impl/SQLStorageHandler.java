@@ -1,34 +1,118 @@
 package dev.mayuna.pumpk1n.impl;
 
-import com.google.gson.JsonParser;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import dev.mayuna.pumpk1n.api.Durability;
 import dev.mayuna.pumpk1n.api.Migratable;
 import dev.mayuna.pumpk1n.api.StorageHandler;
 import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.PayloadFormat;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
 import lombok.Getter;
 import lombok.NonNull;
 
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.UUID;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * SQL based storage
+ * SQL based storage. Whether a commit is forced to the storage device is given by the database server's configuration (e.g. {@code innodb_flush_log_at_trx_commit}),
+ * which cannot be changed per save, so {@link Durability#NONE}, {@link Durability#OS_FLUSH} and {@link Durability#FSYNC} behave the same. With
+ * {@link Durability#GROUP_COMMIT}, concurrent saves are batched even if {@link Settings#getMaxSaveBatchSize()} is one, in batches of up to
+ * {@link #GROUP_COMMIT_MAX_SAVE_BATCH_SIZE}.
+ * <br> Payloads are stored in {@link Settings#getPayloadFormat()}. Binary formats use {@code LONGBLOB} column; if the table already exists with
+ * {@code JSON} column, payloads are stored as JSON until the column is converted (e.g. {@code ALTER TABLE pumpkin MODIFY data LONGBLOB NOT
+ * NULL}). Rows in any format are loaded.<br> Keys are stored in {@link Settings#getKeyFormat()}; the format of an existing table always wins.
+ * Existing {@code VARCHAR(36)} table can be converted to {@code BINARY(16)} keys with {@link #convertToBinaryKeys(int)} while the storage
+ * handler is in use. Saves use {@code INSERT ... ON DUPLICATE KEY UPDATE}, which updates the row in place instead of deleting and inserting it.
+ * <br> Concurrent saves can be sent as one JDBC batch in one transaction, see {@link Settings#getMaxSaveBatchSize()}. With MySQL Connector/J,
+ * set {@code rewriteBatchedStatements} data source property to {@code true}, so the batch is sent as one multi-row statement in one round
+ * trip (e.g. {@code hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true")}).
+ * <br> {@link #streamAllHolderUUIDs()} and {@link #streamAllHolders()} read the table by keyset pagination in pages of
+ * {@link Settings#getPageSize()} rows, so they run in constant memory. Use {@link #splitKeyRange(int)} to read the table in parallel.
+ * <br> If {@link Settings#isVersioned()} is enabled, rows have {@code version} column and saves are compare-and-set: a save fails with
+ * {@link VersionConflictException} if the holder was modified by another writer (e.g. other application node) since it was loaded by this
+ * storage handler. Removals of holders with known version are compare-and-set too. Multiple nodes can thus cache holders and save them
+ * without any locking. Versions are forgotten when holders are unloaded from {@link dev.mayuna.pumpk1n.Pumpk1n}.
  */
 public class SQLStorageHandler extends StorageHandler implements Migratable {
 
+    /**
+     * Maximal number of saves in one batch with {@link Durability#GROUP_COMMIT}, if {@link Settings#getMaxSaveBatchSize()} does not enable
+     * batching
+     */
+    public static final int GROUP_COMMIT_MAX_SAVE_BATCH_SIZE = 256;
+
+    /**
+     * Number of locks which serialize versioned saves and removals of the same holder
+     */
+    protected static final int VERSION_LOCK_STRIPES = 64;
+
     protected final @Getter PoolManager poolManager;
+    protected final @Getter Settings settings;
     protected final @Getter String tableName;
+    protected volatile @Getter PayloadFormat payloadFormat;
+    protected volatile @Getter KeyFormat keyFormat;
+    protected volatile @Getter boolean binaryDataColumn; // Whether the data column of the table is binary, regardless of payloadFormat
+
+    protected final ReentrantReadWriteLock conversionLock = new ReentrantReadWriteLock();
+    protected volatile String conversionTableName; // Table into which are changes also written during key conversion
 
+    protected final Queue<PendingSave> pendingSaves = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger pendingSaveCount = new AtomicInteger();
+    protected final ReentrantLock saveBatchLock = new ReentrantLock();
+    protected final AtomicLong saveBatchCount = new AtomicLong();
+
+    protected final ConcurrentMap<UUID, Long> versions = new ConcurrentHashMap<>(); // Last loaded or saved versions of holders
+    protected final ReentrantLock[] versionLocks = new ReentrantLock[VERSION_LOCK_STRIPES];
+
+    /**
+     * Creates SQL Storage Handler which stores payloads as JSON
+     *
+     * @param hikariConfig Non-null {@link HikariConfig}
+     * @param tableName    Non-null table name
+     */
     public SQLStorageHandler(@NonNull HikariConfig hikariConfig, @NonNull String tableName) {
+        this(hikariConfig, Settings.Builder.create().setTableName(tableName).build());
+    }
+
+    /**
+     * Creates SQL Storage Handler with specified {@link Settings}
+     *
+     * @param hikariConfig Non-null {@link HikariConfig}
+     * @param settings     Non-null {@link Settings}
+     */
+    public SQLStorageHandler(@NonNull HikariConfig hikariConfig, @NonNull Settings settings) {
         super(SQLStorageHandler.class.getSimpleName());
         this.poolManager = new PoolManager(hikariConfig);
-        this.tableName = tableName;
+        this.settings = settings;
+        this.tableName = settings.tableName;
+        this.payloadFormat = settings.payloadFormat;
+        this.keyFormat = settings.keyFormat;
+        this.binaryDataColumn = settings.payloadFormat.isBinary();
+
+        for (int i = 0; i < versionLocks.length; i++) {
+            versionLocks[i] = new ReentrantLock();
+        }
     }
 
     /////////////////////
@@ -41,6 +125,11 @@ public class SQLStorageHandler extends StorageHandler implements Migratable {
     @Override
     public void prepareStorage() {
         createDatabase();
+        detectFormats();
+
+        if (settings.versioned) {
+            addVersionColumn();
+        }
     }
 
     /**
@@ -67,6 +156,24 @@ public class SQLStorageHandler extends StorageHandler implements Migratable {
         return delete(uuid);
     }
 
+    /**
+     * {@inheritDoc} Forgets the holder's version, see {@link #forgetVersion(UUID)}.
+     */
+    @Override
+    public void onHolderUnloaded(@NonNull UUID uuid) {
+        forgetVersion(uuid);
+    }
+
+    /**
+     * Forgets the last loaded or saved version of the holder, if {@link Settings#isVersioned()} is enabled. The holder must be loaded again
+     * before it's saved, otherwise the save fails with {@link VersionConflictException} if the holder exists.
+     *
+     * @param uuid Non-null UUID
+     */
+    public void forgetVersion(@NonNull UUID uuid) {
+        versions.remove(uuid);
+    }
+
     /**
      * Closes Hikari Pool
      */
@@ -74,11 +181,160 @@ public class SQLStorageHandler extends StorageHandler implements Migratable {
         poolManager.closePool();
     }
 
+    /**
+     * Converts the table to {@code BINARY(16)} keys while the storage handler is in use. Rows are copied in chunks into a new table, named with
+     * {@code _binary} suffix (dropped first, if it exists); saves and removals are written into both tables meanwhile and wait only while a chunk
+     * is being copied. Finally, the tables are swapped by {@link #swapTables(String, String)}, and the original table is kept with
+     * {@code _varchar} suffix as a backup, which you may drop afterward.<br> Only writes done by this storage handler are written into both tables, so other
+     * applications must not write into the table during the conversion.
+     *
+     * @param chunkSize Number of rows copied at once
+     *
+     * @return Number of copied rows
+     */
+    public long convertToBinaryKeys(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive!");
+        }
+
+        if (keyFormat == KeyFormat.BINARY) {
+            return 0;
+        }
+
+        String binaryTableName = tableName + "_binary";
+        String backupTableName = tableName + "_varchar";
+
+        executeUpdate("DROP TABLE IF EXISTS " + binaryTableName);
+        createTable(binaryTableName, KeyFormat.BINARY, binaryDataColumn);
+
+        conversionLock.writeLock().lock();
+        conversionTableName = binaryTableName;
+        conversionLock.writeLock().unlock();
+
+        try {
+            long copiedRows = 0;
+            String lastKey = "";
+
+            while (true) {
+                List<String> chunkKeys = new ArrayList<>(chunkSize);
+
+                conversionLock.writeLock().lock();
+
+                try {
+                    copiedRows += copyChunk(binaryTableName, lastKey, chunkSize, chunkKeys);
+                } finally {
+                    conversionLock.writeLock().unlock();
+                }
+
+                if (chunkKeys.size() < chunkSize) {
+                    break;
+                }
+
+                lastKey = chunkKeys.get(chunkKeys.size() - 1);
+            }
+
+            conversionLock.writeLock().lock();
+
+            try {
+                swapTables(binaryTableName, backupTableName);
+                keyFormat = KeyFormat.BINARY;
+            } finally {
+                conversionTableName = null;
+                conversionLock.writeLock().unlock();
+            }
+
+            return copiedRows;
+        } catch (RuntimeException exception) {
+            conversionLock.writeLock().lock();
+            conversionTableName = null;
+            conversionLock.writeLock().unlock();
+            throw exception;
+        }
+    }
+
+    /**
+     * Lazily lists all UUIDs of holders in the storage, ordered by key. UUIDs are loaded in pages of {@link Settings#getPageSize()} by keyset
+     * pagination, no connection is held between pages.
+     *
+     * @return Non-null stream of UUIDs
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        return streamHolderUUIDs(null, null);
+    }
+
+    /**
+     * Lazily lists UUIDs of holders in specified key range, ordered by key. See {@link #streamAllHolderUUIDs()}.
+     *
+     * @param afterUuid Nullable UUID after which the range starts (exclusive), null for the start of the table
+     * @param lastUuid  Nullable UUID at which the range ends (inclusive), null for the end of the table
+     *
+     * @return Non-null stream of UUIDs
+     */
+    public @NonNull Stream<UUID> streamHolderUUIDs(UUID afterUuid, UUID lastUuid) {
+        return streamKeyRange(afterUuid, lastUuid, false, (uuid, resultSet) -> uuid, Function.identity());
+    }
+
+    /**
+     * Lazily loads all holders in the storage, ordered by key. Holders are loaded in pages of {@link Settings#getPageSize()} by keyset
+     * pagination, no connection is held between pages. Loaded holders are not cached by {@link dev.mayuna.pumpk1n.Pumpk1n}, and their
+     * versions are not remembered; if {@link Settings#isVersioned()} is enabled, load a holder by {@link #loadHolder(UUID)} before saving it.
+     *
+     * @return Non-null stream of {@link DataHolder}
+     */
+    public @NonNull Stream<DataHolder> streamAllHolders() {
+        return streamHolders(null, null);
+    }
+
+    /**
+     * Lazily loads holders in specified key range, ordered by key. See {@link #streamAllHolders()}.
+     *
+     * @param afterUuid Nullable UUID after which the range starts (exclusive), null for the start of the table
+     * @param lastUuid  Nullable UUID at which the range ends (inclusive), null for the end of the table
+     *
+     * @return Non-null stream of {@link DataHolder}
+     */
+    public @NonNull Stream<DataHolder> streamHolders(UUID afterUuid, UUID lastUuid) {
+        return streamKeyRange(afterUuid, lastUuid, true, (uuid, resultSet) -> DataHolder.loadFromJsonObject(getPumpk1n(), PayloadFormat.decode(resultSet.getBytes("data"))),
+                              DataHolder::getUuid);
+    }
+
+    /**
+     * Splits the key space into ranges of the same size, which can be read in parallel, e.g. by {@link #streamHolders(UUID, UUID)}. Range
+     * {@code i} starts after {@code boundaries.get(i)} and ends at {@code boundaries.get(i + 1)}; the first and the last boundaries are null.
+     * UUIDs are ordered by their unsigned value, as both {@link KeyFormat}s are ordered in the database.
+     *
+     * @param rangeCount Positive number of ranges
+     *
+     * @return Non-null list of {@code rangeCount + 1} boundaries
+     */
+    public static @NonNull List<UUID> splitKeyRange(int rangeCount) {
+        if (rangeCount <= 0) {
+            throw new IllegalArgumentException("rangeCount must be positive!");
+        }
+
+        List<UUID> boundaries = new ArrayList<>(rangeCount + 1);
+        boundaries.add(null);
+
+        for (int range = 1; range < rangeCount; range++) {
+            // Most significant bits of range * 2^64 / rangeCount, as unsigned long
+            long mostSignificantBits = BigInteger.valueOf(range).shiftLeft(64).divide(BigInteger.valueOf(rangeCount)).longValue();
+            boundaries.add(new UUID(mostSignificantBits, 0));
+        }
+
+        boundaries.add(null);
+        return boundaries;
+    }
+
     /////////////////
     // SQL Methods //
     /////////////////
 
     protected void createDatabase() {
+        createTable(tableName, settings.keyFormat, settings.payloadFormat.isBinary());
+    }
+
+    protected void createTable(@NonNull String tableName, @NonNull KeyFormat keyFormat, boolean binaryDataColumn) {
         Connection connection = null;
         PreparedStatement statement = null;
 
@@ -86,8 +342,9 @@ public class SQLStorageHandler extends StorageHandler implements Migratable {
             connection = poolManager.getConnection();
             statement = connection.prepareStatement(
                     "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
-                            "uuid VARCHAR(36) PRIMARY KEY NOT NULL," +
-                            "data JSON NOT NULL" +
+                            "uuid " + keyFormat.getColumnType() + " PRIMARY KEY NOT NULL," +
+                            "data " + (binaryDataColumn ? "LONGBLOB" : "JSON") + " NOT NULL" +
+                            (settings.versioned ? ",version BIGINT NOT NULL DEFAULT 0" : "") +
                             ");"
             );
 
@@ -99,87 +356,1003 @@ public class SQLStorageHandler extends StorageHandler implements Migratable {
         }
     }
 
+    /**
+     * Renames the table to specified backup table and specified converted table to the table. MySQL and MariaDB swap them atomically by one
+     * {@code RENAME TABLE}. Other databases (e.g. H2) do not support renaming more tables at once, so they are renamed by two
+     * {@code ALTER TABLE ... RENAME TO}, between which the table does not exist and loads fail. Must be called while holding
+     * {@link #conversionLock}'s write lock.
+     *
+     * @param convertedTableName Non-null name of the table, which replaces the table
+     * @param backupTableName    Non-null name, which the table is renamed to
+     */
+    protected void swapTables(@NonNull String convertedTableName, @NonNull String backupTableName) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+
+        try {
+            connection = poolManager.getConnection();
+            String productName = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+
+            if (productName.contains("mysql") || productName.contains("mariadb")) {
+                statement = connection.prepareStatement("RENAME TABLE " + tableName + " TO " + backupTableName + ", " + convertedTableName + " TO " + tableName + ";");
+                statement.executeUpdate();
+                return;
+            }
+
+            statement = connection.prepareStatement("ALTER TABLE " + tableName + " RENAME TO " + backupTableName + ";");
+            statement.executeUpdate();
+            statement.close();
+
+            statement = connection.prepareStatement("ALTER TABLE " + convertedTableName + " RENAME TO " + tableName + ";");
+            statement.executeUpdate();
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while swapping " + tableName + " table with " + convertedTableName + " table in SQL database!", exception);
+        } finally {
+            poolManager.closeAll(connection, statement, null);
+        }
+    }
+
+    protected void executeUpdate(@NonNull String sql) {
+        Connection connection = null;
+        PreparedStatement statement = null;
+
+        try {
+            connection = poolManager.getConnection();
+            statement = connection.prepareStatement(sql);
+            statement.executeUpdate();
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while executing " + sql + " in SQL database!", exception);
+        } finally {
+            poolManager.closeAll(connection, statement, null);
+        }
+    }
+
+    /**
+     * Detects key and payload formats of the existing table. Key format of the table is always used. Binary payload format falls back to
+     * {@link PayloadFormat#JSON} if the table has non-binary data column. Type of the data column is remembered in
+     * {@link #isBinaryDataColumn()}, as JSON payloads may be stored in binary data column too.
+     */
+    protected void detectFormats() {
+        Connection connection = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = poolManager.getConnection();
+            resultSet = connection.getMetaData().getColumns(connection.getCatalog(), null, tableName, null);
+
+            while (resultSet.next()) {
+                String columnName = resultSet.getString("COLUMN_NAME");
+                String typeName = resultSet.getString("TYPE_NAME").toUpperCase(Locale.ROOT);
+                boolean binary = typeName.contains("BLOB") || typeName.contains("BINARY");
+
+                if (columnName.equalsIgnoreCase("uuid")) {
+                    keyFormat = binary ? KeyFormat.BINARY : KeyFormat.VARCHAR;
+
+                    if (keyFormat != settings.keyFormat && getPumpk1n() != null) {
+                        getPumpk1n().getLogger().logMisc("Table " + tableName + " has " + typeName + " uuid column, keys will be stored as " + keyFormat + "!");
+                    }
+                } else if (columnName.equalsIgnoreCase("data")) {
+                    binaryDataColumn = binary;
+
+                    if (settings.payloadFormat.isBinary() && !binary) {
+                        payloadFormat = PayloadFormat.JSON;
+
+                        if (getPumpk1n() != null) {
+                            getPumpk1n().getLogger().logMisc("Table " + tableName + " has " + typeName + " data column, payloads will be stored as JSON!");
+                        }
+                    }
+                }
+            }
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while reading columns of " + tableName + " table in SQL database!", exception);
+        } finally {
+            poolManager.closeAll(connection, null, resultSet);
+        }
+    }
+
+    /**
+     * Adds {@code version} column to the table, if it does not have it yet. Existing rows get version zero.
+     */
+    protected void addVersionColumn() {
+        Connection connection = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = poolManager.getConnection();
+            resultSet = connection.getMetaData().getColumns(connection.getCatalog(), null, tableName, "version");
+
+            if (resultSet.next()) {
+                return;
+            }
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while reading columns of " + tableName + " table in SQL database!", exception);
+        } finally {
+            poolManager.closeAll(connection, null, resultSet);
+        }
+
+        if (getPumpk1n() != null) {
+            getPumpk1n().getLogger().logMisc("Adding version column to " + tableName + " table");
+        }
+
+        executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * Copies one chunk of rows (ordered by key) into specified table with binary keys. Payloads are copied as they are, so the target table
+     * must have the same type of data column, see {@link #isBinaryDataColumn()}.
+     *
+     * @param binaryTableName Non-null target table name
+     * @param lastKey         Non-null key after which the chunk starts
+     * @param chunkSize       Number of rows
+     * @param chunkKeys       Non-null list into which are copied keys added
+     *
+     * @return Number of copied rows
+     */
+    protected int copyChunk(@NonNull String binaryTableName, @NonNull String lastKey, int chunkSize, @NonNull List<String> chunkKeys) {
+        Connection connection = null;
+        PreparedStatement selectStatement = null;
+        PreparedStatement insertStatement = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = poolManager.getConnection();
+            selectStatement = connection.prepareStatement(
+                    "SELECT uuid, data" + (settings.versioned ? ", version" : "") + " FROM " + tableName + " WHERE uuid > ? ORDER BY uuid LIMIT ?;"
+            );
+            selectStatement.setString(1, lastKey);
+            selectStatement.setInt(2, chunkSize);
+            resultSet = selectStatement.executeQuery();
+
+            insertStatement = connection.prepareStatement(settings.versioned ? getVersionedUpsertSql(binaryTableName) : getUpsertSql(binaryTableName));
+
+            while (resultSet.next()) {
+                String key = resultSet.getString("uuid");
+                chunkKeys.add(key);
+
+                setKey(insertStatement, 1, UUID.fromString(key), KeyFormat.BINARY);
+
+                // JSON column does not accept binary strings, binary column may contain payloads which are not valid strings
+                if (binaryDataColumn) {
+                    insertStatement.setBytes(2, resultSet.getBytes("data"));
+                } else {
+                    insertStatement.setString(2, resultSet.getString("data"));
+                }
+
+                if (settings.versioned) {
+                    insertStatement.setLong(3, resultSet.getLong("version"));
+                }
+
+                insertStatement.addBatch();
+            }
+
+            insertStatement.executeBatch();
+            return chunkKeys.size();
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while copying rows of " + tableName + " table into " + binaryTableName + " table!", exception);
+        } finally {
+            poolManager.closeAll(null, insertStatement, null);
+            poolManager.closeAll(connection, selectStatement, resultSet);
+        }
+    }
+
+    /**
+     * Returns upsert statement of specified table. {@code VALUES()} function in {@code ON DUPLICATE KEY UPDATE} is deprecated since MySQL
+     * 8.0.20 in favor of row alias ({@code VALUES (?, ?) AS new ON DUPLICATE KEY UPDATE data = new.data}), which however is not supported by
+     * MySQL before 8.0.19 and MariaDB. Override this and {@link #getVersionedUpsertSql(String)} to use row alias.
+     *
+     * @param tableName Non-null table name
+     *
+     * @return Non-null SQL with {@code uuid} and {@code data} parameters
+     */
+    protected String getUpsertSql(@NonNull String tableName) {
+        return "INSERT INTO " + tableName + " (uuid, data) VALUES (?, ?) ON DUPLICATE KEY UPDATE data = VALUES(data)";
+    }
+
+    /**
+     * Returns upsert statement of specified versioned table, see {@link #getUpsertSql(String)}
+     *
+     * @param tableName Non-null table name
+     *
+     * @return Non-null SQL with {@code uuid}, {@code data} and {@code version} parameters
+     */
+    protected String getVersionedUpsertSql(@NonNull String tableName) {
+        return "INSERT INTO " + tableName + " (uuid, data, version) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE data = VALUES(data), version = VALUES(version)";
+    }
+
+    protected void setKey(@NonNull PreparedStatement statement, int index, @NonNull UUID uuid, @NonNull KeyFormat keyFormat) throws SQLException {
+        if (keyFormat == KeyFormat.BINARY) {
+            statement.setBytes(index, ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array());
+        } else {
+            statement.setString(index, uuid.toString());
+        }
+    }
+
+    protected UUID getKey(@NonNull ResultSet resultSet, @NonNull KeyFormat keyFormat) throws SQLException {
+        if (keyFormat == KeyFormat.BINARY) {
+            ByteBuffer bytes = ByteBuffer.wrap(resultSet.getBytes("uuid"));
+            return new UUID(bytes.getLong(), bytes.getLong());
+        }
+
+        return UUID.fromString(resultSet.getString("uuid"));
+    }
+
+    protected void setPayload(@NonNull PreparedStatement statement, int index, @NonNull Object payload) throws SQLException {
+        if (payload instanceof byte[]) {
+            statement.setBytes(index, (byte[]) payload);
+        } else {
+            statement.setString(index, (String) payload);
+        }
+    }
+
     protected void insertOrReplace(@NonNull DataHolder dataHolder) {
+        if (settings.versioned) {
+            compareAndSet(dataHolder);
+            return;
+        }
+
+        if (getMaxSaveBatchSize() > 1) {
+            insertOrReplaceBatched(new PendingSave(dataHolder.getUuid(), serialize(dataHolder)));
+            return;
+        }
+
         Connection connection = null;
         PreparedStatement statement = null;
 
+        conversionLock.readLock().lock();
+
         try {
+            Object payload = serialize(dataHolder);
+
             connection = poolManager.getConnection();
-            statement = connection.prepareStatement("REPLACE INTO " + tableName + " (uuid, data) VALUES (?, ?)");
-            statement.setString(1, dataHolder.getUuid().toString());
-            statement.setString(2, dataHolder.getAsJsonObject().toString());
+            statement = connection.prepareStatement(getUpsertSql(tableName));
+            setKey(statement, 1, dataHolder.getUuid(), keyFormat);
+            setPayload(statement, 2, payload);
             statement.executeUpdate();
+
+            if (conversionTableName != null) {
+                statement.close();
+                statement = connection.prepareStatement(getUpsertSql(conversionTableName));
+                setKey(statement, 1, dataHolder.getUuid(), KeyFormat.BINARY);
+                setPayload(statement, 2, payload);
+                statement.executeUpdate();
+            }
         } catch (Exception exception) {
             throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + dataHolder.getUuid() + " to SQL database!", exception);
         } finally {
             poolManager.closeAll(connection, statement, null);
+            conversionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the holder only if its version in the table is the one last loaded or saved by this storage handler, and increments the version.
+     * Holder which was not loaded from the table is inserted, which fails if another writer has inserted it meanwhile. Saves of the same
+     * holder by this storage handler are done one at a time.
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @throws VersionConflictException If the holder was modified by another writer
+     */
+    protected void compareAndSet(@NonNull DataHolder dataHolder) {
+        UUID uuid = dataHolder.getUuid();
+        Object payload = serialize(dataHolder);
+        ReentrantLock versionLock = getVersionLock(uuid);
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+
+        versionLock.lock();
+        conversionLock.readLock().lock();
+
+        try {
+            Long expectedVersion = versions.get(uuid);
+            long version;
+
+            connection = poolManager.getConnection();
+
+            if (expectedVersion == null) {
+                version = 1;
+                statement = connection.prepareStatement("INSERT INTO " + tableName + " (uuid, data, version) VALUES (?, ?, ?);");
+                setKey(statement, 1, uuid, keyFormat);
+                setPayload(statement, 2, payload);
+                statement.setLong(3, version);
+
+                try {
+                    statement.executeUpdate();
+                } catch (SQLException exception) {
+                    if (isDuplicateKey(exception)) {
+                        throw new VersionConflictException(uuid, null);
+                    }
+
+                    throw exception;
+                }
+            } else {
+                version = expectedVersion + 1;
+                statement = connection.prepareStatement("UPDATE " + tableName + " SET data = ?, version = version + 1 WHERE uuid = ? AND version = ?;");
+                setPayload(statement, 1, payload);
+                setKey(statement, 2, uuid, keyFormat);
+                statement.setLong(3, expectedVersion);
+
+                if (statement.executeUpdate() == 0) {
+                    throw new VersionConflictException(uuid, expectedVersion);
+                }
+            }
+
+            if (conversionTableName != null) {
+                statement.close();
+                statement = connection.prepareStatement(getVersionedUpsertSql(conversionTableName));
+                setKey(statement, 1, uuid, KeyFormat.BINARY);
+                setPayload(statement, 2, payload);
+                statement.setLong(3, version);
+                statement.executeUpdate();
+            }
+
+            versions.put(uuid, version);
+        } catch (VersionConflictException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + uuid + " to SQL database!", exception);
+        } finally {
+            poolManager.closeAll(connection, statement, null);
+            conversionLock.readLock().unlock();
+            versionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns lock which serializes versioned saves and removals of specified holder. Holders share {@link #VERSION_LOCK_STRIPES} locks, which
+     * are held during JDBC calls instead of blocking {@link #versions} map.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return Non-null {@link ReentrantLock}
+     */
+    protected ReentrantLock getVersionLock(@NonNull UUID uuid) {
+        return versionLocks[Math.floorMod(uuid.hashCode(), versionLocks.length)];
+    }
+
+    protected boolean isDuplicateKey(@NonNull SQLException exception) {
+        // SQL state class 23 is integrity constraint violation
+        return exception instanceof SQLIntegrityConstraintViolationException || (exception.getSQLState() != null && exception.getSQLState().startsWith("23"));
+    }
+
+    /**
+     * Queues the save and waits until it's committed. The first waiting thread becomes the leader: it waits for the batch window (unless the
+     * batch is already full), then sends queued saves as one JDBC batch in one transaction for all of them. Other threads park until their
+     * save is committed or until they are woken up to become the next leader.
+     *
+     * @param pendingSave Non-null {@link PendingSave}
+     */
+    protected void insertOrReplaceBatched(@NonNull PendingSave pendingSave) {
+        pendingSaves.add(pendingSave);
+        pendingSaveCount.incrementAndGet();
+
+        // Parking returns immediately while the interrupt flag is set, so it's cleared and restored once the save is committed
+        boolean interrupted = false;
+
+        try {
+            while (!pendingSave.committed) {
+                if (!saveBatchLock.tryLock()) {
+                    LockSupport.park(this);
+                    interrupted |= Thread.interrupted();
+                    continue;
+                }
+
+                try {
+                    if (!pendingSave.committed) {
+                        interrupted |= commitPendingSaves(true);
+                    }
+                } finally {
+                    saveBatchLock.unlock();
+
+                    // Wakes up the next leader
+                    PendingSave nextPendingSave = pendingSaves.peek();
+
+                    if (nextPendingSave != null) {
+                        LockSupport.unpark(nextPendingSave.thread);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (pendingSave.exception != null) {
+            throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + pendingSave.uuid + " to SQL database!", pendingSave.exception);
         }
     }
 
+    /**
+     * Returns maximal number of saves in one batch. It's {@link Settings#getMaxSaveBatchSize()}, unless it disables batching and
+     * {@link #getDurability()} is {@link Durability#GROUP_COMMIT}.
+     *
+     * @return Positive number of saves, one if batching is disabled
+     */
+    public int getMaxSaveBatchSize() {
+        if (settings.maxSaveBatchSize == 1 && durability == Durability.GROUP_COMMIT) {
+            return GROUP_COMMIT_MAX_SAVE_BATCH_SIZE;
+        }
+
+        return settings.maxSaveBatchSize;
+    }
+
+    /**
+     * Returns number of save batches sent to the database, including failed ones
+     *
+     * @return Number of batches
+     */
+    public long getSaveBatchCount() {
+        return saveBatchCount.get();
+    }
+
+    /**
+     * Commits up to {@link #getMaxSaveBatchSize()} queued saves as one JDBC batch in one transaction. Must be called while holding
+     * {@link #saveBatchLock}.
+     *
+     * @param waitForBatch Whether to wait for the batch window before committing. Interrupts do not cut the window short, the interrupt flag is
+     *                     cleared and reported instead.
+     *
+     * @return True if the thread was interrupted while waiting, its interrupt flag must be restored by the caller
+     */
+    protected boolean commitPendingSaves(boolean waitForBatch) {
+        int maxSaveBatchSize = getMaxSaveBatchSize();
+        boolean interrupted = false;
+
+        if (waitForBatch && settings.saveBatchWindowMicros > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(settings.saveBatchWindowMicros);
+            long remainingNanos;
+
+            // Parking may return early, e.g. when this thread was woken up while it was not parked
+            while (pendingSaveCount.get() < maxSaveBatchSize && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remainingNanos);
+                interrupted |= Thread.interrupted();
+            }
+        }
+
+        List<PendingSave> batch = new ArrayList<>();
+        PendingSave pendingSave;
+
+        while (batch.size() < maxSaveBatchSize && (pendingSave = pendingSaves.poll()) != null) {
+            pendingSaveCount.decrementAndGet();
+            batch.add(pendingSave);
+        }
+
+        if (batch.isEmpty()) {
+            return interrupted;
+        }
+
+        Connection connection = null;
+        Exception exception = null;
+
+        saveBatchCount.incrementAndGet();
+        conversionLock.readLock().lock();
+
+        try {
+            connection = poolManager.getConnection();
+            connection.setAutoCommit(false);
+
+            try {
+                executeSaveBatch(connection, tableName, keyFormat, batch);
+
+                if (conversionTableName != null) {
+                    executeSaveBatch(connection, conversionTableName, KeyFormat.BINARY, batch);
+                }
+
+                connection.commit();
+            } catch (Throwable throwable) {
+                connection.rollback();
+                throw throwable;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (Exception commitException) {
+            exception = commitException;
+        } catch (Throwable throwable) {
+            exception = new SQLException("Save batch failed unexpectedly!", throwable);
+            throw throwable;
+        } finally {
+            poolManager.closeAll(connection, null, null);
+            conversionLock.readLock().unlock();
+
+            // Even if an error is thrown, waiting threads must not stay parked
+            for (PendingSave save : batch) {
+                save.exception = exception;
+                save.committed = true;
+                LockSupport.unpark(save.thread);
+            }
+        }
+
+        return interrupted;
+    }
+
+    protected void executeSaveBatch(@NonNull Connection connection, @NonNull String tableName, @NonNull KeyFormat keyFormat, @NonNull List<PendingSave> batch) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(getUpsertSql(tableName))) {
+            for (PendingSave save : batch) {
+                setKey(statement, 1, save.uuid, keyFormat);
+                setPayload(statement, 2, save.payload);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Serializes specified {@link DataHolder} in {@link #getPayloadFormat()}
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null JSON {@link String} or bytes
+     */
+    protected Object serialize(@NonNull DataHolder dataHolder) {
+        PayloadFormat payloadFormat = this.payloadFormat;
+
+        if (payloadFormat.isBinary()) {
+            return payloadFormat.encode(dataHolder);
+        }
+
+        return SerializationBuffers.toJsonString(dataHolder);
+    }
+
     protected DataHolder loadByUUID(@NonNull UUID uuid) {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
+        conversionLock.readLock().lock();
+
         try {
             connection = poolManager.getConnection();
-            statement = connection.prepareStatement("SELECT data FROM " + tableName + " WHERE uuid = ?;");
-            statement.setString(1, uuid.toString());
+            statement = connection.prepareStatement("SELECT data" + (settings.versioned ? ", version" : "") + " FROM " + tableName + " WHERE uuid = ?;");
+            setKey(statement, 1, uuid, keyFormat);
             statement.executeQuery();
 
             resultSet = statement.getResultSet();
 
             if (resultSet.next()) {
-                return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(resultSet.getString("data")).getAsJsonObject());
+                if (settings.versioned) {
+                    versions.put(uuid, resultSet.getLong("version"));
+                }
+
+                // Returns bytes of both JSON and BLOB values
+                return DataHolder.loadFromJsonObject(getPumpk1n(), PayloadFormat.decode(resultSet.getBytes("data")));
             }
 
+            // Holder will be inserted, if it's created
+            versions.remove(uuid);
             return null;
         } catch (Exception exception) {
             throw new RuntimeException("Exception occurred while loading DataHolder with UUID " + uuid + " from SQL database!", exception);
         } finally {
             poolManager.closeAll(connection, statement, resultSet);
+            conversionLock.readLock().unlock();
         }
     }
 
+    /**
+     * Deletes the holder. If {@link Settings#isVersioned()} is enabled and the holder's version is known, the row is deleted only if it has
+     * that version.
+     *
+     * @param uuid Non-null UUID
+     *
+     * @return True if the row was deleted
+     *
+     * @throws VersionConflictException If the holder was modified or deleted by another writer
+     */
     protected boolean delete(@NonNull UUID uuid) {
+        ReentrantLock versionLock = settings.versioned ? getVersionLock(uuid) : null;
+
         Connection connection = null;
         PreparedStatement statement = null;
 
+        if (versionLock != null) {
+            versionLock.lock();
+        }
+
+        conversionLock.readLock().lock();
+
         try {
+            Long expectedVersion = settings.versioned ? versions.get(uuid) : null;
+
             connection = poolManager.getConnection();
-            statement = connection.prepareStatement("DELETE FROM " + tableName + " WHERE uuid = ?;");
-            statement.setString(1, uuid.toString());
+            statement = connection.prepareStatement("DELETE FROM " + tableName + " WHERE uuid = ?" + (expectedVersion != null ? " AND version = ?" : "") + ";");
+            setKey(statement, 1, uuid, keyFormat);
+
+            if (expectedVersion != null) {
+                statement.setLong(2, expectedVersion);
+            }
+
+            boolean deleted = statement.executeUpdate() > 0;
+
+            if (expectedVersion != null && !deleted) {
+                throw new VersionConflictException(uuid, expectedVersion);
+            }
+
+            versions.remove(uuid);
 
-            return statement.executeUpdate() > 0;
+            if (conversionTableName != null) {
+                statement.close();
+                statement = connection.prepareStatement("DELETE FROM " + conversionTableName + " WHERE uuid = ?;");
+                setKey(statement, 1, uuid, KeyFormat.BINARY);
+                statement.executeUpdate();
+            }
+
+            return deleted;
+        } catch (VersionConflictException exception) {
+            throw exception;
         } catch (Exception exception) {
             throw new RuntimeException("Exception occurred while deleting DataHolder with UUID " + uuid + " from SQL database!", exception);
         } finally {
             poolManager.closeAll(connection, statement, null);
+            conversionLock.readLock().unlock();
+
+            if (versionLock != null) {
+                versionLock.unlock();
+            }
         }
     }
 
-    @Override
-    public List<UUID> getAllHolderUUIDs() {
+    /**
+     * Lazily reads rows in specified key range by keyset pagination
+     *
+     * @param afterUuid   Nullable UUID after which the range starts (exclusive)
+     * @param lastUuid    Nullable UUID at which the range ends (inclusive)
+     * @param loadData    Whether to load data column
+     * @param rowMapper   Non-null {@link RowMapper}
+     * @param keyFunction Non-null function which returns UUID of mapped row
+     * @param <T>         Type of mapped rows
+     *
+     * @return Non-null stream of mapped rows
+     */
+    protected <T> Stream<T> streamKeyRange(UUID afterUuid, UUID lastUuid, boolean loadData, @NonNull RowMapper<T> rowMapper, @NonNull Function<T, UUID> keyFunction) {
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+
+            private final Deque<T> page = new ArrayDeque<>();
+            private UUID cursor = afterUuid;
+            private boolean lastPage;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (page.isEmpty() && !lastPage) {
+                    List<T> rows = loadPage(cursor, lastUuid, loadData, rowMapper);
+
+                    lastPage = rows.size() < settings.pageSize;
+
+                    if (!rows.isEmpty()) {
+                        cursor = keyFunction.apply(rows.get(rows.size() - 1));
+                        page.addAll(rows);
+                    }
+                }
+
+                if (page.isEmpty()) {
+                    return false;
+                }
+
+                action.accept(page.poll());
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Loads one page of rows in specified key range
+     *
+     * @param afterUuid Nullable UUID after which the page starts (exclusive)
+     * @param lastUuid  Nullable UUID at which the range ends (inclusive)
+     * @param loadData  Whether to load data column
+     * @param rowMapper Non-null {@link RowMapper}
+     * @param <T>       Type of mapped rows
+     *
+     * @return Non-null list of at most {@link Settings#getPageSize()} mapped rows
+     */
+    protected <T> List<T> loadPage(UUID afterUuid, UUID lastUuid, boolean loadData, @NonNull RowMapper<T> rowMapper) {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
+        conversionLock.readLock().lock();
+
         try {
+            KeyFormat keyFormat = this.keyFormat;
+            List<String> conditions = new ArrayList<>(2);
+
+            if (afterUuid != null) {
+                conditions.add("uuid > ?");
+            }
+
+            if (lastUuid != null) {
+                conditions.add("uuid <= ?");
+            }
+
             connection = poolManager.getConnection();
-            statement = connection.prepareStatement("SELECT uuid FROM " + tableName);
+            statement = connection.prepareStatement(
+                    "SELECT uuid" + (loadData ? ", data" : "") + " FROM " + tableName +
+                            (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions)) +
+                            " ORDER BY uuid LIMIT ?;"
+            );
+
+            int index = 1;
+
+            if (afterUuid != null) {
+                setKey(statement, index++, afterUuid, keyFormat);
+            }
+
+            if (lastUuid != null) {
+                setKey(statement, index++, lastUuid, keyFormat);
+            }
+
+            statement.setInt(index, settings.pageSize);
             resultSet = statement.executeQuery();
 
-            List<UUID> uuids = new LinkedList<>();
+            List<T> rows = new ArrayList<>(settings.pageSize);
 
             while (resultSet.next()) {
-                uuids.add(UUID.fromString(resultSet.getString("uuid")));
+                rows.add(rowMapper.map(getKey(resultSet, keyFormat), resultSet));
             }
 
-            return uuids;
+            return rows;
         } catch (Exception exception) {
-            throw new RuntimeException("Exception occurred while listing all DataHolders from SQL database!", exception);
+            throw new RuntimeException("Exception occurred while listing DataHolders after UUID " + afterUuid + " from SQL database!", exception);
         } finally {
             poolManager.closeAll(connection, statement, resultSet);
+            conversionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists all UUIDs of holders in the storage, ordered by key. They are loaded in pages by {@link #streamAllHolderUUIDs()}, so no connection
+     * is held while the list is being built.
+     *
+     * @return Non-null list of UUIDs
+     */
+    @Override
+    public List<UUID> getAllHolderUUIDs() {
+        return streamAllHolderUUIDs().collect(Collectors.toList());
+    }
+
+    /**
+     * Thrown when a compare-and-set save fails, because the holder was modified by another writer since it was loaded by this storage handler.
+     * Unload the holder (e.g. by {@link dev.mayuna.pumpk1n.Pumpk1n#unloadDataHolder(UUID)}), load it again and apply your changes to it.
+     */
+    public static class VersionConflictException extends RuntimeException {
+
+        protected final @Getter UUID uuid;
+        protected final @Getter Long expectedVersion;
+
+        /**
+         * Creates {@link VersionConflictException}
+         *
+         * @param uuid            Non-null UUID of the holder
+         * @param expectedVersion Nullable version which was expected in the table, null if the holder was expected not to exist
+         */
+        public VersionConflictException(@NonNull UUID uuid, Long expectedVersion) {
+            super("DataHolder with UUID " + uuid + " was modified by another writer" + (expectedVersion != null ? " (expected version " + expectedVersion + ")" : "") + "!");
+            this.uuid = uuid;
+            this.expectedVersion = expectedVersion;
+        }
+    }
+
+    /**
+     * Maps row of a page, see {@link #loadPage(UUID, UUID, boolean, RowMapper)}
+     *
+     * @param <T> Type of mapped rows
+     */
+    @FunctionalInterface
+    protected interface RowMapper<T> {
+
+        T map(UUID uuid, ResultSet resultSet) throws Exception;
+    }
+
+    /**
+     * Save waiting for batched commit
+     */
+    protected static class PendingSave {
+
+        protected final UUID uuid;
+        protected final Object payload;
+        protected final Thread thread = Thread.currentThread();
+        protected volatile boolean committed;
+        protected volatile Exception exception;
+
+        protected PendingSave(@NonNull UUID uuid, @NonNull Object payload) {
+            this.uuid = uuid;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * How are holder's UUIDs stored
+     */
+    public enum KeyFormat {
+
+        /**
+         * {@code VARCHAR(36)} string, compatible with tables created by older versions
+         */
+        VARCHAR("VARCHAR(36)"),
+
+        /**
+         * {@code BINARY(16)} bytes (most significant bits first), primary index is about 2.5x smaller
+         */
+        BINARY("BINARY(16)");
+
+        private final @Getter String columnType;
+
+        KeyFormat(String columnType) {
+            this.columnType = columnType;
+        }
+    }
+
+    public static class Settings {
+
+        protected final @Getter String tableName;
+        protected final @Getter PayloadFormat payloadFormat;
+        protected final @Getter KeyFormat keyFormat;
+        protected final @Getter int maxSaveBatchSize;
+        protected final @Getter long saveBatchWindowMicros;
+        protected final @Getter int pageSize;
+        protected final @Getter boolean versioned;
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param tableName             Non-null table name that will Pumpk1n use
+         * @param payloadFormat         Non-null {@link PayloadFormat}
+         * @param keyFormat             Non-null {@link KeyFormat} of new tables
+         * @param maxSaveBatchSize      Maximal number of saves sent in one JDBC batch, one disables batching
+         * @param saveBatchWindowMicros How long should the first save wait for other saves before sending the batch, zero for no waiting
+         * @param pageSize              Number of rows loaded at once when streaming the table
+         * @param versioned             Whether saves are compare-and-set on {@code version} column
+         */
+        public Settings(@NonNull String tableName, @NonNull PayloadFormat payloadFormat, @NonNull KeyFormat keyFormat, int maxSaveBatchSize, long saveBatchWindowMicros,
+                int pageSize, boolean versioned) {
+            if (tableName.contains(";")) {
+                throw new IllegalArgumentException("TableName " + tableName + " contains semicolon!");
+            }
+
+            if (maxSaveBatchSize <= 0) {
+                throw new IllegalArgumentException("maxSaveBatchSize must be positive!");
+            }
+
+            if (saveBatchWindowMicros < 0) {
+                throw new IllegalArgumentException("saveBatchWindowMicros must not be negative!");
+            }
+
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("pageSize must be positive!");
+            }
+
+            this.tableName = tableName;
+            this.payloadFormat = payloadFormat;
+            this.keyFormat = keyFormat;
+            this.maxSaveBatchSize = maxSaveBatchSize;
+            this.saveBatchWindowMicros = saveBatchWindowMicros;
+            this.pageSize = pageSize;
+            this.versioned = versioned;
+        }
+
+        public static class Builder {
+
+            protected @Getter String tableName = "pumpkin";
+            protected @Getter PayloadFormat payloadFormat = PayloadFormat.JSON;
+            protected @Getter KeyFormat keyFormat = KeyFormat.VARCHAR;
+            protected @Getter int maxSaveBatchSize = 1;
+            protected @Getter long saveBatchWindowMicros = 0;
+            protected @Getter int pageSize = 1000;
+            protected @Getter boolean versioned = false;
+
+            /**
+             * Creates empty {@link Builder} with default values
+             */
+            public Builder() {
+            }
+
+            /**
+             * Creates empty {@link Builder} with default values
+             *
+             * @return Non-null {@link Builder}
+             */
+            public static @NonNull Builder create() {
+                return new Builder();
+            }
+
+            /**
+             * Builds {@link Settings}
+             *
+             * @return Non-null {@link Settings}
+             */
+            public @NonNull Settings build() {
+                return new Settings(tableName, payloadFormat, keyFormat, maxSaveBatchSize, saveBatchWindowMicros, pageSize, versioned);
+            }
+
+            /**
+             * Sets table name to use
+             *
+             * @param tableName Non-null {@link String}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setTableName(@NonNull String tableName) {
+                this.tableName = tableName;
+                return this;
+            }
+
+            /**
+             * Sets format in which are payloads stored
+             *
+             * @param payloadFormat Non-null {@link PayloadFormat}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setPayloadFormat(@NonNull PayloadFormat payloadFormat) {
+                this.payloadFormat = payloadFormat;
+                return this;
+            }
+
+            /**
+             * Sets format of keys in new tables. Existing tables keep their format, see {@link SQLStorageHandler#convertToBinaryKeys(int)}.
+             *
+             * @param keyFormat Non-null {@link KeyFormat}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setKeyFormat(@NonNull KeyFormat keyFormat) {
+                this.keyFormat = keyFormat;
+                return this;
+            }
+
+            /**
+             * Sets maximal number of concurrent saves sent in one JDBC batch and committed in one transaction
+             *
+             * @param maxSaveBatchSize Positive number of saves, one disables batching
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaxSaveBatchSize(int maxSaveBatchSize) {
+                this.maxSaveBatchSize = maxSaveBatchSize;
+                return this;
+            }
+
+            /**
+             * Sets how long should the first save wait for other saves before sending them together. Saves arriving while a batch is being sent
+             * are batched into the next one even without waiting.
+             *
+             * @param saveBatchWindowMicros Window in microseconds, zero for no waiting
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setSaveBatchWindowMicros(long saveBatchWindowMicros) {
+                this.saveBatchWindowMicros = saveBatchWindowMicros;
+                return this;
+            }
+
+            /**
+             * Sets number of rows loaded at once when streaming the table, see {@link SQLStorageHandler#streamAllHolders()}
+             *
+             * @param pageSize Positive number of rows
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setPageSize(int pageSize) {
+                this.pageSize = pageSize;
+                return this;
+            }
+
+            /**
+             * Sets whether saves are compare-and-set on {@code version} column, which is added to the table if it's missing. Useful when
+             * multiple application nodes write into the same table, see {@link VersionConflictException}. Versioned saves are not batched.
+             *
+             * @param versioned True to enable optimistic versioning
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setVersioned(boolean versioned) {
+                this.versioned = versioned;
+                return this;
+            }
         }
     }
 
@@ -1,31 +1,79 @@
 package dev.mayuna.pumpk1n.impl;
 
-import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.api.Durability;
 import dev.mayuna.pumpk1n.api.Migratable;
 import dev.mayuna.pumpk1n.api.StorageHandler;
 import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.PayloadFormat;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
 import lombok.Getter;
 import lombok.NonNull;
 
+import java.nio.file.Paths;
 import java.sql.*;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.UUID;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * SQLite based storage
+ * SQLite based storage. Keeps one writer connection and a small pool of reader connections open between operations, so SQLite's page cache and
+ * prepared statements are reused. Connections are opened by {@link #prepareStorage()}; call {@link #close()} when you're done.<br> By default,
+ * the database is switched to WAL journal mode, so loads run concurrently with each other and with a save. Saves into the same database file
+ * are serialized by a lock shared by all handlers in the JVM which use that file; handlers using different files do not block each other. If
+ * WAL mode is not used (e.g. in-memory database), loads wait for saves.<br> If {@link Settings#getMaxSaveBatchSize()} is greater than one
+ * or {@link #getDurability()} is {@link Durability#GROUP_COMMIT} (batches of up to {@link #GROUP_COMMIT_MAX_SAVE_BATCH_SIZE}), concurrent saves
+ * are committed together in one transaction (group commit); every save returns after the shared commit. When the transaction fails, all saves
+ * in it fail.<br> Optional background maintenance (WAL checkpoint, incremental vacuum, {@code PRAGMA optimize} and integrity
+ * check) runs only when no save or removal happened for {@link Settings#getMaintenanceIdleMillis()} and, if set, within the maintenance window;
+ * see {@link #getMaintenanceMetrics()} for how long it takes.<br> Payloads are stored in {@link Settings#getPayloadFormat()}. Since SQLite
+ * column types are not enforced, the format may be changed for an existing database; rows in any format are loaded.<br> Pragmas from {@link Settings} are applied on every connection.
+ * Unless {@link Settings#getSynchronousMode()} is set, {@link #getDurability()} is applied as {@code PRAGMA synchronous}: {@code OFF} for
+ * {@link Durability#NONE}, {@code NORMAL} for {@link Durability#OS_FLUSH} and {@code FULL} otherwise (default); changing it on prepared storage
+ * handler applies it to open connections.
  */
 public class SQLiteStorageHandler extends StorageHandler implements Migratable {
 
-    protected static final Object mutex = new Object();
+    /**
+     * Maximal number of saves in one transaction with {@link Durability#GROUP_COMMIT}, if {@link Settings#getMaxSaveBatchSize()} does not
+     * enable group commit
+     */
+    public static final int GROUP_COMMIT_MAX_SAVE_BATCH_SIZE = 256;
+
+    protected static final Map<String, ReentrantReadWriteLock> databaseLocks = new ConcurrentHashMap<>(); // Database -> lock
+    protected static final int INCREMENTAL_VACUUM_PAGES = 1024;
+
     protected final @Getter Settings settings;
+    protected final ReentrantReadWriteLock databaseLock;
+    protected final Object connectionLock = new Object();
+
+    protected final String saveSql;
+    protected final String loadSql;
+    protected final String deleteSql;
+    protected final String listSql;
+
+    protected final BlockingQueue<PooledConnection> readConnections;
+    protected final Queue<PendingSave> pendingSaves = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger pendingSaveCount = new AtomicInteger();
+    protected final ReentrantLock saveBatchLock = new ReentrantLock(); // Held by the group commit leader, before databaseLock
+    protected final AtomicLong saveBatchCount = new AtomicLong();
+    protected PooledConnection writeConnection; // Guarded by databaseLock's write lock
+    protected volatile boolean prepared;
+    protected volatile boolean walMode;
+    protected volatile long lastWriteNanos = System.nanoTime();
+
+    protected final Map<MaintenanceTask, MaintenanceMetrics> maintenanceMetrics;
+    protected ScheduledExecutorService maintainer;
 
     /**
      * Creates SQLite Storage Handler with default settings
      */
     public SQLiteStorageHandler() {
-        super(SQLiteStorageHandler.class.getSimpleName());
-        this.settings = new Settings.Builder().build();
+        this(new Settings.Builder().build());
     }
 
     /**
@@ -36,6 +84,22 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
     public SQLiteStorageHandler(@NonNull Settings settings) {
         super(SQLiteStorageHandler.class.getSimpleName());
         this.settings = settings;
+        this.durability = Durability.FSYNC;
+        this.databaseLock = databaseLocks.computeIfAbsent(getJdbcUrl(), jdbcUrl -> new ReentrantReadWriteLock());
+        this.readConnections = new ArrayBlockingQueue<>(settings.readConnectionCount);
+
+        this.saveSql = "REPLACE INTO " + settings.tableName + " (uuid, data) VALUES (?, ?);";
+        this.loadSql = "SELECT data FROM " + settings.tableName + " WHERE uuid = ?;";
+        this.deleteSql = "DELETE FROM " + settings.tableName + " WHERE uuid = ?;";
+        this.listSql = "SELECT uuid FROM " + settings.tableName;
+
+        Map<MaintenanceTask, MaintenanceMetrics> maintenanceMetrics = new EnumMap<>(MaintenanceTask.class);
+
+        for (MaintenanceTask task : MaintenanceTask.values()) {
+            maintenanceMetrics.put(task, new MaintenanceMetrics());
+        }
+
+        this.maintenanceMetrics = Collections.unmodifiableMap(maintenanceMetrics);
     }
 
     /**
@@ -43,12 +107,234 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
      */
     @Override
     public void prepareStorage() {
+        synchronized (connectionLock) {
+            if (prepared) {
+                return;
+            }
+
+            databaseLock.writeLock().lock();
+
+            try {
+                writeConnection = new PooledConnection(connectToDatabase());
+
+                try (Statement statement = writeConnection.connection.createStatement()) {
+                    if (settings.pageSize != null) {
+                        statement.execute("PRAGMA page_size = " + settings.pageSize);
+                    }
+
+                    // Only affects new databases
+                    if (settings.maintenanceIntervalMillis > 0 && settings.maintenanceTasks.contains(MaintenanceTask.INCREMENTAL_VACUUM)) {
+                        statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    }
+
+                    try (ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode = " + settings.journalMode.name())) {
+                        walMode = resultSet.next() && "wal".equalsIgnoreCase(resultSet.getString(1));
+                    }
+                }
+
+                createDatabase();
+
+                for (int i = 0; i < settings.readConnectionCount; i++) {
+                    Connection connection = connectToDatabase();
+                    readConnections.add(new PooledConnection(connection));
+
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("PRAGMA query_only = ON");
+                    }
+                }
+            } catch (Exception exception) {
+                closeConnections();
+                throw new RuntimeException(exception);
+            } finally {
+                databaseLock.writeLock().unlock();
+            }
+
+            prepared = true;
+
+            if (settings.maintenanceIntervalMillis > 0) {
+                maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "Pumpk1n-SQLiteMaintainer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+                maintainer.scheduleWithFixedDelay(this::runMaintenanceIfIdle, settings.maintenanceIntervalMillis, settings.maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Sets durability. If the storage is already prepared, it's applied right away as {@code PRAGMA synchronous} on all pooled connections;
+     * readers in use are waited for and the write connection is changed under {@link #databaseLock}'s write lock, so no save is in progress.
+     *
+     * @param durability Non-null {@link Durability}
+     */
+    @Override
+    public void setDurability(@NonNull Durability durability) {
+        synchronized (connectionLock) {
+            super.setDurability(durability);
+
+            if (!prepared) {
+                return;
+            }
+
+            List<PooledConnection> takenReadConnections = new ArrayList<>(settings.readConnectionCount);
+            String sql = "PRAGMA synchronous = " + getSynchronousMode();
+
+            try {
+                for (int i = 0; i < settings.readConnectionCount; i++) {
+                    PooledConnection readConnection = readConnections.take();
+                    takenReadConnections.add(readConnection);
+
+                    try (Statement statement = readConnection.connection.createStatement()) {
+                        statement.execute(sql);
+                    }
+                }
+
+                databaseLock.writeLock().lock();
+
+                try (Statement statement = getWriteConnection().connection.createStatement()) {
+                    statement.execute(sql);
+                } finally {
+                    databaseLock.writeLock().unlock();
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while applying durability to SQLite database!", exception);
+            } catch (SQLException exception) {
+                throw new RuntimeException("Exception occurred while applying durability to SQLite database!", exception);
+            } finally {
+                readConnections.addAll(takenReadConnections);
+            }
+        }
+    }
+
+    /**
+     * Closes all connections. The storage handler cannot be used afterward unless {@link #prepareStorage()} is called again.
+     */
+    public void close() {
+        synchronized (connectionLock) {
+            if (!prepared) {
+                return;
+            }
+
+            if (maintainer != null) {
+                maintainer.shutdown();
+
+                try {
+                    maintainer.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+
+                maintainer = null;
+            }
+
+            prepared = false;
+
+            // Waits for readers which are still in use
+            for (int i = 0; i < settings.readConnectionCount; i++) {
+                try {
+                    readConnections.take().close();
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            databaseLock.writeLock().lock();
+
+            try {
+                while (!pendingSaves.isEmpty()) {
+                    commitPendingSaves();
+                }
+
+                closeConnections();
+            } finally {
+                databaseLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns metrics of every maintenance task, including tasks which never ran
+     *
+     * @return Non-null unmodifiable map
+     */
+    public @NonNull Map<MaintenanceTask, MaintenanceMetrics> getMaintenanceMetrics() {
+        return maintenanceMetrics;
+    }
+
+    /**
+     * Runs all maintenance tasks from {@link Settings#getMaintenanceTasks()} now, regardless of load and maintenance window
+     */
+    public void runMaintenance() {
+        for (MaintenanceTask task : settings.maintenanceTasks) {
+            runMaintenanceTask(task);
+        }
+    }
+
+    /**
+     * Runs maintenance tasks from {@link Settings#getMaintenanceTasks()} if the storage is idle and it's within the maintenance window. Stops
+     * between tasks when a save or removal arrives.
+     */
+    public void runMaintenanceIfIdle() {
         try {
-            connectToDatabase().close();
-            createDatabase();
+            for (MaintenanceTask task : settings.maintenanceTasks) {
+                if (!isMaintenanceAllowed()) {
+                    return;
+                }
+
+                runMaintenanceTask(task);
+            }
+        } catch (Exception exception) {
+            if (getPumpk1n() != null) {
+                getPumpk1n().getLogger().logMisc("Exception occurred while maintaining SQLite database " + getJdbcUrl() + "!", exception);
+            }
+        }
+    }
+
+    /**
+     * Runs specified maintenance task and records its duration into {@link #getMaintenanceMetrics()}. Integrity check runs on a reader
+     * connection; other tasks block saves while they run.
+     *
+     * @param task Non-null {@link MaintenanceTask}
+     *
+     * @return Non-null result returned by SQLite (e.g. {@code ok} for integrity check)
+     */
+    public @NonNull String runMaintenanceTask(@NonNull MaintenanceTask task) {
+        long start = System.nanoTime();
+        String result;
+
+        try {
+            if (task == MaintenanceTask.INTEGRITY_CHECK) {
+                PooledConnection readConnection = acquireReadConnection();
+
+                try {
+                    result = executeMaintenance(readConnection, task);
+                } finally {
+                    releaseReadConnection(readConnection);
+                }
+            } else {
+                databaseLock.writeLock().lock();
+
+                try {
+                    result = executeMaintenance(getWriteConnection(), task);
+                } finally {
+                    databaseLock.writeLock().unlock();
+                }
+            }
         } catch (SQLException exception) {
-            throw new RuntimeException(exception);
+            throw new RuntimeException("Exception occurred while running " + task + " on SQLite database " + getJdbcUrl() + "!", exception);
         }
+
+        maintenanceMetrics.get(task).record(System.nanoTime() - start, result);
+
+        if (task == MaintenanceTask.INTEGRITY_CHECK && !result.equals("ok") && getPumpk1n() != null) {
+            getPumpk1n().getLogger().logMisc("Integrity check of SQLite database " + getJdbcUrl() + " failed: " + result);
+        }
+
+        return result;
     }
 
     /**
@@ -79,112 +365,597 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
     // SQLite methods //
     ////////////////////
 
+    protected String getJdbcUrl() {
+        if (settings.customJDBCUrl != null) {
+            return settings.customJDBCUrl;
+        }
+
+        return "jdbc:sqlite:" + Paths.get(settings.fileName).toAbsolutePath().normalize();
+    }
+
     protected Connection connectToDatabase() {
-        synchronized (mutex) {
-            try {
-                String jdbcUrl = settings.customJDBCUrl;
+        try {
+            Connection connection = DriverManager.getConnection(getJdbcUrl());
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout = " + settings.busyTimeoutMillis);
+                statement.execute("PRAGMA synchronous = " + getSynchronousMode());
 
-                if (jdbcUrl == null) {
-                    jdbcUrl = "jdbc:sqlite:" + settings.fileName;
+                if (settings.cacheSize != null) {
+                    statement.execute("PRAGMA cache_size = " + settings.cacheSize);
                 }
 
-                return DriverManager.getConnection(jdbcUrl);
-            } catch (Exception exception) {
-                throw new RuntimeException(new SQLException("Could not create connection to sqlite database!", exception));
+                if (settings.mmapSize != null) {
+                    statement.execute("PRAGMA mmap_size = " + settings.mmapSize);
+                }
+
+                if (settings.tempStore != null) {
+                    statement.execute("PRAGMA temp_store = " + settings.tempStore.name());
+                }
+            } catch (SQLException exception) {
+                connection.close();
+                throw exception;
             }
+
+            return connection;
+        } catch (Exception exception) {
+            throw new RuntimeException(new SQLException("Could not create connection to sqlite database!", exception));
         }
     }
 
-    protected void createDatabase() {
-        synchronized (mutex) {
-            try (Connection connection = connectToDatabase()) {
-                try (Statement statement = connection.createStatement()) {
-                    String sql = "CREATE TABLE IF NOT EXISTS " + settings.tableName + " (";
-                    sql += "uuid VARCHAR(36) PRIMARY KEY NOT NULL,";
-                    sql += "data JSON NOT NULL";
-                    sql += ");";
+    protected boolean isMaintenanceAllowed() {
+        if (!prepared || System.nanoTime() - lastWriteNanos < TimeUnit.MILLISECONDS.toNanos(settings.maintenanceIdleMillis)) {
+            return false;
+        }
 
-                    statement.execute(sql);
+        if (settings.maintenanceWindowStart == null || settings.maintenanceWindowEnd == null) {
+            return true;
+        }
+
+        LocalTime now = LocalTime.now();
+
+        if (settings.maintenanceWindowStart.isBefore(settings.maintenanceWindowEnd)) {
+            return !now.isBefore(settings.maintenanceWindowStart) && now.isBefore(settings.maintenanceWindowEnd);
+        }
+
+        // Window across midnight
+        return !now.isBefore(settings.maintenanceWindowStart) || now.isBefore(settings.maintenanceWindowEnd);
+    }
+
+    protected String executeMaintenance(@NonNull PooledConnection connection, @NonNull MaintenanceTask task) throws SQLException {
+        String sql;
+
+        switch (task) {
+            case WAL_CHECKPOINT:
+                sql = "PRAGMA wal_checkpoint(TRUNCATE)";
+                break;
+            case INCREMENTAL_VACUUM:
+                sql = "PRAGMA incremental_vacuum(" + INCREMENTAL_VACUUM_PAGES + ")";
+                break;
+            case OPTIMIZE:
+                sql = "PRAGMA optimize";
+                break;
+            default:
+                sql = "PRAGMA integrity_check";
+                break;
+        }
+
+        try (Statement statement = connection.connection.createStatement()) {
+            if (!statement.execute(sql)) {
+                return "";
+            }
+
+            StringJoiner rows = new StringJoiner("; ");
+
+            try (ResultSet resultSet = statement.getResultSet()) {
+                int columnCount = resultSet.getMetaData().getColumnCount();
+
+                while (resultSet.next()) {
+                    StringJoiner columns = new StringJoiner(", ");
+
+                    for (int i = 1; i <= columnCount; i++) {
+                        columns.add(String.valueOf(resultSet.getString(i)));
+                    }
+
+                    rows.add(columns.toString());
                 }
-            } catch (SQLException exception) {
-                throw new RuntimeException("Exception occurred while creating " + settings.tableName + " table in SQLite database!", exception);
             }
+
+            return rows.toString();
         }
     }
 
-    protected void insertOrReplace(@NonNull DataHolder dataHolder) {
-        synchronized (mutex) {
-            try (Connection connection = connectToDatabase()) {
-                String sql = "REPLACE INTO " + settings.tableName + " (uuid, data) VALUES (?, ?);";
+    protected String getSynchronousMode() {
+        if (settings.synchronousMode != null) {
+            return settings.synchronousMode.name();
+        }
+
+        switch (durability) {
+            case NONE:
+                return "OFF";
+            case OS_FLUSH:
+                return "NORMAL";
+            default:
+                return "FULL";
+        }
+    }
+
+    /**
+     * Closes all connections. Must be called while holding {@link #databaseLock}'s write lock.
+     */
+    protected void closeConnections() {
+        if (writeConnection != null) {
+            writeConnection.close();
+            writeConnection = null;
+        }
 
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    statement.setString(1, dataHolder.getUuid().toString());
-                    statement.setString(2, dataHolder.getAsJsonObject().toString());
+        PooledConnection readConnection;
 
-                    statement.executeUpdate();
+        while ((readConnection = readConnections.poll()) != null) {
+            readConnection.close();
+        }
+    }
+
+    /**
+     * Returns the writer connection. Must be called while holding {@link #databaseLock}'s write lock.
+     *
+     * @return Non-null {@link PooledConnection}
+     */
+    protected PooledConnection getWriteConnection() {
+        if (writeConnection == null) {
+            throw new IllegalStateException("Storage is not prepared!");
+        }
+
+        return writeConnection;
+    }
+
+    /**
+     * Takes a reader connection from the pool, waiting if all of them are in use. Unless the database is in WAL mode, it also takes
+     * {@link #databaseLock}'s read lock. Return the connection with {@link #releaseReadConnection(PooledConnection)}.
+     *
+     * @return Non-null {@link PooledConnection}
+     */
+    protected PooledConnection acquireReadConnection() {
+        PooledConnection readConnection = null;
+
+        try {
+            while (readConnection == null) {
+                if (!prepared) {
+                    throw new IllegalStateException("Storage is not prepared!");
                 }
-            } catch (SQLException exception) {
-                throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + dataHolder.getUuid() + " to SQLite database!", exception);
+
+                readConnection = readConnections.poll(100, TimeUnit.MILLISECONDS);
             }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for SQLite connection!", exception);
+        }
+
+        if (!walMode) {
+            databaseLock.readLock().lock();
         }
+
+        return readConnection;
     }
 
-    protected DataHolder loadByUUID(@NonNull UUID uuid) {
-        synchronized (mutex) {
-            try (Connection connection = connectToDatabase()) {
-                String sql = "SELECT data FROM " + settings.tableName + " WHERE uuid = ?;";
+    protected void releaseReadConnection(@NonNull PooledConnection readConnection) {
+        if (!walMode) {
+            databaseLock.readLock().unlock();
+        }
+
+        readConnections.add(readConnection);
+    }
+
+    protected void createDatabase() {
+        databaseLock.writeLock().lock();
+
+        try (Statement statement = getWriteConnection().connection.createStatement()) {
+            String sql = "CREATE TABLE IF NOT EXISTS " + settings.tableName + " (";
+            sql += "uuid VARCHAR(36) PRIMARY KEY NOT NULL,";
+            sql += "data " + (settings.payloadFormat.isBinary() ? "BLOB" : "JSON") + " NOT NULL";
+            sql += ");";
+
+            statement.execute(sql);
+        } catch (SQLException exception) {
+            throw new RuntimeException("Exception occurred while creating " + settings.tableName + " table in SQLite database!", exception);
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
 
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    statement.setString(1, uuid.toString());
+    protected void insertOrReplace(@NonNull DataHolder dataHolder) {
+        lastWriteNanos = System.nanoTime();
+        Object payload = serialize(dataHolder);
+
+        if (getMaxSaveBatchSize() > 1) {
+            insertOrReplaceBatched(new PendingSave(dataHolder.getUuid(), payload));
+            return;
+        }
+
+        databaseLock.writeLock().lock();
+
+        try {
+            PreparedStatement statement = getWriteConnection().prepare(saveSql);
+            statement.setString(1, dataHolder.getUuid().toString());
+            setPayload(statement, 2, payload);
+
+            statement.executeUpdate();
+        } catch (SQLException exception) {
+            throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + dataHolder.getUuid() + " to SQLite database!", exception);
+        } finally {
+            databaseLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Queues the save and waits until it's committed. The first waiting thread becomes the leader: it waits for the batch window (unless the
+     * batch is already full) holding only {@link #saveBatchLock}, then takes {@link #databaseLock}'s write lock just for the transaction, which
+     * commits queued saves for all of them. Other threads park until their save is committed or until they are woken up to become the next
+     * leader.
+     *
+     * @param pendingSave Non-null {@link PendingSave}
+     */
+    protected void insertOrReplaceBatched(@NonNull PendingSave pendingSave) {
+        pendingSaves.add(pendingSave);
+        pendingSaveCount.incrementAndGet();
+
+        // Parking returns immediately while the interrupt flag is set, so it's cleared and restored once the save is committed
+        boolean interrupted = false;
+
+        try {
+            while (!pendingSave.committed) {
+                if (!saveBatchLock.tryLock()) {
+                    LockSupport.park(this);
+                    interrupted |= Thread.interrupted();
+                    continue;
+                }
 
-                    try (ResultSet resultSet = statement.executeQuery()) {
-                        if (resultSet.next()) {
-                            return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(resultSet.getString("data")).getAsJsonObject());
+                try {
+                    if (!pendingSave.committed) {
+                        interrupted |= awaitSaveBatch();
+                        databaseLock.writeLock().lock();
+
+                        try {
+                            commitPendingSaves();
+                        } finally {
+                            databaseLock.writeLock().unlock();
                         }
                     }
+                } finally {
+                    saveBatchLock.unlock();
+
+                    // Wakes up the next leader
+                    PendingSave nextPendingSave = pendingSaves.peek();
+
+                    if (nextPendingSave != null) {
+                        LockSupport.unpark(nextPendingSave.thread);
+                    }
                 }
-            } catch (SQLException exception) {
-                throw new RuntimeException("Exception occurred while loading DataHolder with UUID " + uuid + "  from SQLite database!", exception);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
         }
 
-        return null;
+        if (pendingSave.exception != null) {
+            throw new RuntimeException("Exception occurred while saving DataHolder with UUID " + pendingSave.uuid + " to SQLite database!", pendingSave.exception);
+        }
     }
 
-    protected boolean delete(@NonNull UUID uuid) {
-        synchronized (mutex) {
-            try (Connection connection = connectToDatabase()) {
-                String sql = "DELETE FROM " + settings.tableName + " WHERE uuid = ?;";
+    /**
+     * Returns maximal number of saves committed in one transaction. It's {@link Settings#getMaxSaveBatchSize()}, unless it disables group
+     * commit and {@link #getDurability()} is {@link Durability#GROUP_COMMIT}.
+     *
+     * @return Positive number of saves, one if group commit is disabled
+     */
+    public int getMaxSaveBatchSize() {
+        if (settings.maxSaveBatchSize == 1 && durability == Durability.GROUP_COMMIT) {
+            return GROUP_COMMIT_MAX_SAVE_BATCH_SIZE;
+        }
+
+        return settings.maxSaveBatchSize;
+    }
+
+    /**
+     * Returns number of group commit transactions, including failed ones
+     *
+     * @return Number of transactions
+     */
+    public long getSaveBatchCount() {
+        return saveBatchCount.get();
+    }
+
+    /**
+     * Waits for the batch window, unless the batch is already full. Must be called while holding {@link #saveBatchLock}, but not
+     * {@link #databaseLock}, so loads (without WAL mode) and removals are not blocked in the meantime. Interrupts do not cut the window short,
+     * the interrupt flag is cleared and reported instead.
+     *
+     * @return True if the thread was interrupted while waiting, its interrupt flag must be restored by the caller
+     */
+    protected boolean awaitSaveBatch() {
+        if (settings.saveBatchWindowMicros <= 0) {
+            return false;
+        }
+
+        int maxSaveBatchSize = getMaxSaveBatchSize();
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(settings.saveBatchWindowMicros);
+        long remainingNanos;
+        boolean interrupted = false;
+
+        // Parking may return early, e.g. when this thread was woken up while it was not parked
+        while (pendingSaveCount.get() < maxSaveBatchSize && (remainingNanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remainingNanos);
+            interrupted |= Thread.interrupted();
+        }
+
+        return interrupted;
+    }
+
+    /**
+     * Commits up to {@link #getMaxSaveBatchSize()} queued saves in one transaction. Must be called while holding {@link #databaseLock}'s
+     * write lock.
+     */
+    protected void commitPendingSaves() {
+        int maxSaveBatchSize = getMaxSaveBatchSize();
+        PooledConnection writeConnection = getWriteConnection();
+        List<PendingSave> batch = new ArrayList<>();
+        PendingSave pendingSave;
+
+        while (batch.size() < maxSaveBatchSize && (pendingSave = pendingSaves.poll()) != null) {
+            pendingSaveCount.decrementAndGet();
+            batch.add(pendingSave);
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        SQLException exception = null;
+        saveBatchCount.incrementAndGet();
+
+        try {
+            Connection connection = writeConnection.connection;
+            connection.setAutoCommit(false);
+
+            try {
+                executeSaveBatch(writeConnection, batch);
+                connection.commit();
+            } catch (Throwable throwable) {
+                connection.rollback();
+                throw throwable;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException commitException) {
+            exception = commitException;
+        } catch (Throwable throwable) {
+            exception = new SQLException("Save batch failed unexpectedly!", throwable);
+            throw throwable;
+        } finally {
+            // Even if an error is thrown, waiting threads must not stay parked
+            for (PendingSave save : batch) {
+                save.exception = exception;
+                save.committed = true;
+                LockSupport.unpark(save.thread);
+            }
+        }
+    }
+
+    /**
+     * Executes the saves of specified batch. Called inside the transaction, which is committed afterward or rolled back if this throws.
+     *
+     * @param writeConnection Non-null write {@link PooledConnection}
+     * @param batch           Non-null {@link List} of {@link PendingSave}s
+     *
+     * @throws SQLException If any save fails, which fails the whole batch
+     */
+    protected void executeSaveBatch(@NonNull PooledConnection writeConnection, @NonNull List<PendingSave> batch) throws SQLException {
+        PreparedStatement statement = writeConnection.prepare(saveSql);
+
+        for (PendingSave save : batch) {
+            statement.setString(1, save.uuid.toString());
+            setPayload(statement, 2, save.payload);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Serializes specified {@link DataHolder} in {@link Settings#getPayloadFormat()}
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null JSON {@link String} or bytes
+     */
+    protected Object serialize(@NonNull DataHolder dataHolder) {
+        if (settings.payloadFormat.isBinary()) {
+            return settings.payloadFormat.encode(dataHolder);
+        }
+
+        return SerializationBuffers.toJsonString(dataHolder);
+    }
+
+    protected void setPayload(@NonNull PreparedStatement statement, int index, @NonNull Object payload) throws SQLException {
+        if (payload instanceof byte[]) {
+            statement.setBytes(index, (byte[]) payload);
+        } else {
+            statement.setString(index, (String) payload);
+        }
+    }
 
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    statement.setString(1, uuid.toString());
+    protected DataHolder loadByUUID(@NonNull UUID uuid) {
+        PooledConnection readConnection = acquireReadConnection();
+
+        try {
+            PreparedStatement statement = readConnection.prepare(loadSql);
+            statement.setString(1, uuid.toString());
 
-                    return statement.executeUpdate() > 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    // Returns bytes of both TEXT and BLOB values
+                    return DataHolder.loadFromJsonObject(getPumpk1n(), PayloadFormat.decode(resultSet.getBytes("data")));
                 }
-            } catch (SQLException exception) {
-                throw new RuntimeException("Exception occurred while deleting DataHolder with UUID " + uuid + " from SQLite database!", exception);
             }
+        } catch (SQLException exception) {
+            throw new RuntimeException("Exception occurred while loading DataHolder with UUID " + uuid + "  from SQLite database!", exception);
+        } finally {
+            releaseReadConnection(readConnection);
+        }
+
+        return null;
+    }
+
+    protected boolean delete(@NonNull UUID uuid) {
+        lastWriteNanos = System.nanoTime();
+        databaseLock.writeLock().lock();
+
+        try {
+            // Saves queued before this removal must not overwrite it
+            while (!pendingSaves.isEmpty()) {
+                commitPendingSaves();
+            }
+
+            PreparedStatement statement = getWriteConnection().prepare(deleteSql);
+            statement.setString(1, uuid.toString());
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException exception) {
+            throw new RuntimeException("Exception occurred while deleting DataHolder with UUID " + uuid + " from SQLite database!", exception);
+        } finally {
+            databaseLock.writeLock().unlock();
         }
     }
 
     @Override
     public List<UUID> getAllHolderUUIDs() {
-        synchronized (mutex) {
-            try (Connection connection = connectToDatabase()) {
-                String sql = "SELECT uuid FROM " + settings.tableName;
+        PooledConnection readConnection = acquireReadConnection();
 
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    ResultSet resultSet = statement.executeQuery();
-                    List<UUID> uuids = new LinkedList<>();
+        try (ResultSet resultSet = readConnection.prepare(listSql).executeQuery()) {
+            List<UUID> uuids = new LinkedList<>();
 
-                    while (resultSet.next()) {
-                        uuids.add(UUID.fromString(resultSet.getString("uuid")));
-                    }
+            while (resultSet.next()) {
+                uuids.add(UUID.fromString(resultSet.getString("uuid")));
+            }
+
+            return uuids;
+        } catch (SQLException exception) {
+            throw new RuntimeException("Exception occurred while listing all DataHolders from SQLite database!", exception);
+        } finally {
+            releaseReadConnection(readConnection);
+        }
+    }
+
+    /**
+     * Background maintenance task
+     */
+    public enum MaintenanceTask {
+
+        /**
+         * Copies WAL into the database file and truncates it ({@code PRAGMA wal_checkpoint(TRUNCATE)})
+         */
+        WAL_CHECKPOINT,
+
+        /**
+         * Returns free pages to the file system ({@code PRAGMA incremental_vacuum}). Only works for databases which were created with this task
+         * and background maintenance enabled.
+         */
+        INCREMENTAL_VACUUM,
+
+        /**
+         * Refreshes query planner's statistics where needed ({@code PRAGMA optimize})
+         */
+        OPTIMIZE,
+
+        /**
+         * Checks whole database for corruption ({@code PRAGMA integrity_check}). Slow on large databases, but does not block saves in WAL mode.
+         */
+        INTEGRITY_CHECK
+    }
+
+    /**
+     * Duration metrics of one maintenance task
+     */
+    public static class MaintenanceMetrics {
+
+        protected volatile @Getter long runCount;
+        protected volatile @Getter long lastDurationNanos;
+        protected volatile @Getter long maxDurationNanos;
+        protected volatile @Getter long totalDurationNanos;
+        protected volatile @Getter long lastRunMillis;
+        protected volatile @Getter String lastResult;
 
-                    return uuids;
+        protected synchronized void record(long durationNanos, String result) {
+            runCount++;
+            lastDurationNanos = durationNanos;
+            maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+            totalDurationNanos += durationNanos;
+            lastRunMillis = System.currentTimeMillis();
+            lastResult = result;
+        }
+    }
+
+    /**
+     * Save waiting for group commit
+     */
+    protected static class PendingSave {
+
+        protected final UUID uuid;
+        protected final Object payload;
+        protected final Thread thread = Thread.currentThread();
+        protected volatile boolean committed;
+        protected volatile SQLException exception;
+
+        protected PendingSave(@NonNull UUID uuid, @NonNull Object payload) {
+            this.uuid = uuid;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Long-lived connection with its prepared statements. Must be used by one thread at a time.
+     */
+    protected static class PooledConnection {
+
+        protected final Connection connection;
+        protected final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        protected PooledConnection(@NonNull Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns cached prepared statement for specified SQL, preparing it on first use
+         *
+         * @param sql Non-null SQL
+         *
+         * @return Non-null {@link PreparedStatement}
+         *
+         * @throws SQLException If the statement could not be prepared
+         */
+        protected PreparedStatement prepare(@NonNull String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+
+            return statement;
+        }
+
+        protected void close() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
                 }
-            } catch (SQLException exception) {
-                throw new RuntimeException("Exception occurred while listing all DataHolders from SQLite database!", exception);
+            }
+
+            statements.clear();
+
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
             }
         }
     }
@@ -194,6 +965,22 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
         protected final @Getter String customJDBCUrl;
         protected final @Getter String fileName;
         protected final @Getter String tableName;
+        protected final @Getter int readConnectionCount;
+        protected final @Getter JournalMode journalMode;
+        protected final @Getter SynchronousMode synchronousMode;
+        protected final @Getter Integer cacheSize;
+        protected final @Getter Long mmapSize;
+        protected final @Getter TempStore tempStore;
+        protected final @Getter Integer pageSize;
+        protected final @Getter int busyTimeoutMillis;
+        protected final @Getter int maxSaveBatchSize;
+        protected final @Getter long saveBatchWindowMicros;
+        protected final @Getter long maintenanceIntervalMillis;
+        protected final @Getter long maintenanceIdleMillis;
+        protected final @Getter LocalTime maintenanceWindowStart;
+        protected final @Getter LocalTime maintenanceWindowEnd;
+        protected final @Getter Set<MaintenanceTask> maintenanceTasks;
+        protected final @Getter PayloadFormat payloadFormat;
 
         /**
          * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
@@ -203,6 +990,49 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
          * @param tableName     Non-null database name that will Pumpk1n use
          */
         public Settings(String customJDBCUrl, String fileName, @NonNull String tableName) {
+            this(customJDBCUrl, fileName, tableName, 4);
+        }
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param customJDBCUrl       Custom JDBC URL to use. If this argument is not null, fileName can be null.
+         * @param fileName            Partially non-null file name, must not include directories
+         * @param tableName           Non-null database name that will Pumpk1n use
+         * @param readConnectionCount Number of pooled reader connections
+         */
+        public Settings(String customJDBCUrl, String fileName, @NonNull String tableName, int readConnectionCount) {
+            this(customJDBCUrl, fileName, tableName, readConnectionCount, JournalMode.WAL, null, null, null, null, null, 5000, 1, 0, 0, 5000, null, null,
+                 EnumSet.of(MaintenanceTask.WAL_CHECKPOINT, MaintenanceTask.INCREMENTAL_VACUUM, MaintenanceTask.OPTIMIZE), PayloadFormat.JSON);
+        }
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param customJDBCUrl       Custom JDBC URL to use. If this argument is not null, fileName can be null.
+         * @param fileName            Partially non-null file name, must not include directories
+         * @param tableName           Non-null database name that will Pumpk1n use
+         * @param readConnectionCount Number of pooled reader connections
+         * @param journalMode         Non-null {@link JournalMode}
+         * @param synchronousMode     Nullable {@link SynchronousMode}, null to use storage handler's durability
+         * @param cacheSize           Nullable {@code PRAGMA cache_size}, null for SQLite's default
+         * @param mmapSize            Nullable {@code PRAGMA mmap_size} in bytes, null for SQLite's default
+         * @param tempStore           Nullable {@link TempStore}, null for SQLite's default
+         * @param pageSize            Nullable {@code PRAGMA page_size} in bytes, null for SQLite's default
+         * @param busyTimeoutMillis     How long should connection wait for a lock held by another connection
+         * @param maxSaveBatchSize      Maximal number of saves committed in one transaction, one disables group commit
+         * @param saveBatchWindowMicros How long should the first save wait for other saves before committing, zero for no waiting
+         * @param maintenanceIntervalMillis Interval of background maintenance checks, zero or less disables background maintenance
+         * @param maintenanceIdleMillis     How long must be the storage without saves and removals before maintenance runs
+         * @param maintenanceWindowStart    Nullable start of daily maintenance window, null for any time
+         * @param maintenanceWindowEnd      Nullable end of daily maintenance window, null for any time
+         * @param maintenanceTasks          Non-null set of maintenance tasks, which run in their declaration order
+         * @param payloadFormat             Non-null {@link PayloadFormat}
+         */
+        public Settings(String customJDBCUrl, String fileName, @NonNull String tableName, int readConnectionCount, @NonNull JournalMode journalMode,
+                SynchronousMode synchronousMode, Integer cacheSize, Long mmapSize, TempStore tempStore, Integer pageSize, int busyTimeoutMillis,
+                int maxSaveBatchSize, long saveBatchWindowMicros, long maintenanceIntervalMillis, long maintenanceIdleMillis, LocalTime maintenanceWindowStart,
+                LocalTime maintenanceWindowEnd, @NonNull Set<MaintenanceTask> maintenanceTasks, @NonNull PayloadFormat payloadFormat) {
             if (customJDBCUrl == null) {
                 if (fileName == null) {
                     throw new IllegalArgumentException("fileName is null! (customJDBCUrl is also null)");
@@ -213,9 +1043,72 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
                 throw new IllegalArgumentException("TableName " + tableName + " contains semicolon!");
             }
 
+            if (readConnectionCount <= 0) {
+                throw new IllegalArgumentException("readConnectionCount must be positive!");
+            }
+
+            if (pageSize != null && (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)) {
+                throw new IllegalArgumentException("pageSize must be power of two between 512 and 65536!");
+            }
+
+            if (busyTimeoutMillis < 0) {
+                throw new IllegalArgumentException("busyTimeoutMillis must not be negative!");
+            }
+
+            if (maxSaveBatchSize <= 0) {
+                throw new IllegalArgumentException("maxSaveBatchSize must be positive!");
+            }
+
             this.customJDBCUrl = customJDBCUrl;
             this.fileName = fileName;
             this.tableName = tableName;
+            this.readConnectionCount = readConnectionCount;
+            this.journalMode = journalMode;
+            this.synchronousMode = synchronousMode;
+            this.cacheSize = cacheSize;
+            this.mmapSize = mmapSize;
+            this.tempStore = tempStore;
+            this.pageSize = pageSize;
+            this.busyTimeoutMillis = busyTimeoutMillis;
+            this.maxSaveBatchSize = maxSaveBatchSize;
+            this.saveBatchWindowMicros = saveBatchWindowMicros;
+            this.maintenanceIntervalMillis = maintenanceIntervalMillis;
+            this.maintenanceIdleMillis = maintenanceIdleMillis;
+            this.maintenanceWindowStart = maintenanceWindowStart;
+            this.maintenanceWindowEnd = maintenanceWindowEnd;
+            this.maintenanceTasks = maintenanceTasks.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(maintenanceTasks));
+            this.payloadFormat = payloadFormat;
+        }
+
+        /**
+         * SQLite's {@code PRAGMA journal_mode}
+         */
+        public enum JournalMode {
+            DELETE,
+            TRUNCATE,
+            PERSIST,
+            MEMORY,
+            WAL,
+            OFF
+        }
+
+        /**
+         * SQLite's {@code PRAGMA synchronous}
+         */
+        public enum SynchronousMode {
+            OFF,
+            NORMAL,
+            FULL,
+            EXTRA
+        }
+
+        /**
+         * SQLite's {@code PRAGMA temp_store}
+         */
+        public enum TempStore {
+            DEFAULT,
+            FILE,
+            MEMORY
         }
 
         public static class Builder {
@@ -223,6 +1116,23 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
             protected @Getter String fileName = "pumpkin_database.db";
             protected @Getter String tableName = "pumpkin";
             protected @Getter String customJDBCUrl = null;
+            protected @Getter int readConnectionCount = 4;
+            protected @Getter JournalMode journalMode = JournalMode.WAL;
+            protected @Getter SynchronousMode synchronousMode = null;
+            protected @Getter Integer cacheSize = null;
+            protected @Getter Long mmapSize = null;
+            protected @Getter TempStore tempStore = null;
+            protected @Getter Integer pageSize = null;
+            protected @Getter int busyTimeoutMillis = 5000;
+            protected @Getter int maxSaveBatchSize = 1;
+            protected @Getter long saveBatchWindowMicros = 0;
+            protected @Getter long maintenanceIntervalMillis = 0;
+            protected @Getter long maintenanceIdleMillis = 5000;
+            protected @Getter LocalTime maintenanceWindowStart = null;
+            protected @Getter LocalTime maintenanceWindowEnd = null;
+            protected @Getter Set<MaintenanceTask> maintenanceTasks = EnumSet.of(MaintenanceTask.WAL_CHECKPOINT, MaintenanceTask.INCREMENTAL_VACUUM,
+                                                                                 MaintenanceTask.OPTIMIZE);
+            protected @Getter PayloadFormat payloadFormat = PayloadFormat.JSON;
 
             /**
              * Creates empty {@link Builder} with default values
@@ -239,6 +1149,22 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
                 return new Builder();
             }
 
+            /**
+             * Creates {@link Builder} preset for high throughput: WAL journal mode with {@code synchronous = NORMAL} (the database cannot be
+             * corrupted, but the last saves may be lost on power loss), 64 MiB page cache, 256 MiB of memory-mapped reads and temporary tables in
+             * memory. Concurrent saves are committed in batches of up to 256.
+             *
+             * @return Non-null {@link Builder}
+             */
+            public static @NonNull Builder highThroughput() {
+                return new Builder().setJournalMode(JournalMode.WAL)
+                                    .setSynchronousMode(SynchronousMode.NORMAL)
+                                    .setCacheSize(-64 * 1024)
+                                    .setMmapSize(256L * 1024 * 1024)
+                                    .setTempStore(TempStore.MEMORY)
+                                    .setMaxSaveBatchSize(256);
+            }
+
             /**
              * Builds {@link Settings}
              *
@@ -255,7 +1181,9 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
                     throw new IllegalArgumentException("Database name was not set.");
                 }
 
-                return new Settings(customJDBCUrl, fileName, tableName);
+                return new Settings(customJDBCUrl, fileName, tableName, readConnectionCount, journalMode, synchronousMode, cacheSize, mmapSize, tempStore, pageSize,
+                                    busyTimeoutMillis, maxSaveBatchSize, saveBatchWindowMicros, maintenanceIntervalMillis, maintenanceIdleMillis,
+                                    maintenanceWindowStart, maintenanceWindowEnd, maintenanceTasks, payloadFormat);
             }
 
             /**
@@ -293,6 +1221,192 @@ public class SQLiteStorageHandler extends StorageHandler implements Migratable {
                 this.customJDBCUrl = customJDBCUrl;
                 return this;
             }
+
+            /**
+             * Sets number of reader connections kept open. Custom JDBC URL of in-memory database must use shared cache (e.g.
+             * {@code jdbc:sqlite:file::memory:?cache=shared}), so all connections see the same database.
+             *
+             * @param readConnectionCount Positive number of connections
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setReadConnectionCount(int readConnectionCount) {
+                this.readConnectionCount = readConnectionCount;
+                return this;
+            }
+
+            /**
+             * Sets journal mode. It is applied on {@link SQLiteStorageHandler#prepareStorage()} and persists in the database file.
+             *
+             * @param journalMode Non-null {@link JournalMode}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setJournalMode(@NonNull JournalMode journalMode) {
+                this.journalMode = journalMode;
+                return this;
+            }
+
+            /**
+             * Sets synchronous mode, which overrides storage handler's {@link Durability}
+             *
+             * @param synchronousMode Nullable {@link SynchronousMode}, null to use storage handler's durability
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setSynchronousMode(SynchronousMode synchronousMode) {
+                this.synchronousMode = synchronousMode;
+                return this;
+            }
+
+            /**
+             * Sets page cache size of every connection
+             *
+             * @param cacheSize Nullable number of pages, or negative number of KiB; null for SQLite's default
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setCacheSize(Integer cacheSize) {
+                this.cacheSize = cacheSize;
+                return this;
+            }
+
+            /**
+             * Sets maximum number of bytes of the database file which are read through memory mapping
+             *
+             * @param mmapSize Nullable number of bytes, zero disables memory mapping; null for SQLite's default
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMmapSize(Long mmapSize) {
+                this.mmapSize = mmapSize;
+                return this;
+            }
+
+            /**
+             * Sets where are temporary tables and indices stored
+             *
+             * @param tempStore Nullable {@link TempStore}, null for SQLite's default
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setTempStore(TempStore tempStore) {
+                this.tempStore = tempStore;
+                return this;
+            }
+
+            /**
+             * Sets page size. It only affects databases which are created by {@link SQLiteStorageHandler#prepareStorage()}; page size of
+             * existing database in WAL mode does not change.
+             *
+             * @param pageSize Nullable power of two between 512 and 65536; null for SQLite's default
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setPageSize(Integer pageSize) {
+                this.pageSize = pageSize;
+                return this;
+            }
+
+            /**
+             * Sets how long should connections wait for a lock held by another connection (e.g. other process) before failing
+             *
+             * @param busyTimeoutMillis Timeout in milliseconds, zero to fail immediately
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setBusyTimeoutMillis(int busyTimeoutMillis) {
+                this.busyTimeoutMillis = busyTimeoutMillis;
+                return this;
+            }
+
+            /**
+             * Sets maximal number of concurrent saves committed in one transaction
+             *
+             * @param maxSaveBatchSize Positive number of saves, one disables group commit
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaxSaveBatchSize(int maxSaveBatchSize) {
+                this.maxSaveBatchSize = maxSaveBatchSize;
+                return this;
+            }
+
+            /**
+             * Sets how long should the first save wait for other saves before committing them together. Saves arriving during a commit are
+             * batched into the next one even without waiting.
+             *
+             * @param saveBatchWindowMicros Window in microseconds, zero for no waiting
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setSaveBatchWindowMicros(long saveBatchWindowMicros) {
+                this.saveBatchWindowMicros = saveBatchWindowMicros;
+                return this;
+            }
+
+            /**
+             * Sets interval of background maintenance checks
+             *
+             * @param maintenanceIntervalMillis Interval in milliseconds, zero or less disables background maintenance
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaintenanceIntervalMillis(long maintenanceIntervalMillis) {
+                this.maintenanceIntervalMillis = maintenanceIntervalMillis;
+                return this;
+            }
+
+            /**
+             * Sets how long must be the storage without saves and removals before background maintenance runs
+             *
+             * @param maintenanceIdleMillis Time in milliseconds
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaintenanceIdleMillis(long maintenanceIdleMillis) {
+                this.maintenanceIdleMillis = maintenanceIdleMillis;
+                return this;
+            }
+
+            /**
+             * Sets daily window in which background maintenance may run. The window may go across midnight (e.g. from 23:00 to 05:00).
+             *
+             * @param maintenanceWindowStart Nullable start of the window, null for any time
+             * @param maintenanceWindowEnd   Nullable end of the window, null for any time
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaintenanceWindow(LocalTime maintenanceWindowStart, LocalTime maintenanceWindowEnd) {
+                this.maintenanceWindowStart = maintenanceWindowStart;
+                this.maintenanceWindowEnd = maintenanceWindowEnd;
+                return this;
+            }
+
+            /**
+             * Sets maintenance tasks. {@link MaintenanceTask#INCREMENTAL_VACUUM} also enables incremental auto-vacuum of new databases, if
+             * background maintenance is enabled by {@link #setMaintenanceIntervalMillis(long)}.
+             *
+             * @param maintenanceTasks Non-null maintenance tasks
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setMaintenanceTasks(@NonNull MaintenanceTask... maintenanceTasks) {
+                this.maintenanceTasks = new HashSet<>(Arrays.asList(maintenanceTasks));
+                return this;
+            }
+
+            /**
+             * Sets format in which are payloads stored. Existing rows in other formats are still loaded.
+             *
+             * @param payloadFormat Non-null {@link PayloadFormat}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setPayloadFormat(@NonNull PayloadFormat payloadFormat) {
+                this.payloadFormat = payloadFormat;
+                return this;
+            }
         }
     }
 }
@@ -0,0 +1,659 @@
+package dev.mayuna.pumpk1n.impl;
+
+import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.Pumpk1n;
+import dev.mayuna.pumpk1n.api.Durability;
+import dev.mayuna.pumpk1n.api.Migratable;
+import dev.mayuna.pumpk1n.api.StorageHandler;
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import dev.mayuna.pumpk1n.util.FileUtils;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.SharedFileChannel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Adds write-ahead log in front of another storage handler, usually {@link FolderStorageHandler} or {@link BufferedFolderStorageHandler}.
+ * Saves and removals are appended into a shared log file and are durable once {@link #saveHolder(DataHolder)} returns; by default
+ * ({@link Durability#GROUP_COMMIT}), concurrent saves share one fsync. With {@link Durability#FSYNC}, saves do not wait for the group commit
+ * window, and with {@link Durability#OS_FLUSH} or {@link Durability#NONE}, the log is not forced on save at all. Changes are applied to the underlying storage handler in background (checkpoint), after which the log is
+ * deleted. Loads see changes which were not applied yet. On {@link #prepareStorage()}, log left by previous run is replayed.<br> The
+ * underlying storage handler is switched to {@link Durability#FSYNC} (and switched back by every checkpoint, if its durability is lowered),
+ * so applied changes, including their directory entries, are durable before the log is deleted; the cost is paid by the background
+ * thread, not by the caller. The log is written through {@link SharedFileChannel}, so interrupting a caller does not break it for others.
+ * Only one instance of this storage handler may use the log folder at a time. Call {@link #close()} when you're done.
+ */
+public class WriteAheadLogStorageHandler extends StorageHandler implements Migratable {
+
+    protected static final String LOG_PREFIX = "wal-";
+    protected static final String LOG_SUFFIX = ".log";
+
+    protected static final byte TYPE_PUT = 1;
+    protected static final byte TYPE_DELETE = 2;
+
+    /**
+     * Record: CRC32 (of the rest), type, UUID (most significant bits), UUID (least significant bits), payload length, payload
+     */
+    protected static final int RECORD_HEADER_SIZE = 4 + 1 + 8 + 8 + 4;
+
+    protected final @Getter StorageHandler storageHandler;
+    protected final @Getter Settings settings;
+    protected final Path folder;
+
+    protected final Map<UUID, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+    protected final Object writeLock = new Object();
+    protected final Object syncLock = new Object();
+    protected final Object checkpointLock = new Object();
+
+    protected SharedFileChannel channel; // Guarded by writeLock, reopened if closed by an interrupt
+    protected long logId; // Guarded by writeLock
+    protected long logSize; // Size of current log file, guarded by writeLock
+    protected volatile long writtenPosition; // Position in whole log history, not in current file
+    protected volatile long syncedPosition;
+    protected ScheduledExecutorService checkpointer;
+
+    /**
+     * Creates {@link WriteAheadLogStorageHandler}
+     *
+     * @param storageHandler Non-null {@link StorageHandler} into which are the changes applied
+     * @param settings       Non-null {@link Settings}
+     */
+    public WriteAheadLogStorageHandler(@NonNull StorageHandler storageHandler, @NonNull Settings settings) {
+        super(WriteAheadLogStorageHandler.class.getSimpleName() + "(" + storageHandler.getName() + ")");
+        this.storageHandler = storageHandler;
+        this.settings = settings;
+        this.folder = Paths.get(settings.folderPath);
+        this.durability = Durability.GROUP_COMMIT;
+
+        storageHandler.setDurability(Durability.FSYNC);
+    }
+
+    /**
+     * Sets {@link Pumpk1n} of this and the underlying storage handler
+     *
+     * @param pumpk1n {@link Pumpk1n}
+     */
+    @Override
+    public void setPumpk1n(Pumpk1n pumpk1n) {
+        super.setPumpk1n(pumpk1n);
+        storageHandler.setPumpk1n(pumpk1n);
+    }
+
+    /////////////////////
+    // Storage Handler //
+    /////////////////////
+
+    /**
+     * Prepares underlying storage handler, replays log left by previous run into it and starts background checkpoints. Calling this method
+     * multiple times has no effect.
+     */
+    @Override
+    public void prepareStorage() {
+        synchronized (checkpointLock) {
+            synchronized (writeLock) {
+                if (channel != null) {
+                    return;
+                }
+
+                storageHandler.prepareStorage();
+
+                try {
+                    Files.createDirectories(folder);
+                    logId = replay();
+                    openLog(logId + 1);
+                } catch (IOException exception) {
+                    throw new RuntimeException("Could not replay write-ahead log in folder " + settings.folderPath + "!", exception);
+                }
+            }
+
+            checkpoint();
+        }
+
+        if (settings.checkpointIntervalMillis > 0) {
+            checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Pumpk1n-WALCheckpointer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                } catch (Exception exception) {
+                    if (getPumpk1n() != null) {
+                        getPumpk1n().getLogger().logMisc("Exception occurred while checkpointing write-ahead log in folder " + settings.folderPath + "!", exception);
+                    }
+                }
+            }, settings.checkpointIntervalMillis, settings.checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void saveHolder(@NonNull DataHolder dataHolder) {
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            ByteBuffer payload = buffers.encode(buffers.write(dataHolder));
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+
+            sync(append(TYPE_PUT, dataHolder.getUuid(), bytes));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not save Data Holder with UUID " + dataHolder.getUuid() + "!", exception);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DataHolder loadHolder(@NonNull UUID uuid) {
+        PendingChange pendingChange = pendingChanges.get(uuid);
+
+        if (pendingChange == null) {
+            return storageHandler.loadHolder(uuid);
+        }
+
+        if (pendingChange.payload == null) {
+            return null;
+        }
+
+        return DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(new String(pendingChange.payload, StandardCharsets.UTF_8)).getAsJsonObject());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeHolder(@NonNull UUID uuid) {
+        if (!holderExists(uuid)) {
+            return false;
+        }
+
+        try {
+            sync(append(TYPE_DELETE, uuid, null));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not remove Data Holder with UUID " + uuid + "!", exception);
+        }
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc} Pending changes are checked first, then the underlying storage handler.
+     */
+    @Override
+    public boolean holderExists(@NonNull UUID uuid) {
+        PendingChange pendingChange = pendingChanges.get(uuid);
+
+        if (pendingChange != null) {
+            return pendingChange.payload != null;
+        }
+
+        return storageHandler.holderExists(uuid);
+    }
+
+    /**
+     * {@inheritDoc} Forwarded to the wrapped storage handler.
+     */
+    @Override
+    public void onHolderUnloaded(@NonNull UUID uuid) {
+        storageHandler.onHolderUnloaded(uuid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<UUID> getAllHolderUUIDs() {
+        try (Stream<UUID> stream = streamAllHolderUUIDs()) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public @NonNull Stream<UUID> streamAllHolderUUIDs() {
+        if (!(storageHandler instanceof Migratable)) {
+            throw new UnsupportedOperationException("Storage handler " + storageHandler.getName() + " does not implement " + Migratable.class.getName() + " interface!");
+        }
+
+        Map<UUID, PendingChange> pendingChanges = new HashMap<>(this.pendingChanges);
+
+        Stream<UUID> pendingUUIDs = pendingChanges.entrySet().stream().filter(entry -> entry.getValue().payload != null).map(Map.Entry::getKey);
+        Stream<UUID> storedUUIDs = ((Migratable) storageHandler).streamAllHolderUUIDs().filter(uuid -> !pendingChanges.containsKey(uuid));
+
+        return Stream.concat(pendingUUIDs, storedUUIDs);
+    }
+
+    /**
+     * Stops background checkpoints, applies the log into underlying storage handler and closes the log. The storage handler cannot be used
+     * afterward unless {@link #prepareStorage()} is called again.
+     */
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+
+            try {
+                checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+
+            checkpointer = null;
+        }
+
+        synchronized (checkpointLock) {
+            checkpoint();
+
+            synchronized (writeLock) {
+                closeLog();
+            }
+        }
+    }
+
+    /**
+     * Returns number of changes which were not applied into underlying storage handler yet
+     *
+     * @return Number of pending changes
+     */
+    public int getPendingChangeCount() {
+        return pendingChanges.size();
+    }
+
+    ////////////////
+    // Checkpoint //
+    ////////////////
+
+    /**
+     * Applies all logged changes into underlying storage handler and deletes applied log files. New saves are written into new log file in the
+     * meantime. The changes are applied with {@link Durability#FSYNC} (or stronger), so the underlying storage handler forces its files and
+     * their directory entries before the log files are deleted.
+     */
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            Map<UUID, PendingChange> changes;
+            long appliedLogId;
+
+            if (!storageHandler.getDurability().isForced()) {
+                // Logs must not be deleted before the applied changes are durable
+                storageHandler.setDurability(Durability.FSYNC);
+            }
+
+            synchronized (syncLock) {
+                synchronized (writeLock) {
+                    if (channel == null) {
+                        return;
+                    }
+
+                    if (pendingChanges.isEmpty()) {
+                        deleteLogsUpTo(logId - 1);
+                        return;
+                    }
+
+                    // Log is rotated, so the old file can be deleted once the changes are applied
+                    appliedLogId = logId;
+
+                    try {
+                        openLog(logId + 1);
+                    } catch (IOException exception) {
+                        throw new RuntimeException("Could not rotate write-ahead log in folder " + settings.folderPath + "!", exception);
+                    }
+
+                    // Old log was synced when closed
+                    syncedPosition = writtenPosition;
+                    changes = new HashMap<>(pendingChanges);
+                }
+            }
+
+            for (Map.Entry<UUID, PendingChange> entry : changes.entrySet()) {
+                UUID uuid = entry.getKey();
+                PendingChange pendingChange = entry.getValue();
+
+                if (pendingChange.payload != null) {
+                    storageHandler.saveHolder(DataHolder.loadFromJsonObject(getPumpk1n(), JsonParser.parseString(new String(pendingChange.payload, StandardCharsets.UTF_8)).getAsJsonObject()));
+                } else {
+                    storageHandler.removeHolder(uuid);
+                }
+
+                // Newer change stays pending
+                pendingChanges.remove(uuid, pendingChange);
+            }
+
+            synchronized (writeLock) {
+                deleteLogsUpTo(appliedLogId);
+            }
+        }
+    }
+
+    /////////
+    // Log //
+    /////////
+
+    /**
+     * Appends record into the log
+     *
+     * @return Log position which has to be synced to make the record durable
+     */
+    protected long append(byte type, UUID uuid, byte[] payload) throws IOException {
+        int payloadLength = payload == null ? 0 : payload.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadLength);
+        record.putInt(0)
+              .put(type)
+              .putLong(uuid.getMostSignificantBits())
+              .putLong(uuid.getLeastSignificantBits())
+              .putInt(payloadLength);
+
+        if (payload != null) {
+            record.put(payload);
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc32.getValue());
+        record.flip();
+
+        synchronized (writeLock) {
+            if (channel == null) {
+                throw new IllegalStateException("Storage is not prepared!");
+            }
+
+            channel.writeFully(record, logSize);
+            logSize += record.capacity();
+            writtenPosition += record.capacity();
+            pendingChanges.put(uuid, new PendingChange(payload));
+
+            return writtenPosition;
+        }
+    }
+
+    /**
+     * Waits until the log is synced at least up to specified position, if {@link #getDurability()} requires it. With
+     * {@link Durability#GROUP_COMMIT}, the first waiting thread waits for the group commit window, so other saves can join, and then syncs the
+     * log for all of them.
+     *
+     * @param position Log position
+     */
+    protected void sync(long position) {
+        if (!durability.isForced() || syncedPosition >= position) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            if (syncedPosition >= position) {
+                return;
+            }
+
+            if (durability == Durability.GROUP_COMMIT && settings.groupCommitWindowMicros > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(settings.groupCommitWindowMicros));
+            }
+
+            SharedFileChannel channel;
+            long targetPosition;
+
+            synchronized (writeLock) {
+                channel = this.channel;
+                targetPosition = writtenPosition;
+            }
+
+            try {
+                channel.force(false);
+            } catch (IOException exception) {
+                throw new RuntimeException("Could not sync write-ahead log in folder " + settings.folderPath + "!", exception);
+            }
+
+            syncedPosition = targetPosition;
+        }
+    }
+
+    /**
+     * Replays all log files into pending changes and truncates torn tail of the last one
+     *
+     * @return ID of the last log file
+     */
+    protected long replay() throws IOException {
+        List<Long> logIds;
+
+        try (Stream<Path> stream = FileUtils.list(folder)) {
+            logIds = stream.map(path -> parseLogId(path.getFileName().toString())).filter(id -> id >= 0).sorted().collect(Collectors.toList());
+        }
+
+        for (long id : logIds) {
+            try (FileChannel channel = FileChannel.open(logPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+
+                while (content.hasRemaining() && channel.read(content) != -1) {
+                    // Reads whole file
+                }
+
+                content.flip();
+
+                int validLength = replayRecords(content);
+
+                if (validLength != content.limit()) {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+            }
+        }
+
+        return logIds.isEmpty() ? 0 : logIds.get(logIds.size() - 1);
+    }
+
+    protected int replayRecords(ByteBuffer content) {
+        while (content.remaining() >= RECORD_HEADER_SIZE) {
+            int start = content.position();
+            int checksum = content.getInt();
+            byte type = content.get();
+            UUID uuid = new UUID(content.getLong(), content.getLong());
+            int length = content.getInt();
+
+            if ((type != TYPE_PUT && type != TYPE_DELETE) || length < 0 || length > content.remaining()) {
+                return start;
+            }
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(content.array(), start + 4, RECORD_HEADER_SIZE - 4 + length);
+
+            if ((int) crc32.getValue() != checksum) {
+                return start;
+            }
+
+            byte[] payload = null;
+
+            if (type == TYPE_PUT) {
+                payload = new byte[length];
+                content.get(payload);
+            } else {
+                content.position(content.position() + length);
+            }
+
+            pendingChanges.put(uuid, new PendingChange(payload));
+        }
+
+        return content.position();
+    }
+
+    /**
+     * Opens new log file and closes (and syncs) the current one. Must be called under {@link #writeLock}.
+     */
+    protected void openLog(long id) throws IOException {
+        SharedFileChannel newChannel = SharedFileChannel.open(logPath(id), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        closeLog();
+        channel = newChannel;
+        logId = id;
+        logSize = 0;
+
+        if (durability.isForced()) {
+            // Forced records would be lost with the log file itself
+            FileUtils.forceDirectory(folder);
+        }
+    }
+
+    protected void closeLog() {
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        channel = null;
+    }
+
+    protected void deleteLogsUpTo(long id) {
+        try (Stream<Path> stream = FileUtils.list(folder)) {
+            for (Path path : stream.collect(Collectors.toList())) {
+                long otherId = parseLogId(path.getFileName().toString());
+
+                if (otherId >= 0 && otherId <= id) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not delete applied write-ahead log in folder " + settings.folderPath + "!", exception);
+        }
+    }
+
+    protected Path logPath(long id) {
+        return folder.resolve(LOG_PREFIX + String.format("%016d", id) + LOG_SUFFIX);
+    }
+
+    protected static long parseLogId(String fileName) {
+        if (!fileName.startsWith(LOG_PREFIX) || !fileName.endsWith(LOG_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(fileName.substring(LOG_PREFIX.length(), fileName.length() - LOG_SUFFIX.length()));
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Change which was not applied into underlying storage handler yet
+     */
+    protected static class PendingChange {
+
+        protected final byte[] payload; // Null for removal
+
+        protected PendingChange(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+
+    public static class Settings {
+
+        protected final @Getter String folderPath;
+        protected final @Getter long groupCommitWindowMicros;
+        protected final @Getter long checkpointIntervalMillis;
+
+        /**
+         * Creates {@link Settings} object. It's recommended that you use {@link Builder} to create it.
+         *
+         * @param folderPath               Non-null path to folder with log files
+         * @param groupCommitWindowMicros  How long should the first save wait for other saves before syncing the log, zero for no waiting
+         * @param checkpointIntervalMillis Interval of background checkpoints, zero or less disables background checkpoints
+         */
+        public Settings(@NonNull String folderPath, long groupCommitWindowMicros, long checkpointIntervalMillis) {
+            this.folderPath = folderPath;
+            this.groupCommitWindowMicros = groupCommitWindowMicros;
+            this.checkpointIntervalMillis = checkpointIntervalMillis;
+        }
+
+        public static class Builder {
+
+            protected @Getter String folderPath = "./pumpkin_wal/";
+            protected @Getter long groupCommitWindowMicros = 1000;
+            protected @Getter long checkpointIntervalMillis = 1000;
+
+            /**
+             * Creates empty {@link Builder} with default values
+             */
+            public Builder() {
+            }
+
+            /**
+             * Creates empty {@link Builder} with default values
+             *
+             * @return Non-null {@link Builder}
+             */
+            public static @NonNull Builder create() {
+                return new Builder();
+            }
+
+            /**
+             * Builds {@link Settings}
+             *
+             * @return Non-null {@link Settings}
+             */
+            public @NonNull Settings build() {
+                return new Settings(folderPath, groupCommitWindowMicros, checkpointIntervalMillis);
+            }
+
+            /**
+             * Sets path to folder with log files
+             *
+             * @param folderPath Non-null {@link String}
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setFolderPath(@NonNull String folderPath) {
+                this.folderPath = folderPath;
+                return this;
+            }
+
+            /**
+             * Sets how long should the first save wait for other saves before syncing the log
+             *
+             * @param groupCommitWindowMicros Window in microseconds, zero for no waiting
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setGroupCommitWindowMicros(long groupCommitWindowMicros) {
+                this.groupCommitWindowMicros = groupCommitWindowMicros;
+                return this;
+            }
+
+            /**
+             * Sets interval of background checkpoints
+             *
+             * @param checkpointIntervalMillis Interval in milliseconds, zero or less disables background checkpoints
+             *
+             * @return {@link Builder}, useful for chaining
+             */
+            public @NonNull Builder setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+                this.checkpointIntervalMillis = checkpointIntervalMillis;
+                return this;
+            }
+        }
+    }
+}
@@ -1,28 +1,45 @@
 package dev.mayuna.pumpk1n.objects;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import dev.mayuna.pumpk1n.Pumpk1n;
 import dev.mayuna.pumpk1n.api.BackwardsCompatible;
 import dev.mayuna.pumpk1n.api.DataElement;
 import dev.mayuna.pumpk1n.api.ParentedDataElement;
+import dev.mayuna.pumpk1n.util.DataElementGsons;
 import lombok.Getter;
 import lombok.NonNull;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 public class DataHolder {
 
+    protected static final Gson PLAIN_GSON = new Gson();
+
     protected final @Getter UUID uuid;
     protected final @Getter Pumpk1n pumpk1n;
+    protected final @Getter boolean snapshot;
 
-    protected final Map<Class<?>, DataElement> dataElementMap = Collections.synchronizedMap(new HashMap<>());
-    protected final Map<String, JsonObject> safeDataElementMap = Collections.synchronizedMap(new HashMap<>());
+    protected final ConcurrentMap<Class<?>, DataElement> dataElementMap = new ConcurrentHashMap<>();
+    protected final ConcurrentMap<String, JsonObject> safeDataElementMap = new ConcurrentHashMap<>();
 
     public DataHolder(Pumpk1n pumpk1n, UUID uuid) {
+        this(pumpk1n, uuid, false);
+    }
+
+    protected DataHolder(Pumpk1n pumpk1n, UUID uuid, boolean snapshot) {
         this.pumpk1n = pumpk1n;
         this.uuid = uuid;
+        this.snapshot = snapshot;
     }
 
     /**
@@ -57,9 +74,60 @@ public class DataHolder {
                                 .getAsJsonObject();
     }
 
+    /**
+     * Writes the {@link DataHolder} as JSON into specified {@link Writer}. The output is the same as {@link #getAsJsonObject()}'s, however,
+     * {@link DataElement}s are streamed directly into the writer without building JSON tree of the whole {@link DataHolder}
+     *
+     * @param writer Non-null {@link Writer}
+     *
+     * @throws IOException If the writer throws {@link IOException}
+     */
+    public void writeJson(@NonNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+
+        jsonWriter.beginObject();
+        jsonWriter.name("uuid").value(uuid.toString());
+        jsonWriter.name("dataMap").beginArray();
+
+        if (shouldSerializeInParallel(dataElementMap.size())) {
+            for (Map.Entry<String, JsonObject> entry : getAllDataIntoSafeMap().entrySet()) {
+                jsonWriter.beginObject();
+                jsonWriter.name("class").value(entry.getKey());
+                jsonWriter.name("data");
+                PLAIN_GSON.toJson(entry.getValue(), jsonWriter);
+                jsonWriter.endObject();
+            }
+        } else {
+            // Same order as getAllDataIntoSafeMap()
+            Map<String, Object> sortedData = new TreeMap<>();
+            dataElementMap.forEach((clazz, dataElement) -> sortedData.put(clazz.getName(), dataElement));
+            safeDataElementMap.forEach(sortedData::putIfAbsent);
+
+            for (Map.Entry<String, Object> entry : sortedData.entrySet()) {
+                jsonWriter.beginObject();
+                jsonWriter.name("class").value(entry.getKey());
+                jsonWriter.name("data");
+
+                if (entry.getValue() instanceof DataElement) {
+                    DataElement dataElement = (DataElement) entry.getValue();
+                    getGson(dataElement.getClass(), dataElement).toJson(dataElement, dataElement.getClass(), jsonWriter);
+                } else {
+                    PLAIN_GSON.toJson((JsonObject) entry.getValue(), jsonWriter);
+                }
+
+                jsonWriter.endObject();
+            }
+        }
+
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
     /**
      * Gets or creates specified {@link DataElement} by your type {@link T}. Your {@link DataElement} must have at-least one public no-args
-     * constructor or this method will result in {@link RuntimeException}
+     * constructor or this method will result in {@link RuntimeException}. Concurrent calls for the same type will always return the same
+     * instance.
      *
      * @param dataElementClass Non-null class of implementation of your {@link DataElement}
      * @param <T>              Your implementation of {@link DataElement}
@@ -73,25 +141,18 @@ public class DataHolder {
             return dataElement;
         }
 
-        try {
-            dataElement = dataElementClass.getConstructor().newInstance();
-
-            setDataHolderParent(this, dataElement);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException("Unable to create new instance of DataElement " + dataElementClass.getName() + "!", e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException("Missing public no-args constructor in DataElement " + dataElementClass.getName() + "!", e);
-        }
-
-        synchronized (dataElementMap) {
-            dataElementMap.put(dataElementClass, dataElement);
-        }
-
-        return dataElement;
+        return (T) dataElementMap.computeIfAbsent(dataElementClass, clazz -> {
+            T newDataElement = createEmptyInstance(dataElementClass);
+            setDataHolderParent(this, newDataElement);
+            return newDataElement;
+        });
     }
 
     /**
-     * Gets specified {@link DataElement} by your type {@link T}.
+     * Gets specified {@link DataElement} by your type {@link T}. If the {@link DataElement} was not yet deserialized, it is deserialized
+     * outside any lock, so its {@link DataElement#onLoad()} may access other {@link DataElement}s of this {@link DataHolder}. The instance is
+     * published only after its {@link DataElement#onLoad()} returns, so no other thread sees it half-loaded. Concurrent calls may deserialize
+     * (and call {@link DataElement#onLoad()} on) more than one instance, but all of them return the same one and the others are discarded.
      *
      * @param dataElementClass Non-null class of implementation of your {@link DataElement}
      * @param <T>              Your implementation of {@link DataElement}
@@ -99,46 +160,29 @@ public class DataHolder {
      * @return Nullable implementation of your {@link DataElement}
      */
     public <T extends DataElement> T getDataElement(@NonNull Class<T> dataElementClass) {
-        synchronized (dataElementMap) {
-            for (Map.Entry<Class<?>, DataElement> entry : dataElementMap.entrySet()) {
-                if (entry.getKey().equals(dataElementClass)) {
-                    return (T) entry.getValue();
-                }
-            }
+        DataElement dataElement = dataElementMap.get(dataElementClass);
+
+        if (dataElement != null) {
+            return (T) dataElement;
         }
 
-        synchronized (safeDataElementMap) {
-            for (Map.Entry<String, JsonObject> entry : safeDataElementMap.entrySet()) {
-                String className = entry.getKey();
-
-                boolean matches = className.equals(dataElementClass.getName());
-
-                if (!matches) {
-                    if (dataElementClass.isAnnotationPresent(BackwardsCompatible.class)) {
-                        BackwardsCompatible backwardsCompatible = dataElementClass.getAnnotation(BackwardsCompatible.class);
-
-                        if (className.equals(backwardsCompatible.className())) {
-                            matches = true;
-                        } else {
-                            for (String anotherClassName : backwardsCompatible.classNames()) {
-                                if (className.equals(anotherClassName)) {
-                                    matches = true;
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+        JsonObject jsonData = findSafeData(dataElementClass);
 
-                if (matches) {
-                    T data = createInstance(dataElementClass, entry.getValue());
-                    dataElementMap.put(dataElementClass, data);
-                    return data;
-                }
-            }
+        if (jsonData == null) {
+            return null;
         }
 
-        return null;
+        T newDataElement = createInstance(dataElementClass, jsonData);
+        newDataElement.onLoad();
+
+        DataElement existingDataElement = dataElementMap.putIfAbsent(dataElementClass, newDataElement);
+
+        if (existingDataElement != null) {
+            // Another thread published its instance first, this one is discarded
+            return (T) existingDataElement;
+        }
+
+        return newDataElement;
     }
 
     /**
@@ -150,32 +194,10 @@ public class DataHolder {
      * @return Returns true, if any {@link DataElement} was removed, otherwise false
      */
     public <T extends DataElement> boolean removeDataElement(@NonNull Class<T> dataElementClass) {
-        boolean success = false;
-
-        synchronized (dataElementMap) {
-            Iterator<Map.Entry<Class<?>, DataElement>> iterator = dataElementMap.entrySet().iterator();
+        boolean success = dataElementMap.remove(dataElementClass) != null;
 
-            while (iterator.hasNext()) {
-                Map.Entry<Class<?>, DataElement> entry = iterator.next();
-
-                if (entry.getKey().equals(dataElementClass)) {
-                    iterator.remove();
-                    success = true;
-                }
-            }
-        }
-
-        synchronized (safeDataElementMap) {
-            Iterator<Map.Entry<String, JsonObject>> iterator = safeDataElementMap.entrySet().iterator();
-
-            while(iterator.hasNext()) {
-                Map.Entry<String, JsonObject> entry = iterator.next();
-
-                if (entry.getKey().equals(dataElementClass.getName())) {
-                    iterator.remove();
-                    success = true;
-                }
-            }
+        if (safeDataElementMap.remove(dataElementClass.getName()) != null) {
+            success = true;
         }
 
         return success;
@@ -186,20 +208,10 @@ public class DataHolder {
      * @param dataElement Non-null {@link DataElement}
      */
     public void addOrReplaceDataElement(@NonNull DataElement dataElement) {
-        synchronized (dataElementMap) {
-            Iterator<Map.Entry<Class<?>, DataElement>> iterator = dataElementMap.entrySet().iterator();
-
-            while (iterator.hasNext()) {
-                Map.Entry<Class<?>, DataElement> entry = iterator.next();
-
-                if (entry.getKey().getName().equals(dataElement.getClass().getName())) {
-                    iterator.remove();
-                    break;
-                }
-
-            }
-        }
+        String className = dataElement.getClass().getName();
 
+        // Removes element of the same class name which could have been loaded by different class loader
+        dataElementMap.keySet().removeIf(clazz -> clazz != dataElement.getClass() && clazz.getName().equals(className));
         dataElementMap.put(dataElement.getClass(), dataElement);
     }
 
@@ -228,36 +240,164 @@ public class DataHolder {
         pumpk1n.saveDataHolder(this);
     }
 
-    protected Map<String, JsonObject> getAllDataIntoSafeMap() {
-        Map<String, JsonObject> safeDataMap = new HashMap<>();
+    /**
+     * Saves {@link DataHolder} asynchronously, see {@link Pumpk1n#saveDataHolderAsync(DataHolder)}
+     *
+     * @return Non-null {@link CompletableFuture} which completes when the holder is saved
+     */
+    public @NonNull CompletableFuture<Void> saveAsync() {
+        return pumpk1n.saveDataHolderAsync(this);
+    }
 
-        dataElementMap.forEach((clazz, dataElement) -> {
-            safeDataMap.put(clazz.getName(), dataElement.getGsonBuilder().create().toJsonTree(dataElement).getAsJsonObject());
-        });
+    /**
+     * Creates point-in-time snapshot of this {@link DataHolder}, which can be saved on another thread (e.g. by
+     * {@link Pumpk1n#saveDataHolder(DataHolder)}) while this {@link DataHolder} is being modified.<br> {@link DataElement#beforeSave()} is
+     * called on the calling thread and then every {@link DataElement} is serialized into {@link JsonObject}, unless its
+     * {@link DataElement#snapshot()} returns a typed copy. Not yet deserialized {@link DataElement}s are shared, as they are never modified.<br>
+     * The snapshot is not loaded in {@link Pumpk1n} and should not be modified.
+     *
+     * @return Non-null detached {@link DataHolder}
+     */
+    public @NonNull DataHolder snapshot() {
+        DataHolder snapshot = new DataHolder(pumpk1n, uuid, true);
+
+        // Serialized elements are never modified, so they can be shared
+        snapshot.safeDataElementMap.putAll(safeDataElementMap);
 
-        safeDataElementMap.forEach((className, jsonData) -> {
-            if (!safeDataMap.containsKey(className)) {
-                safeDataMap.put(className, jsonData);
+        for (Map.Entry<Class<?>, DataElement> entry : dataElementMap.entrySet()) {
+            DataElement dataElement = entry.getValue();
+            dataElement.beforeSave();
+            DataElement snapshotDataElement = dataElement.snapshot();
+
+            if (snapshotDataElement == null) {
+                // Loaded element replaces its not yet deserialized data, same as in getAllDataIntoSafeMap()
+                snapshot.safeDataElementMap.put(entry.getKey().getName(), serializeDataElement(entry));
+                continue;
+            }
+
+            if (snapshotDataElement != dataElement) {
+                setDataHolderParent(snapshot, snapshotDataElement);
             }
-        });
+
+            snapshot.dataElementMap.put(entry.getKey(), snapshotDataElement);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Serializes all loaded {@link DataElement}s and merges them with not-yet-loaded ones. Elements are serialized in parallel if there's at
+     * least {@link Pumpk1n#getParallelSerializationThreshold()} of them. The returned map is sorted by class names, so the output is the
+     * same regardless of the mode.
+     *
+     * @return Non-null map of class names and serialized {@link DataElement}s
+     */
+    protected Map<String, JsonObject> getAllDataIntoSafeMap() {
+        List<Map.Entry<Class<?>, DataElement>> entries = new ArrayList<>(dataElementMap.entrySet());
+        JsonObject[] serializedElements = new JsonObject[entries.size()];
+
+        if (shouldSerializeInParallel(entries.size())) {
+            pumpk1n.getSerializationPool().invoke(ForkJoinTask.adapt(() -> {
+                IntStream.range(0, entries.size()).parallel().forEach(index -> {
+                    serializedElements[index] = serializeDataElement(entries.get(index));
+                });
+            }));
+        } else {
+            for (int index = 0; index < entries.size(); index++) {
+                serializedElements[index] = serializeDataElement(entries.get(index));
+            }
+        }
+
+        Map<String, JsonObject> safeDataMap = new TreeMap<>();
+
+        for (int index = 0; index < entries.size(); index++) {
+            safeDataMap.put(entries.get(index).getKey().getName(), serializedElements[index]);
+        }
+
+        safeDataElementMap.forEach(safeDataMap::putIfAbsent);
 
         return safeDataMap;
     }
 
-    protected <T extends DataElement> T createInstance(Class<T> clazz, JsonObject jsonData) {
-        GsonBuilder gsonBuilder;
+    protected boolean shouldSerializeInParallel(int elementCount) {
+        if (pumpk1n == null || elementCount < 2) {
+            return false;
+        }
+
+        int threshold = pumpk1n.getParallelSerializationThreshold();
+        return threshold > 0 && elementCount >= threshold;
+    }
+
+    protected static JsonObject serializeDataElement(Map.Entry<Class<?>, DataElement> entry) {
+        return getGson(entry.getKey(), entry.getValue()).toJsonTree(entry.getValue()).getAsJsonObject();
+    }
 
+    /**
+     * Finds serialized data of specified {@link DataElement} class, including class names from {@link BackwardsCompatible} annotation
+     *
+     * @param dataElementClass Non-null class of implementation of {@link DataElement}
+     *
+     * @return Nullable {@link JsonObject}
+     */
+    protected JsonObject findSafeData(@NonNull Class<?> dataElementClass) {
+        JsonObject jsonData = safeDataElementMap.get(dataElementClass.getName());
+
+        if (jsonData != null || !dataElementClass.isAnnotationPresent(BackwardsCompatible.class)) {
+            return jsonData;
+        }
+
+        BackwardsCompatible backwardsCompatible = dataElementClass.getAnnotation(BackwardsCompatible.class);
+        jsonData = safeDataElementMap.get(backwardsCompatible.className());
+
+        if (jsonData != null) {
+            return jsonData;
+        }
+
+        for (String anotherClassName : backwardsCompatible.classNames()) {
+            jsonData = safeDataElementMap.get(anotherClassName);
+
+            if (jsonData != null) {
+                return jsonData;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets {@link Gson} of specified {@link DataElement} class, see {@link DataElementGsons}
+     *
+     * @param clazz       Non-null class of the {@link DataElement}
+     * @param dataElement Non-null instance of the {@link DataElement}
+     *
+     * @return Non-null {@link Gson}
+     */
+    protected static @NonNull Gson getGson(@NonNull Class<?> clazz, @NonNull DataElement dataElement) {
+        return DataElementGsons.get(clazz, () -> dataElement);
+    }
+
+    protected <T extends DataElement> T createEmptyInstance(Class<T> clazz) {
         try {
-            gsonBuilder = clazz.getConstructor().newInstance().getGsonBuilder();
+            return clazz.getConstructor().newInstance();
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException("Unable to create new instance of class " + clazz.getName() + "!", e);
+            throw new RuntimeException("Unable to create new instance of DataElement " + clazz.getName() + "!", e);
         } catch (NoSuchMethodException e) {
-            throw new RuntimeException("Missing public no-args constructor within class " + clazz.getName() + "!", e);
+            throw new RuntimeException("Missing public no-args constructor in DataElement " + clazz.getName() + "!", e);
         }
+    }
 
-        T dataElement = gsonBuilder.create().fromJson(jsonData, clazz);
+    /**
+     * Deserializes the {@link DataElement} and sets its parent. {@link DataElement#onLoad()} is not called.
+     *
+     * @param clazz    Non-null class of the {@link DataElement}
+     * @param jsonData Non-null serialized {@link DataElement}
+     * @param <T>      Your implementation of {@link DataElement}
+     *
+     * @return Non-null {@link DataElement}
+     */
+    protected <T extends DataElement> T createInstance(Class<T> clazz, JsonObject jsonData) {
+        T dataElement = DataElementGsons.get(clazz, () -> createEmptyInstance(clazz)).fromJson(jsonData, clazz);
         setDataHolderParent(this, dataElement);
-        dataElement.onLoad();
         return dataElement;
     }
 
@@ -0,0 +1,63 @@
+package dev.mayuna.pumpk1n.util;
+
+import com.google.gson.Gson;
+import dev.mayuna.pumpk1n.api.DataElement;
+import lombok.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches {@link Gson}s of {@link DataElement} classes. Each is built once from {@link DataElement#getGsonBuilder()}, with generated
+ * {@link com.google.gson.TypeAdapterFactory} registered by {@link GeneratedTypeAdapters#register(Class, com.google.gson.GsonBuilder)}. Gson
+ * caches its adapters, so whether the generated adapter or Gson's own one is used is decided once per class too, not on every
+ * (de)serialization.
+ */
+public final class DataElementGsons {
+
+    private static final Map<Class<?>, Gson> gsons = new ConcurrentHashMap<>();
+
+    private DataElementGsons() {
+    }
+
+    /**
+     * Gets {@link Gson} for specified {@link DataElement} class. If there's none cached yet, it's built from {@link DataElement#getGsonBuilder()}
+     * of the supplied instance. Concurrent calls may build more than one, but all of them return the same one.
+     *
+     * @param clazz            Non-null class of the {@link DataElement}
+     * @param instanceSupplier Non-null supplier of an instance of the class, called only if there's no cached {@link Gson}
+     *
+     * @return Non-null {@link Gson}
+     */
+    public static @NonNull Gson get(@NonNull Class<?> clazz, @NonNull Supplier<? extends DataElement> instanceSupplier) {
+        Gson gson = gsons.get(clazz);
+
+        if (gson != null) {
+            return gson;
+        }
+
+        // Built outside the map, getGsonBuilder() is user code
+        Gson newGson = GeneratedTypeAdapters.register(clazz, instanceSupplier.get().getGsonBuilder()).create();
+        Gson existingGson = gsons.putIfAbsent(clazz, newGson);
+
+        return existingGson != null ? existingGson : newGson;
+    }
+
+    /**
+     * Removes cached {@link Gson} of specified class, so it's built again on next use. Useful if its {@link DataElement#getGsonBuilder()} does
+     * not return the same configuration anymore.
+     *
+     * @param clazz Non-null class of the {@link DataElement}
+     */
+    public static void invalidate(@NonNull Class<?> clazz) {
+        gsons.remove(clazz);
+    }
+
+    /**
+     * Removes all cached {@link Gson}s
+     */
+    public static void invalidateAll() {
+        gsons.clear();
+    }
+}
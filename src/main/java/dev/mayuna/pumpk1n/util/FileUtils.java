@@ -0,0 +1,357 @@
+package dev.mayuna.pumpk1n.util;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Utility methods for file based storage handlers
+ */
+public final class FileUtils {
+
+    /**
+     * Length of UUID's string representation
+     */
+    public static final int UUID_STRING_LENGTH = 36;
+
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    private FileUtils() {
+    }
+
+    /**
+     * Writes all remaining bytes of specified {@link ByteBuffer} into the file, replacing its content
+     *
+     * @param path  Non-null {@link Path}
+     * @param bytes Non-null {@link ByteBuffer}
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void write(@NonNull Path path, @NonNull ByteBuffer bytes) throws IOException {
+        write(path, bytes, false);
+    }
+
+    /**
+     * Writes all remaining bytes of specified {@link ByteBuffer} into the file, replacing its content
+     *
+     * @param path  Non-null {@link Path}
+     * @param bytes Non-null {@link ByteBuffer}
+     * @param force Whether the content should be forced to the storage device before returning
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void write(@NonNull Path path, @NonNull ByteBuffer bytes, boolean force) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, bytes);
+
+            if (force) {
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of specified {@link ByteBuffer} into the channel
+     *
+     * @param channel Non-null {@link FileChannel}
+     * @param bytes   Non-null {@link ByteBuffer}
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void writeFully(@NonNull FileChannel channel, @NonNull ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Asynchronously writes all remaining bytes of specified {@link ByteBuffer} into the file using {@link AsynchronousFileChannel}, replacing
+     * its content. The buffer must not be modified until the returned future completes.
+     *
+     * @param path     Non-null {@link Path}
+     * @param bytes    Non-null {@link ByteBuffer}
+     * @param force    Whether the content should be forced to the storage device before completing
+     * @param executor Nullable {@link Executor}, if it's {@link ExecutorService}, I/O completions run on it, otherwise on the default group
+     *
+     * @return Non-null {@link CompletableFuture}
+     */
+    public static @NonNull CompletableFuture<Void> writeAsync(@NonNull Path path, @NonNull ByteBuffer bytes, boolean force, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+
+        try {
+            channel = openAsync(path, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), executor);
+        } catch (IOException exception) {
+            future.completeExceptionally(exception);
+            return future;
+        }
+
+        channel.write(bytes, 0L, 0L, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer written, Long position) {
+                long nextPosition = position + written;
+
+                if (bytes.hasRemaining()) {
+                    channel.write(bytes, nextPosition, nextPosition, this);
+                    return;
+                }
+
+                try {
+                    if (force) {
+                        channel.force(false);
+                    }
+
+                    channel.close();
+                    future.complete(null);
+                } catch (IOException exception) {
+                    failed(exception, position);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable, Long position) {
+                closeQuietly(channel);
+                future.completeExceptionally(throwable);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Asynchronously reads whole file using {@link AsynchronousFileChannel}
+     *
+     * @param path     Non-null {@link Path}
+     * @param executor Nullable {@link Executor}, if it's {@link ExecutorService}, I/O completions run on it, otherwise on the default group
+     *
+     * @return Non-null {@link CompletableFuture} with {@link ByteBuffer} ready to be read (flipped), or null if the file does not exist
+     */
+    public static @NonNull CompletableFuture<ByteBuffer> readAsync(@NonNull Path path, Executor executor) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+        ByteBuffer bytes;
+
+        try {
+            channel = openAsync(path, EnumSet.of(StandardOpenOption.READ), executor);
+        } catch (NoSuchFileException exception) {
+            future.complete(null);
+            return future;
+        } catch (IOException exception) {
+            future.completeExceptionally(exception);
+            return future;
+        }
+
+        try {
+            bytes = ByteBuffer.allocate((int) channel.size());
+        } catch (IOException exception) {
+            closeQuietly(channel);
+            future.completeExceptionally(exception);
+            return future;
+        }
+
+        channel.read(bytes, 0L, 0L, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer read, Long position) {
+                if (read != -1 && bytes.hasRemaining()) {
+                    long nextPosition = position + read;
+                    channel.read(bytes, nextPosition, nextPosition, this);
+                    return;
+                }
+
+                closeQuietly(channel);
+                bytes.flip();
+                future.complete(bytes);
+            }
+
+            @Override
+            public void failed(Throwable throwable, Long position) {
+                closeQuietly(channel);
+                future.completeExceptionally(throwable);
+            }
+        });
+
+        return future;
+    }
+
+    private static AsynchronousFileChannel openAsync(Path path, Set<? extends OpenOption> options, Executor executor) throws IOException {
+        if (executor instanceof ExecutorService) {
+            return AsynchronousFileChannel.open(path, options, (ExecutorService) executor);
+        }
+
+        return AsynchronousFileChannel.open(path, options.toArray(new OpenOption[0]));
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Moves file, replacing the target. Atomic move is used if the file system supports it.
+     *
+     * @param from Non-null source {@link Path}
+     * @param to   Non-null target {@link Path}
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void move(@NonNull Path from, @NonNull Path to) throws IOException {
+        move(from, to, false);
+    }
+
+    /**
+     * Moves file, replacing the target. Atomic move is used if the file system supports it. The rename itself is only a change of the
+     * directory, so it survives power loss only if the directory is forced too.
+     *
+     * @param from  Non-null source {@link Path}
+     * @param to    Non-null target {@link Path}
+     * @param force Whether to force the target's directory (and source's directory, if it's different) to the storage device
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void move(@NonNull Path from, @NonNull Path to, boolean force) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ignored) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (!force) {
+            return;
+        }
+
+        Path toDirectory = to.toAbsolutePath().getParent();
+        Path fromDirectory = from.toAbsolutePath().getParent();
+
+        forceDirectory(toDirectory);
+
+        if (fromDirectory != null && !fromDirectory.equals(toDirectory)) {
+            forceDirectory(fromDirectory);
+        }
+    }
+
+    /**
+     * Forces directory's entries (created, renamed and deleted files) to the storage device. Does nothing on Windows, where directories cannot
+     * be opened and NTFS journals the changes itself.
+     *
+     * @param directory Nullable directory {@link Path}, nothing is done if null
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static void forceDirectory(Path directory) throws IOException {
+        if (directory == null || IS_WINDOWS) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Lazily lists entries of specified directory using {@link DirectoryStream}, so the entries are not materialized at once. The returned
+     * stream must be closed after use.
+     *
+     * @param directory Non-null directory {@link Path}
+     *
+     * @return Non-null {@link Stream} of entries, empty if the directory does not exist
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static @NonNull Stream<Path> list(@NonNull Path directory) throws IOException {
+        DirectoryStream<Path> directoryStream;
+
+        try {
+            directoryStream = Files.newDirectoryStream(directory);
+        } catch (NoSuchFileException ignored) {
+            return Stream.empty();
+        }
+
+        return StreamSupport.stream(directoryStream.spliterator(), false).onClose(() -> {
+            try {
+                directoryStream.close();
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    /**
+     * Parses {@link UUID} at the start of specified file name without using regular expressions or creating substrings
+     *
+     * @param fileName Non-null file name
+     *
+     * @return Nullable {@link UUID}, null if the file name does not start with valid UUID
+     */
+    public static UUID parseUUIDPrefix(@NonNull String fileName) {
+        if (fileName.length() < UUID_STRING_LENGTH) {
+            return null;
+        }
+
+        long mostSignificantBits = 0;
+        long leastSignificantBits = 0;
+
+        for (int i = 0; i < UUID_STRING_LENGTH; i++) {
+            char character = fileName.charAt(i);
+
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (character != '-') {
+                    return null;
+                }
+
+                continue;
+            }
+
+            int digit = hexDigit(character);
+
+            if (digit == -1) {
+                return null;
+            }
+
+            if (i < 18) {
+                mostSignificantBits = (mostSignificantBits << 4) | digit;
+            } else {
+                leastSignificantBits = (leastSignificantBits << 4) | digit;
+            }
+        }
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    private static int hexDigit(char character) {
+        if (character >= '0' && character <= '9') {
+            return character - '0';
+        }
+
+        if (character >= 'a' && character <= 'f') {
+            return character - 'a' + 10;
+        }
+
+        if (character >= 'A' && character <= 'F') {
+            return character - 'A' + 10;
+        }
+
+        return -1;
+    }
+}
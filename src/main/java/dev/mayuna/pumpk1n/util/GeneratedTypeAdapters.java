@@ -0,0 +1,176 @@
+package dev.mayuna.pumpk1n.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.internal.Excluder;
+import com.google.gson.reflect.TypeToken;
+import dev.mayuna.pumpk1n.api.GenerateTypeAdapter;
+import lombok.NonNull;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up {@link TypeAdapterFactory}s generated by the {@code pumpk1n-processor} for classes annotated with {@link GenerateTypeAdapter}
+ */
+public final class GeneratedTypeAdapters {
+
+    /**
+     * Suffix of generated factory's class name, ex. {@code TestData_Pumpk1nTypeAdapterFactory}
+     */
+    public static final String FACTORY_SUFFIX = "_Pumpk1nTypeAdapterFactory";
+
+    private static final Map<Class<?>, Optional<TypeAdapterFactory>> factories = new ConcurrentHashMap<>();
+    private static final Gson PLAIN_GSON = new Gson();
+    private static final Gson EXPOSED_ONLY_GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private GeneratedTypeAdapters() {
+    }
+
+    /**
+     * Gets generated {@link TypeAdapterFactory} for specified class
+     *
+     * @param clazz Non-null class
+     *
+     * @return Nullable {@link TypeAdapterFactory}, null if there's no generated factory for the class
+     */
+    public static TypeAdapterFactory getFactory(@NonNull Class<?> clazz) {
+        return factories.computeIfAbsent(clazz, GeneratedTypeAdapters::loadFactory).orElse(null);
+    }
+
+    /**
+     * Registers generated {@link TypeAdapterFactory} for specified class into the {@link GsonBuilder}, if there's any. The generated adapter is
+     * not used (and Gson falls back to its own adapters) if:
+     * <ul>
+     *     <li>the {@link GsonBuilder} already has an adapter for the class, so adapters registered by the user always win</li>
+     *     <li>the built {@link Gson} would (de)serialize the class differently than the generated adapter, ex. it uses
+     *     {@link com.google.gson.FieldNamingPolicy}, exclusion strategies, version ({@link com.google.gson.annotations.Since} and
+     *     {@link com.google.gson.annotations.Until}) or excludes fields by {@link com.google.gson.annotations.Expose} annotation while
+     *     {@link GenerateTypeAdapter#exposedOnly()} is false (or vice versa), so the serialized form never depends on the generated
+     *     adapter</li>
+     * </ul>
+     * The check is done when the {@link Gson} creates adapter for the class, which it does once and caches it.
+     *
+     * @param clazz       Non-null class
+     * @param gsonBuilder Non-null {@link GsonBuilder}
+     *
+     * @return Non-null {@link GsonBuilder}, useful for chaining
+     */
+    public static @NonNull GsonBuilder register(@NonNull Class<?> clazz, @NonNull GsonBuilder gsonBuilder) {
+        TypeAdapterFactory factory = getFactory(clazz);
+
+        if (factory != null) {
+            gsonBuilder.registerTypeAdapterFactory(new FallbackTypeAdapterFactory(clazz, factory));
+        }
+
+        return gsonBuilder;
+    }
+
+    /**
+     * Returns the generated factory's fully qualified class name for specified class
+     *
+     * @param clazz Non-null class
+     *
+     * @return Non-null class name
+     */
+    public static @NonNull String getFactoryClassName(@NonNull Class<?> clazz) {
+        String className = clazz.getName();
+        int lastDot = className.lastIndexOf('.');
+        String packagePrefix = lastDot == -1 ? "" : className.substring(0, lastDot + 1);
+
+        return packagePrefix + className.substring(lastDot + 1).replace('$', '_') + FACTORY_SUFFIX;
+    }
+
+    /**
+     * Checks if specified {@link Gson}'s reflective adapter would (de)serialize the same fields under the same names as generated adapter of
+     * specified class
+     *
+     * @param gson  Non-null {@link Gson}
+     * @param clazz Non-null class annotated with {@link GenerateTypeAdapter}
+     *
+     * @return True if the generated adapter can be used in place of the reflective one
+     */
+    @SuppressWarnings("deprecation") // Gson#excluder() is the only way to ask Gson which fields it excludes
+    static boolean matchesGeneratedAdapter(@NonNull Gson gson, @NonNull Class<?> clazz) {
+        boolean exposedOnly = clazz.getAnnotation(GenerateTypeAdapter.class).exposedOnly();
+        Excluder expectedExcluder = (exposedOnly ? EXPOSED_ONLY_GSON : PLAIN_GSON).excluder();
+        Excluder excluder = gson.excluder();
+
+        // Same fields as the processor, class's fields first, then superclass's fields
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                for (boolean serialize : new boolean[]{true, false}) {
+                    boolean excluded = excluder.excludeClass(field.getType(), serialize) || excluder.excludeField(field, serialize);
+                    boolean expectedExcluded = expectedExcluder.excludeClass(field.getType(), serialize) || expectedExcluder.excludeField(field, serialize);
+
+                    if (excluded != expectedExcluded) {
+                        return false;
+                    }
+
+                    if (!excluded && !field.isAnnotationPresent(SerializedName.class)
+                            && !gson.fieldNamingStrategy().translateName(field).equals(field.getName())) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static Optional<TypeAdapterFactory> loadFactory(Class<?> clazz) {
+        if (!clazz.isAnnotationPresent(GenerateTypeAdapter.class)) {
+            return Optional.empty();
+        }
+
+        try {
+            Class<?> factoryClass = Class.forName(getFactoryClassName(clazz), true, clazz.getClassLoader());
+            return Optional.of((TypeAdapterFactory) factoryClass.getConstructor().newInstance());
+        } catch (ClassNotFoundException ignored) {
+            // Annotation processor was not used
+            return Optional.empty();
+        } catch (ReflectiveOperationException | ClassCastException exception) {
+            throw new RuntimeException("Unable to create generated TypeAdapterFactory for class " + clazz.getName() + "!", exception);
+        }
+    }
+
+    /**
+     * Uses generated {@link TypeAdapterFactory} only if the {@link Gson} has no other adapter for the class and its reflective adapter would
+     * (de)serialize the class the same way, see {@link #matchesGeneratedAdapter(Gson, Class)}
+     */
+    private static final class FallbackTypeAdapterFactory implements TypeAdapterFactory {
+
+        private final Class<?> clazz;
+        private final TypeAdapterFactory factory;
+
+        private FallbackTypeAdapterFactory(Class<?> clazz, TypeAdapterFactory factory) {
+            this.clazz = clazz;
+            this.factory = factory;
+        }
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != clazz) {
+                return factory.create(gson, type);
+            }
+
+            // Adapters registered before this factory, or reflection if there's none
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+
+            if (delegate.getClass() != PLAIN_GSON.getAdapter(type).getClass()) {
+                return null;
+            }
+
+            if (!matchesGeneratedAdapter(gson, clazz)) {
+                return null;
+            }
+
+            return factory.create(gson, type);
+        }
+    }
+}
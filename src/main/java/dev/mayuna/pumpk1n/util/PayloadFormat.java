@@ -0,0 +1,106 @@
+package dev.mayuna.pumpk1n.util;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import lombok.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How SQL based storage handlers store holder's payload. {@link #decode(byte[])} reads payloads of every format, so a table may contain rows
+ * written in different formats (e.g. after switching from {@link #JSON} to {@link #BLOB}).
+ */
+public enum PayloadFormat {
+
+    /**
+     * JSON string in a {@code JSON} column. Compatible with stores created by older versions.
+     */
+    JSON,
+
+    /**
+     * UTF-8 encoded JSON in a {@code BLOB} column. The database does not validate or reparse it, and no string transcoding is done.
+     */
+    BLOB,
+
+    /**
+     * DEFLATE compressed UTF-8 encoded JSON in a {@code BLOB} column. Smaller rows for large holders, at the cost of CPU time.
+     */
+    COMPRESSED_BLOB;
+
+    private static final int ZLIB_HEADER = 0x78; // First byte of zlib stream, never the first byte of JSON object
+
+    /**
+     * Checks if this format stores payload as bytes
+     *
+     * @return True for {@link #BLOB} and {@link #COMPRESSED_BLOB}
+     */
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /**
+     * Encodes specified {@link DataHolder} into bytes of this format
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null bytes
+     */
+    public byte[] encode(@NonNull DataHolder dataHolder) {
+        SerializationBuffers buffers = SerializationBuffers.acquire();
+
+        try {
+            ByteBuffer payload = buffers.encode(buffers.write(dataHolder));
+
+            if (this != COMPRESSED_BLOB) {
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                return bytes;
+            }
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(payload.remaining() / 4 + 64);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(outputStream, deflater)) {
+                deflaterStream.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } finally {
+                deflater.end();
+            }
+
+            return outputStream.toByteArray();
+        } catch (IOException exception) {
+            // ByteArrayOutputStream does not throw
+            throw new RuntimeException(exception);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * Decodes payload of any {@link PayloadFormat} into {@link JsonObject}
+     *
+     * @param payload Non-null bytes
+     *
+     * @return Non-null {@link JsonObject}
+     */
+    public static @NonNull JsonObject decode(@NonNull byte[] payload) {
+        if (payload.length == 0 || (payload[0] & 0xFF) != ZLIB_HEADER) {
+            return JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)).getAsJsonObject();
+        }
+
+        try (Reader reader = new InputStreamReader(new InflaterInputStream(new ByteArrayInputStream(payload)), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not decompress payload!", exception);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package dev.mayuna.pumpk1n.util;
+
+import dev.mayuna.pumpk1n.objects.DataHolder;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-thread reusable buffers used when saving {@link DataHolder}s. Buffers that grow above {@link #MAX_RETAINED_CAPACITY} are not retained
+ * after {@link #release()}, so a single huge {@link DataHolder} does not keep its memory forever.<br> Usage:
+ * <pre>{@code
+ * SerializationBuffers buffers = SerializationBuffers.acquire();
+ * try {
+ *     ByteBuffer bytes = buffers.encode(buffers.write(dataHolder));
+ *     // ...
+ * } finally {
+ *     buffers.release();
+ * }
+ * }</pre>
+ */
+public final class SerializationBuffers {
+
+    /**
+     * Maximal capacity (in chars or bytes) of buffers which are kept for next use
+     */
+    public static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private static final ThreadLocal<SerializationBuffers> threadLocalBuffers = ThreadLocal.withInitial(SerializationBuffers::new);
+
+    private final StringBuilderWriter writer = new StringBuilderWriter();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                                                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                                                 .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private StringBuilder stringBuilder = new StringBuilder(INITIAL_CAPACITY);
+    private CharBuffer charBuffer = CharBuffer.allocate(INITIAL_CAPACITY);
+    private ByteBuffer byteBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private boolean inUse;
+
+    private SerializationBuffers() {
+    }
+
+    /**
+     * Acquires current thread's {@link SerializationBuffers}. If they are already in use (nested call), new non-pooled instance is returned.
+     * You must call {@link #release()} when you're done with them.
+     *
+     * @return Non-null {@link SerializationBuffers}
+     */
+    public static @NonNull SerializationBuffers acquire() {
+        SerializationBuffers buffers = threadLocalBuffers.get();
+
+        if (buffers.inUse) {
+            buffers = new SerializationBuffers();
+        }
+
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    /**
+     * Writes specified {@link DataHolder} as JSON string using current thread's buffers. Useful for APIs which require {@link String}
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null JSON string
+     */
+    public static @NonNull String toJsonString(@NonNull DataHolder dataHolder) {
+        SerializationBuffers buffers = acquire();
+
+        try {
+            return buffers.write(dataHolder).toString();
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * Releases the buffers, so they can be used again by the current thread. Content of buffers returned by this object must not be used after
+     * calling this method.
+     */
+    public void release() {
+        if (stringBuilder.capacity() > MAX_RETAINED_CAPACITY) {
+            stringBuilder = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            stringBuilder.setLength(0);
+        }
+
+        if (charBuffer.capacity() > MAX_RETAINED_CAPACITY) {
+            charBuffer = CharBuffer.allocate(INITIAL_CAPACITY);
+        }
+
+        if (byteBuffer.capacity() > MAX_RETAINED_CAPACITY) {
+            byteBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+
+        inUse = false;
+    }
+
+    /**
+     * Returns cleared reusable {@link Writer} which appends to {@link #getStringBuilder()}
+     *
+     * @return Non-null {@link Writer}
+     */
+    public @NonNull Writer getWriter() {
+        stringBuilder.setLength(0);
+        return writer;
+    }
+
+    /**
+     * Returns reusable {@link StringBuilder}
+     *
+     * @return Non-null {@link StringBuilder}
+     */
+    public @NonNull StringBuilder getStringBuilder() {
+        return stringBuilder;
+    }
+
+    /**
+     * Writes specified {@link DataHolder} as JSON into reusable {@link StringBuilder}
+     *
+     * @param dataHolder Non-null {@link DataHolder}
+     *
+     * @return Non-null {@link StringBuilder} with the JSON
+     */
+    public @NonNull StringBuilder write(@NonNull DataHolder dataHolder) {
+        try {
+            dataHolder.writeJson(getWriter());
+        } catch (IOException exception) {
+            // StringBuilderWriter does not throw
+            throw new RuntimeException(exception);
+        }
+
+        return stringBuilder;
+    }
+
+    /**
+     * Encodes specified chars using UTF-8 into reusable {@link ByteBuffer}
+     *
+     * @param chars Non-null {@link CharSequence}
+     *
+     * @return Non-null {@link ByteBuffer} ready to be read (flipped)
+     */
+    public @NonNull ByteBuffer encode(@NonNull CharSequence chars) {
+        int length = chars.length();
+
+        if (charBuffer.capacity() < length) {
+            charBuffer = CharBuffer.allocate(length);
+        }
+
+        charBuffer.clear();
+
+        if (chars instanceof StringBuilder) {
+            ((StringBuilder) chars).getChars(0, length, charBuffer.array(), 0);
+            charBuffer.position(length);
+        } else {
+            charBuffer.append(chars);
+        }
+
+        charBuffer.flip();
+        byteBuffer.clear();
+        encoder.reset();
+
+        CoderResult result = encoder.encode(charBuffer, byteBuffer, true);
+
+        while (result.isOverflow()) {
+            growByteBuffer(charBuffer.remaining());
+            result = encoder.encode(charBuffer, byteBuffer, true);
+        }
+
+        result = encoder.flush(byteBuffer);
+
+        while (result.isOverflow()) {
+            growByteBuffer(0);
+            result = encoder.flush(byteBuffer);
+        }
+
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    private void growByteBuffer(int remainingChars) {
+        int newCapacity = Math.max(byteBuffer.capacity() * 2, byteBuffer.position() + remainingChars * 3 + 16);
+        ByteBuffer newByteBuffer = ByteBuffer.allocate(newCapacity);
+
+        byteBuffer.flip();
+        newByteBuffer.put(byteBuffer);
+        byteBuffer = newByteBuffer;
+    }
+
+    /**
+     * {@link Writer} appending to {@link SerializationBuffers#stringBuilder}
+     */
+    private final class StringBuilderWriter extends Writer {
+
+        @Override
+        public void write(int character) {
+            stringBuilder.append((char) character);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            stringBuilder.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            stringBuilder.append(string, offset, offset + length);
+        }
+
+        @Override
+        public Writer append(CharSequence chars) {
+            stringBuilder.append(chars);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+            // Empty
+        }
+
+        @Override
+        public void close() {
+            // Empty
+        }
+    }
+}
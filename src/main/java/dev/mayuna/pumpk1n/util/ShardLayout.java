@@ -0,0 +1,207 @@
+package dev.mayuna.pumpk1n.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Describes how folder based storage handlers fan out their files into sub-directories. For example, layout with depth 2 and width 2 stores
+ * holder {@code abcdef12-...} as {@code ab/cd/abcdef12-....json}. Large flat directories are slow to look up, list and back up.
+ */
+@Getter
+public final class ShardLayout {
+
+    /**
+     * Layout without any sub-directories
+     */
+    public static final ShardLayout FLAT = new ShardLayout(0, 0);
+
+    private static final int MAX_PREFIX_LENGTH = 8; // Hex chars before the first dash
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final int depth;
+    private final int width;
+
+    /**
+     * Creates {@link ShardLayout}
+     *
+     * @param depth Number of directory levels, zero for flat layout
+     * @param width Number of UUID's hex chars per directory level
+     */
+    public ShardLayout(int depth, int width) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Depth must not be negative!");
+        }
+
+        if (depth > 0 && width <= 0) {
+            throw new IllegalArgumentException("Width must be positive!");
+        }
+
+        if (depth * width > MAX_PREFIX_LENGTH) {
+            throw new IllegalArgumentException("Depth * width must be at most " + MAX_PREFIX_LENGTH + "!");
+        }
+
+        this.depth = depth;
+        this.width = depth == 0 ? 0 : width;
+    }
+
+    /**
+     * Creates {@link ShardLayout}
+     *
+     * @param depth Number of directory levels, zero for flat layout
+     * @param width Number of UUID's hex chars per directory level
+     *
+     * @return Non-null {@link ShardLayout}
+     */
+    public static @NonNull ShardLayout of(int depth, int width) {
+        return new ShardLayout(depth, width);
+    }
+
+    /**
+     * Checks if this layout is flat
+     *
+     * @return True if there are no sub-directories
+     */
+    public boolean isFlat() {
+        return depth == 0;
+    }
+
+    /**
+     * Returns relative directory of specified {@link UUID}, ex. {@code ab/cd/}
+     *
+     * @param uuid Non-null {@link UUID}
+     *
+     * @return Non-null relative directory ending with slash, or empty string for flat layout
+     */
+    public @NonNull String getRelativeDirectory(@NonNull UUID uuid) {
+        return getRelativeDirectory(uuid.toString());
+    }
+
+    /**
+     * Returns relative directory of specified UUID string, ex. {@code ab/cd/}
+     *
+     * @param uuid Non-null UUID string
+     *
+     * @return Non-null relative directory ending with slash, or empty string for flat layout
+     */
+    public @NonNull String getRelativeDirectory(@NonNull String uuid) {
+        if (isFlat()) {
+            return "";
+        }
+
+        StringBuilder directory = new StringBuilder(depth * (width + 1));
+
+        for (int level = 0; level < depth; level++) {
+            directory.append(uuid, level * width, (level + 1) * width).append('/');
+        }
+
+        return directory.toString();
+    }
+
+    /**
+     * Returns all existing directories in which files are stored, e.g. {@code ab/cd/} directories for layout with depth 2
+     *
+     * @param root Non-null root folder
+     *
+     * @return Non-null list of directories
+     */
+    public @NonNull List<File> getLeafDirectories(@NonNull File root) {
+        List<File> directories = Collections.singletonList(root);
+
+        for (int level = 0; level < depth; level++) {
+            List<File> children = new ArrayList<>();
+
+            for (File directory : directories) {
+                File[] subDirectories = directory.listFiles(File::isDirectory);
+
+                if (subDirectories != null) {
+                    children.addAll(Arrays.asList(subDirectories));
+                }
+            }
+
+            directories = children;
+        }
+
+        return directories;
+    }
+
+    /**
+     * Moves all holder files within the root folder (in any depth) to their place in this layout. Useful when changing the layout of existing
+     * storage. Leftover temporary files of interrupted writes are deleted and so are directories which are empty afterward. Storage must not
+     * be used while relayout is in progress.
+     *
+     * @param root Non-null root folder
+     *
+     * @return Number of moved files
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public int relayout(@NonNull Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+
+        return relayoutDirectory(root, root);
+    }
+
+    /**
+     * Moves holder files of specified directory and its sub-directories, while walking them, so the whole tree is never held in memory
+     */
+    private int relayoutDirectory(Path root, Path directory) throws IOException {
+        int moved = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path)) {
+                    moved += relayoutDirectory(root, path);
+                    deleteIfEmpty(path);
+                    continue;
+                }
+
+                String fileName = path.getFileName().toString();
+
+                if (fileName.endsWith(TEMP_SUFFIX)) {
+                    // Written by interrupted save, storage is not in use
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+
+                if (!isHolderFileName(fileName)) {
+                    continue;
+                }
+
+                Path target = root.resolve(getRelativeDirectory(fileName)).resolve(fileName);
+
+                if (target.equals(path)) {
+                    continue;
+                }
+
+                Files.createDirectories(target.getParent());
+                FileUtils.move(path, target);
+                moved++;
+            }
+        }
+
+        return moved;
+    }
+
+    private static boolean isHolderFileName(String fileName) {
+        return FileUtils.parseUUIDPrefix(fileName) != null;
+    }
+
+    private static void deleteIfEmpty(Path directory) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            if (children.iterator().hasNext()) {
+                return;
+            }
+        }
+
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,247 @@
+package dev.mayuna.pumpk1n.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@link FileChannel} shared by multiple threads for its whole lifetime. {@link FileChannel} is closed when a thread blocked in its I/O is
+ * interrupted ({@link java.nio.channels.ClosedByInterruptException}), which would break every following operation of all threads. This class
+ * reopens the channel and retries the operation instead. Only positional operations are provided, so an operation can be safely retried.<br>
+ * The channel is closed for good only by {@link #close()}, after which the operations throw {@link ClosedChannelException}.
+ */
+public final class SharedFileChannel {
+
+    /**
+     * How many times an operation may find the channel closed by an interrupt before giving up
+     */
+    public static final int MAX_REOPEN_ATTEMPTS = 5;
+
+    private final @Getter Path path;
+    private final Set<OpenOption> reopenOptions;
+
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+
+    private SharedFileChannel(Path path, Set<OpenOption> reopenOptions, FileChannel channel) {
+        this.path = path;
+        this.reopenOptions = reopenOptions;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens {@link SharedFileChannel}. When reopened after an interrupt, {@link StandardOpenOption#CREATE},
+     * {@link StandardOpenOption#CREATE_NEW} and {@link StandardOpenOption#TRUNCATE_EXISTING} are not used, so the content is kept.
+     *
+     * @param path    Non-null {@link Path}
+     * @param options Open options, see {@link FileChannel#open(Path, OpenOption...)}
+     *
+     * @return Non-null {@link SharedFileChannel}
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public static @NonNull SharedFileChannel open(@NonNull Path path, OpenOption... options) throws IOException {
+        Set<OpenOption> reopenOptions = new LinkedHashSet<>(Arrays.asList(options));
+        reopenOptions.remove(StandardOpenOption.CREATE);
+        reopenOptions.remove(StandardOpenOption.CREATE_NEW);
+        reopenOptions.remove(StandardOpenOption.TRUNCATE_EXISTING);
+
+        return new SharedFileChannel(path, reopenOptions, FileChannel.open(path, options));
+    }
+
+    /**
+     * Runs specified operation on the channel. If the channel gets closed by an interrupt of this or any other thread, the channel is reopened
+     * and the operation is run again, so it must be repeatable. Interrupt status of the calling thread is cleared while the operation runs and
+     * restored afterward.
+     *
+     * @param operation Non-null {@link Operation}
+     * @param <T>       Result type
+     *
+     * @return Result of the operation
+     *
+     * @throws IOException If an I/O error occurs or the channel was closed by {@link #close()}
+     */
+    public <T> T execute(@NonNull Operation<T> operation) throws IOException {
+        boolean interrupted = Thread.interrupted();
+
+        try {
+            ClosedChannelException lastException = null;
+
+            for (int attempt = 0; attempt < MAX_REOPEN_ATTEMPTS; attempt++) {
+                FileChannel currentChannel = channel;
+
+                try {
+                    return operation.execute(currentChannel);
+                } catch (ClosedChannelException exception) {
+                    // Interrupt during the operation closed the channel
+                    interrupted |= Thread.interrupted();
+
+                    if (closed) {
+                        throw exception;
+                    }
+
+                    lastException = exception;
+                    reopen(currentChannel);
+                }
+            }
+
+            throw lastException;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads bytes into specified {@link ByteBuffer} until it's full
+     *
+     * @param buffer   Non-null {@link ByteBuffer}
+     * @param position File position
+     *
+     * @throws IOException If an I/O error occurs or the file ends before the buffer is full
+     */
+    public void readFully(@NonNull ByteBuffer buffer, long position) throws IOException {
+        int startPosition = buffer.position();
+
+        execute(fileChannel -> {
+            buffer.position(startPosition);
+            long currentPosition = position;
+
+            while (buffer.hasRemaining()) {
+                int read = fileChannel.read(buffer, currentPosition);
+
+                if (read == -1) {
+                    throw new EOFException("Unexpected end of file " + path);
+                }
+
+                currentPosition += read;
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Writes all remaining bytes of specified {@link ByteBuffer}
+     *
+     * @param buffer   Non-null {@link ByteBuffer}
+     * @param position File position
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void writeFully(@NonNull ByteBuffer buffer, long position) throws IOException {
+        int startPosition = buffer.position();
+
+        execute(fileChannel -> {
+            buffer.position(startPosition);
+            long currentPosition = position;
+
+            while (buffer.hasRemaining()) {
+                currentPosition += fileChannel.write(buffer, currentPosition);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * See {@link FileChannel#size()}
+     *
+     * @return File size
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public long size() throws IOException {
+        return execute(FileChannel::size);
+    }
+
+    /**
+     * See {@link FileChannel#truncate(long)}
+     *
+     * @param size New size
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void truncate(long size) throws IOException {
+        execute(fileChannel -> fileChannel.truncate(size));
+    }
+
+    /**
+     * See {@link FileChannel#force(boolean)}. Forcing reopened channel covers writes done through the previous one, as both refer to the same
+     * file.
+     *
+     * @param metaData Whether file's metadata should be forced too
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void force(boolean metaData) throws IOException {
+        execute(fileChannel -> {
+            fileChannel.force(metaData);
+            return null;
+        });
+    }
+
+    /**
+     * Closes the channel. Following operations throw {@link ClosedChannelException}.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Determines if {@link #close()} was called
+     *
+     * @return True if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void reopen(FileChannel brokenChannel) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+
+        // Another thread may have reopened it already
+        if (channel == brokenChannel && !brokenChannel.isOpen()) {
+            channel = FileChannel.open(path, reopenOptions.toArray(new OpenOption[0]));
+        }
+    }
+
+    /**
+     * Operation on {@link FileChannel}
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+
+        /**
+         * Executes the operation
+         *
+         * @param channel Non-null {@link FileChannel}
+         *
+         * @return Result
+         *
+         * @throws IOException If an I/O error occurs
+         */
+        T execute(FileChannel channel) throws IOException;
+    }
+}
@@ -0,0 +1,17 @@
+package dev.mayuna.pumpk1n;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+import dev.mayuna.pumpk1n.api.GenerateTypeAdapter;
+import dev.mayuna.pumpk1n.api.ParentedDataElement;
+
+@GenerateTypeAdapter
+public class GeneratedNamingTestData extends ParentedDataElement {
+
+    public int someNumber = 71;
+
+    @Override
+    public GsonBuilder getGsonBuilder() {
+        return new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE);
+    }
+}
@@ -0,0 +1,15 @@
+package dev.mayuna.pumpk1n;
+
+import dev.mayuna.pumpk1n.api.GenerateTypeAdapter;
+import dev.mayuna.pumpk1n.api.ParentedDataElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@GenerateTypeAdapter
+public class GeneratedTestData extends ParentedDataElement {
+
+    public int someNumber = 71;
+    public String someString = "pumpkin";
+    public List<String> someList = new ArrayList<>();
+}
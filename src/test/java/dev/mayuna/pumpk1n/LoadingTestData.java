@@ -0,0 +1,14 @@
+package dev.mayuna.pumpk1n;
+
+import dev.mayuna.pumpk1n.api.ParentedDataElement;
+
+public class LoadingTestData extends ParentedDataElement {
+
+    public transient int anotherNumber;
+
+    @Override
+    public void onLoad() {
+        // Loads another element of the same holder
+        anotherNumber = getDataHolderParent().getDataElement(AnotherTestData.class).someNumber;
+    }
+}
@@ -1,18 +1,54 @@
 package dev.mayuna.pumpk1n;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import com.zaxxer.hikari.HikariConfig;
+import dev.mayuna.pumpk1n.api.Durability;
 import dev.mayuna.pumpk1n.api.Migratable;
 import dev.mayuna.pumpk1n.api.StorageHandler;
 import dev.mayuna.pumpk1n.impl.BufferedFolderStorageHandler;
 import dev.mayuna.pumpk1n.impl.FolderStorageHandler;
+import dev.mayuna.pumpk1n.impl.LogStructuredStorageHandler;
+import dev.mayuna.pumpk1n.impl.MappedFileStorageHandler;
+import dev.mayuna.pumpk1n.impl.PackFileStorageHandler;
+import dev.mayuna.pumpk1n.impl.SQLStorageHandler;
 import dev.mayuna.pumpk1n.impl.SQLiteStorageHandler;
+import dev.mayuna.pumpk1n.impl.WriteAheadLogStorageHandler;
 import dev.mayuna.pumpk1n.objects.DataHolder;
 import dev.mayuna.pumpk1n.util.BaseLogger;
+import dev.mayuna.pumpk1n.util.GeneratedTypeAdapters;
+import dev.mayuna.pumpk1n.util.PayloadFormat;
+import dev.mayuna.pumpk1n.util.SerializationBuffers;
+import dev.mayuna.pumpk1n.util.ShardLayout;
+import dev.mayuna.pumpk1n.util.SharedFileChannel;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,8 +56,14 @@ public class Pumpk1nTests {
 
     public static String FOLDER_STORAGE_PATH = "./data/";
     public static String BUFFERED_FOLDER_STORAGE_PATH = "./buffered_data/";
+    public static String SHARDED_FOLDER_STORAGE_PATH = "./sharded_data/";
+    public static String LOG_STORAGE_PATH = "./log_data/";
+    public static String MAPPED_FILE_STORAGE_PATH = "./mapped_data/data.map";
+    public static String PACK_FILE_STORAGE_PATH = "./pack_data/";
+    public static String WAL_STORAGE_PATH = "./wal_data/";
     public static String SQLITE_STORAGE_FOLDER_PATH = "./sqlite_data/";
     public static String SQLITE_STORAGE_PATH = SQLITE_STORAGE_FOLDER_PATH + "database.db";
+    public static String H2_JDBC_URL = "jdbc:h2:mem:pumpk1n;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
 
     public static List<Pumpk1n> pumpk1ns = new LinkedList<>();
 
@@ -84,7 +126,12 @@ public class Pumpk1nTests {
             if (pumpk1n.getStorageHandler() instanceof Migratable) {
                 ((Migratable) pumpk1n.getStorageHandler()).getAllHolderUUIDs().forEach(pumpk1n::deleteDataHolder);
             }
+
+            if (pumpk1n.getStorageHandler() instanceof SQLiteStorageHandler) {
+                ((SQLiteStorageHandler) pumpk1n.getStorageHandler()).close();
+            }
         });
+        pumpk1ns.clear();
 
         deleteAllIn(FOLDER_STORAGE_PATH);
         deleteAllIn(BUFFERED_FOLDER_STORAGE_PATH);
@@ -165,4 +212,1348 @@ public class Pumpk1nTests {
             });
         });
     }
+
+    @Test
+    public void testConcurrentDataElementCreation() throws InterruptedException {
+        DataHolder dataHolder = new DataHolder(pumpk1ns.get(0), UUID.randomUUID());
+        Set<AnotherTestData> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            threads.add(new Thread(() -> {
+                AnotherTestData anotherTestData = dataHolder.getOrCreateDataElement(AnotherTestData.class);
+
+                synchronized (instances) {
+                    instances.add(anotherTestData);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, instances.size());
+        assertEquals(dataHolder, instances.iterator().next().getDataHolderParent());
+    }
+
+    @Test
+    public void testDataElementLoadingAnotherInOnLoad() {
+        DataHolder dataHolder = new DataHolder(pumpk1ns.get(0), UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = 5;
+        dataHolder.getOrCreateDataElement(LoadingTestData.class);
+
+        DataHolder loadedDataHolder = DataHolder.loadFromJsonObject(pumpk1ns.get(0), dataHolder.getAsJsonObject());
+
+        assertEquals(5, loadedDataHolder.getDataElement(LoadingTestData.class).anotherNumber);
+        assertSame(loadedDataHolder.getDataElement(LoadingTestData.class), loadedDataHolder.getDataElement(LoadingTestData.class));
+    }
+
+    @Test
+    public void testConcurrentDataElementLoading() throws InterruptedException {
+        DataHolder dataHolder = new DataHolder(pumpk1ns.get(0), UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = 5;
+        dataHolder.getOrCreateDataElement(LoadingTestData.class);
+
+        DataHolder loadedDataHolder = DataHolder.loadFromJsonObject(pumpk1ns.get(0), dataHolder.getAsJsonObject());
+        Set<LoadingTestData> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Integer> loadedNumbers = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            threads.add(new Thread(() -> {
+                LoadingTestData loadingTestData = loadedDataHolder.getDataElement(LoadingTestData.class);
+                // Published instance has already been loaded
+                loadedNumbers.add(loadingTestData.anotherNumber);
+
+                synchronized (instances) {
+                    instances.add(loadingTestData);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, instances.size());
+        assertEquals(Collections.nCopies(16, 5), loadedNumbers);
+    }
+
+    @Test
+    public void testGeneratedTypeAdapter() {
+        assertNotNull(GeneratedTypeAdapters.getFactory(GeneratedTestData.class));
+        assertNull(GeneratedTypeAdapters.getFactory(TestData.class));
+
+        pumpk1ns.forEach(pumpk1n -> {
+            UUID uuid = UUID.randomUUID();
+            int randomNumber = new Random().nextInt();
+
+            DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+            GeneratedTestData generatedTestData = dataHolder.getOrCreateDataElement(GeneratedTestData.class);
+            generatedTestData.someNumber = randomNumber;
+            generatedTestData.someList.add("seed");
+            dataHolder.save();
+
+            pumpk1n.unloadDataHolder(uuid);
+
+            generatedTestData = pumpk1n.getOrLoadDataHolder(uuid).getDataElement(GeneratedTestData.class);
+
+            assertNotNull(generatedTestData);
+            assertEquals(randomNumber, generatedTestData.someNumber);
+            assertEquals("pumpkin", generatedTestData.someString);
+            assertEquals(Collections.singletonList("seed"), generatedTestData.someList);
+            assertNotNull(generatedTestData.getDataHolderParent());
+        });
+    }
+
+    @Test
+    public void testGeneratedTypeAdapterFallback() {
+        // Adapter registered by the user wins over the generated one
+        Gson customGson = GeneratedTypeAdapters.register(GeneratedTestData.class, new GsonBuilder().registerTypeAdapter(
+                GeneratedTestData.class, (JsonSerializer<GeneratedTestData>) (src, typeOfSrc, context) -> new JsonPrimitive("custom")
+        )).create();
+
+        assertEquals("\"custom\"", customGson.toJson(new GeneratedTestData()));
+
+        // GeneratedTestData is not exposedOnly, so reflection is used, which serializes no fields without @Expose
+        Gson exposedOnlyGson = GeneratedTypeAdapters.register(GeneratedTestData.class, new GsonBuilder().excludeFieldsWithoutExposeAnnotation()).create();
+
+        assertEquals("{}", exposedOnlyGson.toJson(new GeneratedTestData()));
+    }
+
+    @Test
+    public void testGeneratedTypeAdapterFieldNaming() {
+        assertNotNull(GeneratedTypeAdapters.getFactory(GeneratedNamingTestData.class));
+
+        // Generated adapter does not know the FieldNamingPolicy, so reflection is used
+        DataHolder dataHolder = new DataHolder(pumpk1ns.get(0), UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(GeneratedNamingTestData.class).someNumber = 5;
+
+        JsonObject jsonObject = dataHolder.getAsJsonObject();
+        assertTrue(jsonObject.toString().contains("\"SomeNumber\":5"));
+
+        DataHolder loadedDataHolder = DataHolder.loadFromJsonObject(pumpk1ns.get(0), jsonObject);
+        assertEquals(5, loadedDataHolder.getDataElement(GeneratedNamingTestData.class).someNumber);
+    }
+
+    @Test
+    public void testSnapshotIsolatedFromInPlaceChanges() {
+        DataHolder dataHolder = new DataHolder(pumpk1ns.get(0), UUID.randomUUID());
+        AnotherTestData anotherTestData = dataHolder.getOrCreateDataElement(AnotherTestData.class);
+        anotherTestData.someNumber = 1;
+
+        DataHolder snapshot = dataHolder.snapshot();
+        anotherTestData.someNumber = 2;
+
+        AnotherTestData snapshotTestData = snapshot.getDataElement(AnotherTestData.class);
+
+        assertNotSame(anotherTestData, snapshotTestData);
+        assertEquals(1, snapshotTestData.someNumber);
+        assertSame(snapshot, snapshotTestData.getDataHolderParent());
+    }
+
+    @Test
+    public void testSnapshot() {
+        pumpk1ns.forEach(pumpk1n -> {
+            UUID uuid = UUID.randomUUID();
+
+            DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+            AnotherTestData anotherTestData = new AnotherTestData();
+            anotherTestData.someNumber = 1;
+            dataHolder.addOrReplaceDataElement(anotherTestData);
+
+            DataHolder snapshot = dataHolder.snapshot();
+
+            assertTrue(snapshot.isSnapshot());
+            assertSame(dataHolder, pumpk1n.getDataHolder(uuid));
+
+            AnotherTestData replacedTestData = new AnotherTestData();
+            replacedTestData.someNumber = 2;
+            dataHolder.addOrReplaceDataElement(replacedTestData);
+
+            pumpk1n.saveDataHolder(snapshot);
+            pumpk1n.unloadDataHolder(uuid);
+
+            assertEquals(1, pumpk1n.getOrLoadDataHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+        });
+    }
+
+    @Test
+    public void testParallelSerialization() {
+        Pumpk1n pumpk1n = pumpk1ns.get(0);
+        DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(TestData.class);
+        dataHolder.getOrCreateDataElement(AnotherTestData.class);
+        dataHolder.getOrCreateDataElement(GeneratedTestData.class);
+
+        String sequentialJson = dataHolder.getAsJsonObject().toString();
+
+        pumpk1n.setParallelSerializationThreshold(2);
+        String parallelJson = dataHolder.getAsJsonObject().toString();
+        pumpk1n.setParallelSerializationThreshold(0);
+
+        assertEquals(sequentialJson, parallelJson);
+    }
+
+    @Test
+    public void testStreamedSerialization() {
+        Pumpk1n pumpk1n = pumpk1ns.get(0);
+        DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(TestData.class);
+        dataHolder.getOrCreateDataElement(GeneratedTestData.class).someList.add("\u017e\u20ac");
+
+        String json = SerializationBuffers.toJsonString(dataHolder);
+
+        assertEquals(dataHolder.getAsJsonObject(), JsonParser.parseString(json));
+        assertEquals(json, SerializationBuffers.toJsonString(DataHolder.loadFromJsonObject(pumpk1n, JsonParser.parseString(json).getAsJsonObject())));
+    }
+
+    @Test
+    public void testBufferedFolderTornWrite() throws IOException {
+        Pumpk1n pumpk1n = new Pumpk1n(new BufferedFolderStorageHandler(BUFFERED_FOLDER_STORAGE_PATH, 3));
+        pumpk1n.prepareStorage();
+        pumpk1ns.add(pumpk1n);
+
+        UUID uuid = UUID.randomUUID();
+        DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+        AnotherTestData anotherTestData = dataHolder.getOrCreateDataElement(AnotherTestData.class);
+
+        anotherTestData.someNumber = 1;
+        dataHolder.save();
+        anotherTestData.someNumber = 2;
+        dataHolder.save();
+
+        // Corrupts last byte of the newest generation
+        Path newestGeneration = Paths.get(BUFFERED_FOLDER_STORAGE_PATH + uuid + ".json");
+        byte[] bytes = Files.readAllBytes(newestGeneration);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(newestGeneration, bytes);
+
+        pumpk1n.unloadDataHolder(uuid);
+
+        assertEquals(1, pumpk1n.getOrLoadDataHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+
+        // Header of the newest generation is unreadable, next save must still be newer than older generations
+        uuid = UUID.randomUUID();
+        dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+        anotherTestData = dataHolder.getOrCreateDataElement(AnotherTestData.class);
+
+        for (int i = 1; i <= 3; i++) {
+            anotherTestData.someNumber = i;
+            dataHolder.save();
+        }
+
+        Files.write(Paths.get(BUFFERED_FOLDER_STORAGE_PATH + uuid + ".json"), "garbage".getBytes());
+
+        anotherTestData.someNumber = 4;
+        dataHolder.save();
+        pumpk1n.unloadDataHolder(uuid);
+
+        assertEquals(4, pumpk1n.getOrLoadDataHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+    }
+
+    @Test
+    public void testBufferedFolderHolderListing() throws IOException {
+        BufferedFolderStorageHandler storageHandler = new BufferedFolderStorageHandler(BUFFERED_FOLDER_STORAGE_PATH, 3);
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+        pumpk1ns.add(pumpk1n);
+
+        UUID uuid = UUID.randomUUID();
+        UUID interruptedUUID = UUID.randomUUID();
+
+        for (int i = 0; i < 3; i++) {
+            pumpk1n.getOrCreateDataHolder(uuid).save();
+            pumpk1n.getOrCreateDataHolder(interruptedUUID).save();
+        }
+
+        // Save interrupted after rotating the generations
+        Files.delete(Paths.get(BUFFERED_FOLDER_STORAGE_PATH + interruptedUUID + ".json"));
+
+        List<UUID> streamedUUIDs;
+
+        try (Stream<UUID> stream = storageHandler.streamAllHolderUUIDs()) {
+            streamedUUIDs = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(2, streamedUUIDs.size());
+        assertEquals(new HashSet<>(Arrays.asList(uuid, interruptedUUID)), new HashSet<>(streamedUUIDs));
+        assertEquals(2, storageHandler.getAllHolderUUIDs().size());
+    }
+
+    @Test
+    public void testShardedFolderRelayout() throws IOException {
+        try {
+            Pumpk1n flatPumpk1n = new Pumpk1n(new FolderStorageHandler(SHARDED_FOLDER_STORAGE_PATH));
+            flatPumpk1n.prepareStorage();
+
+            Set<UUID> uuids = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                UUID uuid = UUID.randomUUID();
+                flatPumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                flatPumpk1n.getDataHolder(uuid).save();
+                uuids.add(uuid);
+            }
+
+            // Leftover of interrupted save
+            Path tempFile = Paths.get(SHARDED_FOLDER_STORAGE_PATH, uuids.iterator().next() + ".1.tmp");
+            Files.write(tempFile, new byte[]{'{'});
+
+            FolderStorageHandler shardedStorageHandler = new FolderStorageHandler(SHARDED_FOLDER_STORAGE_PATH, ShardLayout.of(2, 2));
+            Pumpk1n shardedPumpk1n = new Pumpk1n(shardedStorageHandler);
+            shardedPumpk1n.prepareStorage();
+
+            assertEquals(10, shardedStorageHandler.relayout());
+            assertFalse(Files.exists(tempFile));
+            assertEquals(uuids, new HashSet<>(shardedStorageHandler.getAllHolderUUIDs()));
+
+            try (Stream<UUID> streamedUUIDs = shardedStorageHandler.streamAllHolderUUIDs()) {
+                assertEquals(uuids, streamedUUIDs.collect(Collectors.toSet()));
+            }
+
+            UUID uuid = uuids.iterator().next();
+            String uuidString = uuid.toString();
+            assertTrue(Files.exists(Paths.get(SHARDED_FOLDER_STORAGE_PATH, uuidString.substring(0, 2), uuidString.substring(2, 4), uuidString + ".json")));
+            assertNotNull(shardedPumpk1n.getOrLoadDataHolder(uuid).getDataElement(AnotherTestData.class));
+        } finally {
+            deleteRecursively(SHARDED_FOLDER_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testLogStructuredStorage() throws IOException {
+        LogStructuredStorageHandler.Settings settings = LogStructuredStorageHandler.Settings.Builder.create()
+                                                                                                    .setFolderPath(LOG_STORAGE_PATH)
+                                                                                                    .setMaxSegmentSize(256)
+                                                                                                    .setCompactionIntervalMillis(0)
+                                                                                                    .build();
+
+        try {
+            LogStructuredStorageHandler storageHandler = new LogStructuredStorageHandler(settings);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            List<UUID> uuids = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                UUID uuid = UUID.randomUUID();
+                pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                pumpk1n.getDataHolder(uuid).save();
+                pumpk1n.getDataHolder(uuid).getDataElement(AnotherTestData.class).someNumber = i * 10;
+                pumpk1n.getDataHolder(uuid).save();
+                uuids.add(uuid);
+            }
+
+            pumpk1n.deleteDataHolder(uuids.get(0));
+
+            assertTrue(storageHandler.getDeadRatio() > 0);
+            assertTrue(storageHandler.compact() > 1);
+            assertEquals(0, storageHandler.getDeadRatio());
+            storageHandler.close();
+
+            // Index is rebuilt from hint files and the active segment
+            LogStructuredStorageHandler reopenedStorageHandler = new LogStructuredStorageHandler(settings);
+            Pumpk1n reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertEquals(new HashSet<>(uuids.subList(1, 10)), new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+            assertNull(reopenedPumpk1n.getOrLoadDataHolder(uuids.get(0)));
+
+            for (int i = 1; i < 10; i++) {
+                assertEquals(i * 10, reopenedPumpk1n.getOrLoadDataHolder(uuids.get(i)).getDataElement(AnotherTestData.class).someNumber);
+            }
+
+            reopenedStorageHandler.close();
+        } finally {
+            deleteRecursively(LOG_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testSharedFileChannelInterrupt() throws IOException {
+        Path path = Paths.get(LOG_STORAGE_PATH, "shared.bin");
+
+        try {
+            Files.createDirectories(path.getParent());
+            SharedFileChannel channel = SharedFileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.writeFully(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), 0);
+
+            // Interrupt during the operation closes the underlying channel, the operation is retried on reopened one
+            AtomicInteger attempts = new AtomicInteger();
+            long size = channel.execute(fileChannel -> {
+                if (attempts.getAndIncrement() == 0) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return fileChannel.size();
+            });
+
+            assertEquals(4, size);
+            assertEquals(2, attempts.get());
+            assertTrue(Thread.interrupted());
+
+            // Already interrupted caller does not close the channel
+            Thread.currentThread().interrupt();
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            channel.readFully(buffer, 0);
+
+            assertTrue(Thread.interrupted());
+            assertArrayEquals(new byte[] {1, 2, 3, 4}, buffer.array());
+
+            channel.close();
+            assertThrows(ClosedChannelException.class, channel::size);
+        } finally {
+            deleteRecursively(LOG_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testMappedFileStorage() throws IOException {
+        try {
+            MappedFileStorageHandler storageHandler = new MappedFileStorageHandler(MAPPED_FILE_STORAGE_PATH, 1024);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            List<UUID> uuids = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                UUID uuid = UUID.randomUUID();
+                pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                pumpk1n.getDataHolder(uuid).save();
+                uuids.add(uuid);
+            }
+
+            // File had to grow and be remapped
+            assertTrue(storageHandler.getFileSize() > 1024);
+
+            pumpk1n.getDataHolder(uuids.get(1)).getDataElement(AnotherTestData.class).someNumber = 100;
+            pumpk1n.getDataHolder(uuids.get(1)).save();
+            pumpk1n.deleteDataHolder(uuids.get(0));
+            storageHandler.close();
+
+            MappedFileStorageHandler reopenedStorageHandler = new MappedFileStorageHandler(MAPPED_FILE_STORAGE_PATH, 1024);
+            Pumpk1n reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertEquals(new HashSet<>(uuids.subList(1, 20)), new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+            assertEquals(100, reopenedPumpk1n.getOrLoadDataHolder(uuids.get(1)).getDataElement(AnotherTestData.class).someNumber);
+            assertEquals(19, reopenedPumpk1n.getOrLoadDataHolder(uuids.get(19)).getDataElement(AnotherTestData.class).someNumber);
+
+            reopenedStorageHandler.close();
+        } finally {
+            deleteRecursively(Paths.get(MAPPED_FILE_STORAGE_PATH).getParent().toString());
+        }
+    }
+
+    @Test
+    public void testMappedFileTornHeader() throws IOException {
+        try {
+            MappedFileStorageHandler storageHandler = new MappedFileStorageHandler(MAPPED_FILE_STORAGE_PATH, 1024);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            List<UUID> uuids = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                UUID uuid = UUID.randomUUID();
+                pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                pumpk1n.getDataHolder(uuid).save();
+                uuids.add(uuid);
+            }
+
+            storageHandler.close();
+
+            // Tears size of the last extent's header
+            Path path = Paths.get(MAPPED_FILE_STORAGE_PATH);
+            ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+            int offset = 64;
+            int lastOffset = offset;
+
+            while (file.getInt(offset) != 0) {
+                lastOffset = offset;
+                offset += file.getInt(offset + 4);
+            }
+
+            file.putInt(lastOffset + 4, 3);
+            Files.write(path, file.array());
+
+            MappedFileStorageHandler reopenedStorageHandler = new MappedFileStorageHandler(MAPPED_FILE_STORAGE_PATH, 1024);
+            Pumpk1n reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertEquals(new HashSet<>(uuids.subList(0, 2)), new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+
+            // Space after the torn header is reused
+            reopenedPumpk1n.getOrCreateDataHolder(uuids.get(2)).getOrCreateDataElement(AnotherTestData.class).someNumber = 2;
+            reopenedPumpk1n.getDataHolder(uuids.get(2)).save();
+            reopenedStorageHandler.close();
+
+            reopenedStorageHandler = new MappedFileStorageHandler(MAPPED_FILE_STORAGE_PATH, 1024);
+            reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertEquals(new HashSet<>(uuids), new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+            assertEquals(2, reopenedPumpk1n.getOrLoadDataHolder(uuids.get(2)).getDataElement(AnotherTestData.class).someNumber);
+
+            reopenedStorageHandler.close();
+        } finally {
+            deleteRecursively(Paths.get(MAPPED_FILE_STORAGE_PATH).getParent().toString());
+        }
+    }
+
+    @Test
+    public void testPackFileStorage() throws IOException {
+        PackFileStorageHandler.Settings settings = PackFileStorageHandler.Settings.Builder.create()
+                                                                                          .setFolderPath(PACK_FILE_STORAGE_PATH)
+                                                                                          .setPackCount(4)
+                                                                                          .setRepackIntervalMillis(0)
+                                                                                          .build();
+
+        try {
+            PackFileStorageHandler storageHandler = new PackFileStorageHandler(settings);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            List<UUID> uuids = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                UUID uuid = UUID.randomUUID();
+                pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                pumpk1n.getDataHolder(uuid).save();
+                pumpk1n.getDataHolder(uuid).getDataElement(AnotherTestData.class).someNumber = i * 10;
+                pumpk1n.getDataHolder(uuid).save();
+                uuids.add(uuid);
+            }
+
+            pumpk1n.deleteDataHolder(uuids.get(0));
+
+            try (Stream<Path> files = Files.list(Paths.get(PACK_FILE_STORAGE_PATH))) {
+                assertTrue(files.count() <= 4); // 20 holders, at most 4 packs
+            }
+
+            assertTrue(storageHandler.repack() > 0);
+            assertEquals(0, storageHandler.getDeadRatio());
+
+            // Interrupted caller does not break the pack
+            Thread.currentThread().interrupt();
+            pumpk1n.getDataHolder(uuids.get(1)).save();
+            assertTrue(Thread.interrupted());
+            storageHandler.close();
+
+            PackFileStorageHandler reopenedStorageHandler = new PackFileStorageHandler(settings);
+            Pumpk1n reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertEquals(new HashSet<>(uuids.subList(1, 20)), new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+            assertNull(reopenedPumpk1n.getOrLoadDataHolder(uuids.get(0)));
+
+            for (int i = 1; i < 20; i++) {
+                assertEquals(i * 10, reopenedPumpk1n.getOrLoadDataHolder(uuids.get(i)).getDataElement(AnotherTestData.class).someNumber);
+            }
+
+            reopenedStorageHandler.close();
+        } finally {
+            deleteRecursively(PACK_FILE_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testWriteAheadLog() throws IOException, InterruptedException {
+        WriteAheadLogStorageHandler.Settings settings = WriteAheadLogStorageHandler.Settings.Builder.create()
+                                                                                                    .setFolderPath(WAL_STORAGE_PATH + "log/")
+                                                                                                    .setCheckpointIntervalMillis(0)
+                                                                                                    .build();
+
+        try {
+            WriteAheadLogStorageHandler storageHandler = new WriteAheadLogStorageHandler(new BufferedFolderStorageHandler(WAL_STORAGE_PATH + "data/", 2), settings);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            Set<UUID> uuids = ConcurrentHashMap.newKeySet();
+            List<Thread> threads = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        UUID uuid = UUID.randomUUID();
+                        pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = j;
+                        pumpk1n.getDataHolder(uuid).save();
+                        uuids.add(uuid);
+                    }
+                });
+
+                thread.start();
+                threads.add(thread);
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Interrupted caller does not break the log
+            Thread.currentThread().interrupt();
+            pumpk1n.getDataHolder(uuids.iterator().next()).save();
+            assertTrue(Thread.interrupted());
+
+            // Nothing was applied yet, loads are served from the log
+            assertEquals(40, storageHandler.getPendingChangeCount());
+            assertEquals(uuids, new HashSet<>(storageHandler.getAllHolderUUIDs()));
+
+            // Simulates crash, the log is replayed by another instance
+            WriteAheadLogStorageHandler recoveredStorageHandler = new WriteAheadLogStorageHandler(new BufferedFolderStorageHandler(WAL_STORAGE_PATH + "data/", 2), settings);
+            Pumpk1n recoveredPumpk1n = new Pumpk1n(recoveredStorageHandler);
+            recoveredPumpk1n.prepareStorage();
+
+            assertEquals(0, recoveredStorageHandler.getPendingChangeCount());
+            assertEquals(uuids, new HashSet<>(recoveredStorageHandler.getAllHolderUUIDs()));
+            assertNotNull(recoveredPumpk1n.getOrLoadDataHolder(uuids.iterator().next()).getDataElement(AnotherTestData.class));
+
+            // Checkpoint keeps the underlying storage forced
+            recoveredStorageHandler.getStorageHandler().setDurability(Durability.OS_FLUSH);
+            UUID removedUUID = uuids.iterator().next();
+
+            assertTrue(recoveredStorageHandler.removeHolder(removedUUID));
+            assertFalse(recoveredStorageHandler.removeHolder(removedUUID));
+            assertFalse(recoveredStorageHandler.removeHolder(UUID.randomUUID()));
+
+            recoveredStorageHandler.checkpoint();
+
+            assertEquals(Durability.FSYNC, recoveredStorageHandler.getStorageHandler().getDurability());
+            assertFalse(recoveredStorageHandler.holderExists(removedUUID));
+            assertFalse(recoveredStorageHandler.getStorageHandler().holderExists(removedUUID));
+
+            recoveredStorageHandler.close();
+        } finally {
+            deleteRecursively(WAL_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testAsyncSave() throws IOException {
+        Pumpk1n pumpk1n = new Pumpk1n(new FolderStorageHandler(FOLDER_STORAGE_PATH));
+        pumpk1n.prepareStorage();
+        pumpk1ns.add(pumpk1n);
+
+        List<UUID> uuids = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            UUID uuid = UUID.randomUUID();
+            DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+            dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+            futures.add(dataHolder.saveAsync());
+            uuids.add(uuid);
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, pumpk1n.getStorageHandler().loadHolderAsync(uuids.get(i)).join().getDataElement(AnotherTestData.class).someNumber);
+        }
+
+        assertNull(pumpk1n.getStorageHandler().loadHolderAsync(UUID.randomUUID()).join());
+
+        // Overlapping saves of the same holder never expose partially written file
+        DataHolder dataHolder = pumpk1n.getDataHolder(uuids.get(0));
+        futures.clear();
+
+        for (int i = 0; i < 20; i++) {
+            futures.add(dataHolder.saveAsync());
+            assertEquals(0, pumpk1n.getStorageHandler().loadHolderAsync(uuids.get(0)).join().getDataElement(AnotherTestData.class).someNumber);
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        try (Stream<Path> files = Files.list(Paths.get(FOLDER_STORAGE_PATH))) {
+            assertTrue(files.noneMatch(path -> path.toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testForcedBufferedFolderSaves() throws IOException {
+        try {
+            BufferedFolderStorageHandler storageHandler = new BufferedFolderStorageHandler(SHARDED_FOLDER_STORAGE_PATH, 2, ShardLayout.of(1, 2));
+            storageHandler.setDurability(Durability.FSYNC);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            UUID uuid = UUID.randomUUID();
+            DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+
+            for (int i = 1; i <= 3; i++) {
+                dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+                dataHolder.save();
+            }
+
+            assertEquals(3, storageHandler.loadHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+            assertTrue(Files.exists(Paths.get(SHARDED_FOLDER_STORAGE_PATH, uuid.toString().substring(0, 2), uuid + "_1.json")));
+        } finally {
+            deleteRecursively(SHARDED_FOLDER_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testGroupCommitDurability() throws IOException {
+        LogStructuredStorageHandler.Settings settings = LogStructuredStorageHandler.Settings.Builder.create()
+                                                                                                    .setFolderPath(LOG_STORAGE_PATH)
+                                                                                                    .setCompactionIntervalMillis(0)
+                                                                                                    .build();
+
+        try {
+            LogStructuredStorageHandler storageHandler = new LogStructuredStorageHandler(settings);
+            storageHandler.setDurability(Durability.GROUP_COMMIT);
+            Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+            pumpk1n.prepareStorage();
+
+            List<UUID> uuids = saveHoldersConcurrently(pumpk1n, 200);
+
+            // Concurrent saves share forces
+            assertTrue(storageHandler.getSyncCount() > 0);
+            assertTrue(storageHandler.getSyncCount() < 200);
+            storageHandler.close();
+
+            LogStructuredStorageHandler reopenedStorageHandler = new LogStructuredStorageHandler(settings);
+            Pumpk1n reopenedPumpk1n = new Pumpk1n(reopenedStorageHandler);
+            reopenedPumpk1n.prepareStorage();
+
+            assertHolderNumbers(reopenedStorageHandler, uuids, 0);
+            reopenedStorageHandler.close();
+        } finally {
+            deleteRecursively(LOG_STORAGE_PATH);
+        }
+    }
+
+    @Test
+    public void testSQLiteGroupCommit() {
+        SQLiteStorageHandler storageHandler = new SQLiteStorageHandler(SQLiteStorageHandler.Settings.Builder.highThroughput()
+                                                                                                            .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "group_commit.db")
+                                                                                                            .setSaveBatchWindowMicros(1000)
+                                                                                                            .build());
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            List<UUID> uuids = saveHoldersConcurrently(pumpk1n, 50);
+
+            // Concurrent saves share transactions
+            assertTrue(storageHandler.getSaveBatchCount() > 0);
+            assertTrue(storageHandler.getSaveBatchCount() < 50);
+            assertTrue(pumpk1n.deleteDataHolder(uuids.get(0)));
+
+            // Interrupted caller waits for its commit and keeps the interrupt
+            Thread.currentThread().interrupt();
+            pumpk1n.getDataHolder(uuids.get(1)).save();
+            assertTrue(Thread.interrupted());
+
+            assertEquals(49, storageHandler.getAllHolderUUIDs().size());
+            assertNull(storageHandler.loadHolder(uuids.get(0)));
+            assertHolderNumbers(storageHandler, uuids, 1);
+        } finally {
+            storageHandler.close();
+        }
+
+        // Group commit durability enables group commit even if the settings do not
+        SQLiteStorageHandler groupCommitStorageHandler = new SQLiteStorageHandler();
+        assertEquals(1, groupCommitStorageHandler.getMaxSaveBatchSize());
+        groupCommitStorageHandler.setDurability(Durability.GROUP_COMMIT);
+        assertEquals(SQLiteStorageHandler.GROUP_COMMIT_MAX_SAVE_BATCH_SIZE, groupCommitStorageHandler.getMaxSaveBatchSize());
+    }
+
+    @Test
+    public void testSQLiteFailingSaveBatch() {
+        SQLiteStorageHandler.Settings settings = SQLiteStorageHandler.Settings.Builder.highThroughput()
+                                                                                      .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "failing_batch.db")
+                                                                                      .setSaveBatchWindowMicros(1000)
+                                                                                      .build();
+        InspectableSQLiteStorageHandler storageHandler = new InspectableSQLiteStorageHandler(settings);
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            storageHandler.failSaveBatches = true;
+            Map<UUID, CompletableFuture<Void>> saves = startConcurrentSaves(pumpk1n, 20);
+
+            // Every save of a failed batch fails, not just the leader's
+            for (Map.Entry<UUID, CompletableFuture<Void>> save : saves.entrySet()) {
+                assertThrows(CompletionException.class, save.getValue()::join);
+                assertNull(storageHandler.loadHolder(save.getKey()));
+            }
+
+            // Error thrown by the leader does not leave the others parked
+            storageHandler.failSaveBatches = false;
+            storageHandler.errorSaveBatches = true;
+
+            for (CompletableFuture<Void> save : startConcurrentSaves(pumpk1n, 20).values()) {
+                assertThrows(CompletionException.class, save::join);
+            }
+
+            storageHandler.errorSaveBatches = false;
+            List<UUID> uuids = saveHoldersConcurrently(pumpk1n, 20);
+            assertHolderNumbers(storageHandler, uuids, 0);
+        } finally {
+            storageHandler.close();
+        }
+    }
+
+    @Test
+    public void testSQLiteLoadDuringSave() throws InterruptedException {
+        SQLiteStorageHandler.Settings settings = SQLiteStorageHandler.Settings.Builder.create()
+                                                                                      .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "load_during_save.db")
+                                                                                      .setJournalMode(SQLiteStorageHandler.Settings.JournalMode.WAL)
+                                                                                      .build();
+        InspectableSQLiteStorageHandler storageHandler = new InspectableSQLiteStorageHandler(settings);
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            UUID uuid = UUID.randomUUID();
+            pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = 7;
+            pumpk1n.getDataHolder(uuid).save();
+
+            // In WAL mode, loads do not wait for the save in progress
+            AtomicReference<DataHolder> loadedDataHolder = new AtomicReference<>();
+            assertTrue(storageHandler.runDuringSave(() -> loadedDataHolder.set(storageHandler.loadHolder(uuid)), 5000));
+            assertEquals(7, loadedDataHolder.get().getDataElement(AnotherTestData.class).someNumber);
+        } finally {
+            storageHandler.close();
+        }
+    }
+
+    @Test
+    public void testSQLiteTuning() throws SQLException {
+        SQLiteStorageHandler.Settings settings = SQLiteStorageHandler.Settings.Builder.highThroughput()
+                                                                                      .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "tuning.db")
+                                                                                      .build();
+        InspectableSQLiteStorageHandler storageHandler = new InspectableSQLiteStorageHandler(settings);
+        storageHandler.prepareStorage();
+
+        try {
+            assertEquals(Collections.singleton("wal"), storageHandler.queryPragma("journal_mode"));
+            assertEquals(Collections.singleton("1"), storageHandler.queryPragma("synchronous")); // NORMAL
+            assertEquals(Collections.singleton(String.valueOf(-64 * 1024)), storageHandler.queryPragma("cache_size"));
+        } finally {
+            storageHandler.close();
+        }
+    }
+
+    @Test
+    public void testSQLiteDurabilityChange() throws SQLException {
+        SQLiteStorageHandler.Settings settings = SQLiteStorageHandler.Settings.Builder.create()
+                                                                                      .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "durability.db")
+                                                                                      .build();
+        InspectableSQLiteStorageHandler storageHandler = new InspectableSQLiteStorageHandler(settings);
+        storageHandler.prepareStorage();
+
+        try {
+            assertEquals(Collections.singleton("2"), storageHandler.queryPragma("synchronous")); // FULL
+
+            // Applied to connections which are already open
+            storageHandler.setDurability(Durability.NONE);
+            assertEquals(Collections.singleton("0"), storageHandler.queryPragma("synchronous")); // OFF
+        } finally {
+            storageHandler.close();
+        }
+    }
+
+    @Test
+    public void testSQLiteMaintenance() throws SQLException {
+        SQLiteStorageHandler.Settings settings = SQLiteStorageHandler.Settings.Builder.create()
+                                                                                      .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "maintenance.db")
+                                                                                      .setJournalMode(SQLiteStorageHandler.Settings.JournalMode.WAL)
+                                                                                      .build();
+        InspectableSQLiteStorageHandler storageHandler = new InspectableSQLiteStorageHandler(settings);
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            // Background maintenance is disabled by default, so new databases are not switched to incremental auto-vacuum
+            assertEquals(Collections.singleton("0"), storageHandler.queryPragma("auto_vacuum")); // NONE
+            saveHoldersConcurrently(pumpk1n, 10);
+
+            for (SQLiteStorageHandler.MaintenanceTask task : SQLiteStorageHandler.MaintenanceTask.values()) {
+                String result = storageHandler.runMaintenanceTask(task);
+                SQLiteStorageHandler.MaintenanceMetrics metrics = storageHandler.getMaintenanceMetrics().get(task);
+
+                assertEquals(1, metrics.getRunCount());
+                assertEquals(result, metrics.getLastResult());
+            }
+
+            assertEquals("ok", storageHandler.getMaintenanceMetrics().get(SQLiteStorageHandler.MaintenanceTask.INTEGRITY_CHECK).getLastResult());
+        } finally {
+            storageHandler.close();
+        }
+
+        SQLiteStorageHandler.Settings maintainedSettings = SQLiteStorageHandler.Settings.Builder.create()
+                                                                                                .setCustomJDBCUrl("jdbc:sqlite:" + SQLITE_STORAGE_FOLDER_PATH + "maintained.db")
+                                                                                                .setMaintenanceIntervalMillis(60_000)
+                                                                                                .build();
+        InspectableSQLiteStorageHandler maintainedStorageHandler = new InspectableSQLiteStorageHandler(maintainedSettings);
+        maintainedStorageHandler.prepareStorage();
+
+        try {
+            assertEquals(Collections.singleton("2"), maintainedStorageHandler.queryPragma("auto_vacuum")); // INCREMENTAL
+        } finally {
+            maintainedStorageHandler.close();
+        }
+    }
+
+    @Test
+    public void testPayloadFormats() {
+        Pumpk1n pumpk1n = pumpk1ns.get(0);
+        DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(UUID.randomUUID());
+        dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = 42;
+
+        for (PayloadFormat payloadFormat : PayloadFormat.values()) {
+            byte[] payload = payloadFormat.encode(dataHolder);
+            DataHolder decodedDataHolder = DataHolder.loadFromJsonObject(pumpk1n, PayloadFormat.decode(payload));
+
+            assertEquals(dataHolder.getUuid(), decodedDataHolder.getUuid());
+            assertEquals(42, decodedDataHolder.getDataElement(AnotherTestData.class).someNumber);
+        }
+
+        assertEquals(0x78, PayloadFormat.COMPRESSED_BLOB.encode(dataHolder)[0] & 0xFF);
+    }
+
+    @Test
+    public void testSQLBinaryKeys() {
+        SQLStorageHandler storageHandler = createSQLStorageHandler(SQLStorageHandler.Settings.Builder.create()
+                                                                                                     .setTableName("binary_keys")
+                                                                                                     .setPayloadFormat(PayloadFormat.BLOB)
+                                                                                                     .setKeyFormat(SQLStorageHandler.KeyFormat.BINARY)
+                                                                                                     .build());
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            UUID uuid = UUID.randomUUID();
+            DataHolder dataHolder = pumpk1n.getOrCreateDataHolder(uuid);
+            dataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = 1;
+            dataHolder.save();
+
+            // Upsert updates the existing row
+            dataHolder.getDataElement(AnotherTestData.class).someNumber = 2;
+            dataHolder.save();
+
+            assertEquals(Collections.singletonList(uuid), storageHandler.getAllHolderUUIDs());
+            assertEquals(2, storageHandler.loadHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+
+            // Formats of the existing table win over the settings
+            SQLStorageHandler jsonStorageHandler = createSQLStorageHandler(SQLStorageHandler.Settings.Builder.create()
+                                                                                                             .setTableName("binary_keys")
+                                                                                                             .build());
+            new Pumpk1n(jsonStorageHandler).prepareStorage();
+
+            try {
+                assertEquals(SQLStorageHandler.KeyFormat.BINARY, jsonStorageHandler.getKeyFormat());
+                assertTrue(jsonStorageHandler.isBinaryDataColumn());
+                assertEquals(2, jsonStorageHandler.loadHolder(uuid).getDataElement(AnotherTestData.class).someNumber);
+            } finally {
+                jsonStorageHandler.closePool();
+            }
+
+            assertTrue(storageHandler.removeHolder(uuid));
+            assertNull(storageHandler.loadHolder(uuid));
+        } finally {
+            storageHandler.closePool();
+        }
+    }
+
+    @Test
+    public void testSQLConvertToBinaryKeys() {
+        SQLStorageHandler storageHandler = createSQLStorageHandler(SQLStorageHandler.Settings.Builder.create()
+                                                                                                     .setTableName("converted_keys")
+                                                                                                     .setPayloadFormat(PayloadFormat.BLOB)
+                                                                                                     .build());
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            List<UUID> uuids = saveHoldersConcurrently(pumpk1n, 300);
+            List<UUID> insertedUuids = Collections.synchronizedList(new ArrayList<>());
+            assertEquals(SQLStorageHandler.KeyFormat.VARCHAR, storageHandler.getKeyFormat());
+
+            // Saves and removals run while rows are copied
+            CompletableFuture<Void> saves = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 100; i++) {
+                    pumpk1n.getDataHolder(uuids.get(i)).getDataElement(AnotherTestData.class).someNumber = i + 1000;
+                    pumpk1n.getDataHolder(uuids.get(i)).save();
+                }
+            });
+            CompletableFuture<Void> removals = CompletableFuture.runAsync(() -> {
+                for (int i = 100; i < 150; i++) {
+                    assertTrue(pumpk1n.deleteDataHolder(uuids.get(i)));
+                }
+            });
+            CompletableFuture<Void> inserts = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 50; i++) {
+                    UUID uuid = UUID.randomUUID();
+                    pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = -i;
+                    pumpk1n.getDataHolder(uuid).save();
+                    insertedUuids.add(uuid);
+                }
+            });
+
+            assertTrue(storageHandler.convertToBinaryKeys(7) > 0);
+            CompletableFuture.allOf(saves, removals, inserts).join();
+
+            assertEquals(SQLStorageHandler.KeyFormat.BINARY, storageHandler.getKeyFormat());
+
+            Set<UUID> expectedUuids = new HashSet<>(uuids);
+            expectedUuids.removeAll(uuids.subList(100, 150));
+            expectedUuids.addAll(insertedUuids);
+            assertEquals(expectedUuids, new HashSet<>(storageHandler.getAllHolderUUIDs()));
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i + 1000, storageHandler.loadHolder(uuids.get(i)).getDataElement(AnotherTestData.class).someNumber);
+            }
+
+            assertHolderNumbers(storageHandler, uuids, 150);
+
+            for (int i = 0; i < 50; i++) {
+                assertEquals(-i, storageHandler.loadHolder(insertedUuids.get(i)).getDataElement(AnotherTestData.class).someNumber);
+            }
+
+            // Converted table is used after reopening, the original one is kept as a backup
+            SQLStorageHandler reopenedStorageHandler = createSQLStorageHandler(SQLStorageHandler.Settings.Builder.create()
+                                                                                                             .setTableName("converted_keys")
+                                                                                                             .build());
+            new Pumpk1n(reopenedStorageHandler).prepareStorage();
+
+            try {
+                assertEquals(SQLStorageHandler.KeyFormat.BINARY, reopenedStorageHandler.getKeyFormat());
+                assertEquals(expectedUuids, new HashSet<>(reopenedStorageHandler.getAllHolderUUIDs()));
+                assertEquals(0, reopenedStorageHandler.convertToBinaryKeys(7));
+            } finally {
+                reopenedStorageHandler.closePool();
+            }
+        } finally {
+            storageHandler.closePool();
+        }
+    }
+
+    @Test
+    public void testSQLBatchedSaves() {
+        SQLStorageHandler storageHandler = createSQLStorageHandler(SQLStorageHandler.Settings.Builder.create()
+                                                                                                     .setTableName("batched_saves")
+                                                                                                     .setPayloadFormat(PayloadFormat.BLOB)
+                                                                                                     .setMaxSaveBatchSize(32)
+                                                                                                     .setSaveBatchWindowMicros(1000)
+                                                                                                     .build());
+        Pumpk1n pumpk1n = new Pumpk1n(storageHandler);
+        pumpk1n.prepareStorage();
+
+        try {
+            List<UUID> uuids = saveHoldersConcurrently(pumpk1n, 50);
+
+            // Concurrent saves share batches
+            assertTrue(storageHandler.getSaveBatchCount() > 0);
+            assertTrue(storageHandler.getSaveBatchCount() < 50);
+            assertEquals(50, storageHandler.getAllHolderUUIDs().size());
+            assertHolderNumbers(storageHandler, uuids, 0);
+
+            // Interrupted caller waits for its commit and keeps the interrupt
+            Thread.currentThread().interrupt();
+            pumpk1n.getDataHolder(uuids.get(0)).save();
+            assertTrue(Thread.interrupted());
+        } finally {
+            storageHandler.closePool();
+        }
+    }
+
+    @Test
+    public void testSQLSplitKeyRange() {
+        assertThrows(IllegalArgumentException.class, () -> SQLStorageHandler.splitKeyRange(0));
+
+        List<UUID> uuids = new ArrayList<>(Arrays.asList(new UUID(0, 0), new UUID(-1, -1), new UUID(Long.MIN_VALUE, 0), new UUID(Long.MAX_VALUE, -1)));
+
+        for (int i = 0; i < 1000; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+
+        for (int rangeCount : new int[]{1, 2, 3, 7, 16}) {
+            List<UUID> boundaries = SQLStorageHandler.splitKeyRange(rangeCount);
+
+            assertEquals(rangeCount + 1, boundaries.size());
+            assertNull(boundaries.get(0));
+            assertNull(boundaries.get(rangeCount));
+
+            for (int i = 1; i < rangeCount - 1; i++) {
+                assertTrue(compareUnsigned(boundaries.get(i), boundaries.get(i + 1)) < 0);
+            }
+
+            List<UUID> keys = new ArrayList<>(uuids);
+            keys.addAll(boundaries.subList(1, rangeCount));
+
+            // Ranges have no gaps and do not overlap
+            for (UUID uuid : keys) {
+                int rangesWithKey = 0;
+
+                for (int i = 0; i < rangeCount; i++) {
+                    if (isInKeyRange(uuid, boundaries.get(i), boundaries.get(i + 1))) {
+                        rangesWithKey++;
+                    }
+                }
+
+                assertEquals(1, rangesWithKey);
+            }
+        }
+
+        // Ranges have the same size
+        assertEquals(Arrays.asList(null, new UUID(0x4000000000000000L, 0), new UUID(0x8000000000000000L, 0), new UUID(0xC000000000000000L, 0), null),
+                     SQLStorageHandler.splitKeyRange(4));
+    }
+
+    @Test
+    public void testSQLStreamKeyRange() {
+        List<UUID> uuids = Stream.generate(UUID::randomUUID).limit(10).sorted(Pumpk1nTests::compareUnsigned).collect(Collectors.toList());
+        AtomicInteger pageCount = new AtomicInteger();
+
+        // Loads pages from the list instead of the table
+        SQLStorageHandler storageHandler = new SQLStorageHandler(createH2HikariConfig(), SQLStorageHandler.Settings.Builder.create()
+                                                                                                                           .setTableName("stream_key_range")
+                                                                                                                           .setPageSize(3)
+                                                                                                                           .build()) {
+            @Override
+            protected <T> List<T> loadPage(UUID afterUuid, UUID lastUuid, boolean loadData, RowMapper<T> rowMapper) {
+                pageCount.incrementAndGet();
+                List<T> rows = new ArrayList<>();
+
+                for (UUID uuid : uuids) {
+                    if (rows.size() < getSettings().getPageSize() && isInKeyRange(uuid, afterUuid, lastUuid)) {
+                        try {
+                            rows.add(rowMapper.map(uuid, null));
+                        } catch (Exception exception) {
+                            throw new RuntimeException(exception);
+                        }
+                    }
+                }
+
+                return rows;
+            }
+        };
+
+        try {
+            // Pages of 3, 3, 3 and 1 rows
+            assertEquals(uuids, storageHandler.streamAllHolderUUIDs().collect(Collectors.toList()));
+            assertEquals(4, pageCount.get());
+
+            // Pages are loaded lazily
+            pageCount.set(0);
+            assertEquals(uuids.subList(0, 2), storageHandler.streamAllHolderUUIDs().limit(2).collect(Collectors.toList()));
+            assertEquals(1, pageCount.get());
+
+            assertEquals(uuids.subList(3, 8), storageHandler.streamHolderUUIDs(uuids.get(2), uuids.get(7)).collect(Collectors.toList()));
+
+            // Split ranges together cover all keys
+            List<UUID> boundaries = SQLStorageHandler.splitKeyRange(4);
+            List<UUID> rangeUuids = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                storageHandler.streamHolderUUIDs(boundaries.get(i), boundaries.get(i + 1)).forEach(rangeUuids::add);
+            }
+
+            assertEquals(uuids, rangeUuids);
+        } finally {
+            storageHandler.closePool();
+        }
+    }
+
+    @Test
+    public void testSQLVersionConflicts() {
+        SQLStorageHandler.Settings settings = SQLStorageHandler.Settings.Builder.create()
+                                                                                .setTableName("versioned")
+                                                                                .setPayloadFormat(PayloadFormat.BLOB)
+                                                                                .setVersioned(true)
+                                                                                .build();
+        SQLStorageHandler firstStorageHandler = createSQLStorageHandler(settings);
+        SQLStorageHandler secondStorageHandler = createSQLStorageHandler(settings);
+        Pumpk1n firstPumpk1n = new Pumpk1n(firstStorageHandler);
+        Pumpk1n secondPumpk1n = new Pumpk1n(secondStorageHandler);
+        firstPumpk1n.prepareStorage();
+        secondPumpk1n.prepareStorage();
+
+        try {
+            UUID uuid = UUID.randomUUID();
+            DataHolder firstDataHolder = firstPumpk1n.getOrCreateDataHolder(uuid);
+            firstDataHolder.save();
+
+            // Second writer modifies the holder, so the first writer's one is stale
+            DataHolder secondDataHolder = secondPumpk1n.getOrLoadDataHolder(uuid);
+            secondDataHolder.getOrCreateDataElement(AnotherTestData.class).someNumber = 2;
+            secondDataHolder.save();
+
+            assertEquals(Long.valueOf(1), assertThrows(SQLStorageHandler.VersionConflictException.class, firstDataHolder::save).getExpectedVersion());
+            assertThrows(SQLStorageHandler.VersionConflictException.class, () -> firstPumpk1n.deleteDataHolder(uuid));
+
+            // Unloading forgets the version, so the stale holder is inserted as a new one
+            firstPumpk1n.unloadDataHolder(uuid);
+            assertNull(assertThrows(SQLStorageHandler.VersionConflictException.class, firstDataHolder::save).getExpectedVersion());
+
+            firstDataHolder = firstPumpk1n.getOrLoadDataHolder(uuid);
+            assertEquals(2, firstDataHolder.getDataElement(AnotherTestData.class).someNumber);
+            firstDataHolder.save();
+
+            // Removal of stale holder fails too
+            assertThrows(SQLStorageHandler.VersionConflictException.class, () -> secondPumpk1n.deleteDataHolder(uuid));
+            secondPumpk1n.unloadDataHolder(uuid);
+            secondPumpk1n.getOrLoadDataHolder(uuid);
+            assertTrue(secondPumpk1n.deleteDataHolder(uuid));
+            assertNull(firstStorageHandler.loadHolder(uuid));
+
+            // Holder inserted by another writer meanwhile
+            UUID insertedUuid = UUID.randomUUID();
+            DataHolder insertedDataHolder = secondPumpk1n.getOrCreateDataHolder(insertedUuid);
+            firstPumpk1n.getOrCreateDataHolder(insertedUuid).save();
+            assertThrows(SQLStorageHandler.VersionConflictException.class, insertedDataHolder::save);
+        } finally {
+            firstStorageHandler.closePool();
+            secondStorageHandler.closePool();
+        }
+    }
+
+    /**
+     * Exposes internals of {@link SQLiteStorageHandler} to tests
+     */
+    protected static class InspectableSQLiteStorageHandler extends SQLiteStorageHandler {
+
+        protected final List<Connection> connections = new ArrayList<>();
+        public volatile boolean failSaveBatches;
+        public volatile boolean errorSaveBatches;
+
+        public InspectableSQLiteStorageHandler(SQLiteStorageHandler.Settings settings) {
+            super(settings);
+        }
+
+        @Override
+        protected Connection connectToDatabase() {
+            Connection connection = super.connectToDatabase();
+            connections.add(connection);
+            return connection;
+        }
+
+        @Override
+        protected void executeSaveBatch(PooledConnection writeConnection, List<PendingSave> batch) throws SQLException {
+            if (failSaveBatches) {
+                throw new SQLException("Save batch failed on purpose");
+            }
+
+            if (errorSaveBatches) {
+                throw new AssertionError("Save batch errored on purpose");
+            }
+
+            super.executeSaveBatch(writeConnection, batch);
+        }
+
+        /**
+         * Queries the pragma on all remembered connections
+         *
+         * @return Distinct values
+         */
+        public Set<String> queryPragma(String pragma) throws SQLException {
+            Set<String> values = new HashSet<>();
+
+            for (Connection connection : connections) {
+                try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+                    assertTrue(resultSet.next());
+                    values.add(resultSet.getString(1));
+                }
+            }
+
+            return values;
+        }
+
+        /**
+         * Holds the database's write lock, as a save in progress does, while specified task runs on another thread
+         *
+         * @return True if the task finished within the timeout
+         */
+        public boolean runDuringSave(Runnable task, long timeoutMillis) throws InterruptedException {
+            databaseLock.writeLock().lock();
+
+            try {
+                Thread thread = new Thread(task);
+                thread.start();
+                thread.join(timeoutMillis);
+
+                return !thread.isAlive();
+            } finally {
+                databaseLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates {@link SQLStorageHandler} with in-memory H2 database in MySQL mode, shared by all tests
+     */
+    protected static SQLStorageHandler createSQLStorageHandler(SQLStorageHandler.Settings settings) {
+        return new SQLStorageHandler(createH2HikariConfig(), settings);
+    }
+
+    protected static HikariConfig createH2HikariConfig() {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(H2_JDBC_URL);
+        return hikariConfig;
+    }
+
+    /**
+     * Compares UUIDs by their unsigned value, as they are ordered in SQL database
+     */
+    protected static int compareUnsigned(UUID first, UUID second) {
+        int result = Long.compareUnsigned(first.getMostSignificantBits(), second.getMostSignificantBits());
+        return result != 0 ? result : Long.compareUnsigned(first.getLeastSignificantBits(), second.getLeastSignificantBits());
+    }
+
+    /**
+     * Determines if the UUID is in the key range, see {@link SQLStorageHandler#streamHolderUUIDs(UUID, UUID)}
+     */
+    protected static boolean isInKeyRange(UUID uuid, UUID afterUuid, UUID lastUuid) {
+        return (afterUuid == null || compareUnsigned(uuid, afterUuid) > 0) && (lastUuid == null || compareUnsigned(uuid, lastUuid) <= 0);
+    }
+
+    /**
+     * Creates holders numbered from zero and saves them concurrently
+     *
+     * @return Saves of the holders by their UUIDs, in order of their numbers
+     */
+    protected static Map<UUID, CompletableFuture<Void>> startConcurrentSaves(Pumpk1n pumpk1n, int count) {
+        Map<UUID, CompletableFuture<Void>> saves = new LinkedHashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            UUID uuid = UUID.randomUUID();
+            pumpk1n.getOrCreateDataHolder(uuid).getOrCreateDataElement(AnotherTestData.class).someNumber = i;
+            saves.put(uuid, pumpk1n.getDataHolder(uuid).saveAsync());
+        }
+
+        return saves;
+    }
+
+    /**
+     * Creates holders numbered from zero, saves them concurrently and waits for the saves
+     *
+     * @return UUIDs of the holders, in order of their numbers
+     */
+    protected static List<UUID> saveHoldersConcurrently(Pumpk1n pumpk1n, int count) {
+        Map<UUID, CompletableFuture<Void>> saves = startConcurrentSaves(pumpk1n, count);
+        CompletableFuture.allOf(saves.values().toArray(new CompletableFuture[0])).join();
+        return new ArrayList<>(saves.keySet());
+    }
+
+    protected static void assertHolderNumbers(StorageHandler storageHandler, List<UUID> uuids, int fromIndex) {
+        for (int i = fromIndex; i < uuids.size(); i++) {
+            assertEquals(i, storageHandler.loadHolder(uuids.get(i)).getDataElement(AnotherTestData.class).someNumber);
+        }
+    }
+
+    protected static void deleteRecursively(String path) throws IOException {
+        Path root = Paths.get(path);
+
+        if (!Files.exists(root)) {
+            return;
+        }
+
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
 }